@@ -0,0 +1,269 @@
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Admission control for enrollment operations. Sits in front of addCourse and
+// dropCourse and decides whether a request may reach the database now.
+//
+// Three checks, in order:
+//   1. Pass time  - students are split into groups by perm number, and each
+//                   group may only enroll after its configured pass time.
+//   2. Rate limit - a token bucket per student.
+//   3. Fair queue - at most ADMISSION_MAX_CONCURRENCY operations run against
+//                   the database at once; up to ADMISSION_QUEUE_LIMIT more wait
+//                   in FIFO order for ADMISSION_QUEUE_TIMEOUT_MS.
+//
+// Registrar operations skip the first two checks but still take a slot.
+//
+// A bucket that has refilled to the burst is no different from a new one, so
+// such buckets are dropped about once a minute; the map only holds students
+// who enrolled recently.
+//
+// config.properties keys (all optional):
+//   ADMISSION_MAX_CONCURRENCY, ADMISSION_QUEUE_LIMIT, ADMISSION_QUEUE_TIMEOUT_MS,
+//   ADMISSION_RATE_PER_MINUTE, ADMISSION_BURST,
+//   PASS_TIME_GROUPS, PASS_TIME_0 .. PASS_TIME_<n-1> (e.g. 2025-02-17T09:00)
+public class AdmissionControl {
+    private static final long BUCKET_SWEEP_MS = 60_000;
+
+    private final int maxConcurrency;
+    private final int queueLimit;
+    private final long queueTimeoutMillis;
+    private final double tokensPerMilli;
+    private final double burst;
+    private final List<LocalDateTime> passTimes;
+
+    private final Semaphore slots;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejectedPassTime = new AtomicLong();
+    private final AtomicLong rejectedRate = new AtomicLong();
+    private final AtomicLong rejectedQueueFull = new AtomicLong();
+    private final AtomicLong rejectedTimeout = new AtomicLong();
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextBucketSweep = new AtomicLong(System.currentTimeMillis() + BUCKET_SWEEP_MS);
+
+    public AdmissionControl(int maxConcurrency, int queueLimit, long queueTimeoutMillis,
+                            double ratePerMinute, int burst, List<LocalDateTime> passTimes) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.queueLimit = Math.max(0, queueLimit);
+        this.queueTimeoutMillis = Math.max(0, queueTimeoutMillis);
+        this.tokensPerMilli = ratePerMinute / 60_000.0;
+        this.burst = Math.max(1, burst);
+        this.passTimes = passTimes;
+        this.slots = new Semaphore(this.maxConcurrency, true);
+    }
+
+    public static AdmissionControl fromConfig(Properties props) {
+        List<LocalDateTime> passTimes = new ArrayList<>();
+        int groups = intProperty(props, "PASS_TIME_GROUPS", 0);
+        for (int i = 0; i < groups; i++) {
+            String value = props.getProperty("PASS_TIME_" + i);
+            try {
+                passTimes.add(value == null ? null : LocalDateTime.parse(value.trim()));
+            } catch (DateTimeParseException e) {
+                System.err.println("Ignoring invalid PASS_TIME_" + i + ": " + value);
+                passTimes.add(null);
+            }
+        }
+        return new AdmissionControl(
+            intProperty(props, "ADMISSION_MAX_CONCURRENCY", 8),
+            intProperty(props, "ADMISSION_QUEUE_LIMIT", 100),
+            intProperty(props, "ADMISSION_QUEUE_TIMEOUT_MS", 2000),
+            intProperty(props, "ADMISSION_RATE_PER_MINUTE", 20),
+            intProperty(props, "ADMISSION_BURST", 5),
+            passTimes);
+    }
+
+    // Admission for a student request. Blocks while queued.
+    public Decision admit(String permNumber) {
+        LocalDateTime passTime = passTimeFor(permNumber);
+        LocalDateTime now = LocalDateTime.now();
+        if (passTime != null && now.isBefore(passTime)) {
+            rejectedPassTime.incrementAndGet();
+            long wait = Duration.between(now, passTime).getSeconds() + 1;
+            return Decision.rejected("Your pass time begins " + passTime, wait);
+        }
+
+        sweepBuckets();
+        long retryAfterMillis;
+        do {
+            // A bucket dropped by a concurrent sweep answers -1; use its replacement
+            retryAfterMillis = buckets.computeIfAbsent(permNumber, k -> new TokenBucket()).tryTake();
+        } while (retryAfterMillis < 0);
+        if (retryAfterMillis > 0) {
+            rejectedRate.incrementAndGet();
+            return Decision.rejected("Too many enrollment requests", (retryAfterMillis + 999) / 1000);
+        }
+        return acquireSlot();
+    }
+
+    // Admission for a registrar request: no pass time or rate limit
+    public Decision admitRegistrar() {
+        return acquireSlot();
+    }
+
+    // Must be called once for every admitted Decision
+    public void release(Decision decision) {
+        if (decision.admitted) {
+            slots.release();
+        }
+    }
+
+    // Drops full buckets, at most once per BUCKET_SWEEP_MS and by one caller
+    private void sweepBuckets() {
+        long now = System.currentTimeMillis();
+        long next = nextBucketSweep.get();
+        if (now < next || !nextBucketSweep.compareAndSet(next, now + BUCKET_SWEEP_MS)) {
+            return;
+        }
+        buckets.values().removeIf(bucket -> bucket.expireIfFull(now));
+    }
+
+    private Decision acquireSlot() {
+        try {
+            // The timed form honours fairness; plain tryAcquire() would take a
+            // free slot ahead of requests already queued for one
+            if (slots.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                admitted.incrementAndGet();
+                return Decision.ADMITTED;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Decision.rejected("Request interrupted", 1);
+        }
+        int depth = queueDepth.incrementAndGet();
+        try {
+            if (depth > queueLimit) {
+                rejectedQueueFull.incrementAndGet();
+                return Decision.rejected("Registration is busy", retryAfterSeconds());
+            }
+            peakQueueDepth.accumulateAndGet(depth, Math::max);
+            if (slots.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                admitted.incrementAndGet();
+                return Decision.ADMITTED;
+            }
+            rejectedTimeout.incrementAndGet();
+            return Decision.rejected("Registration is busy", retryAfterSeconds());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Decision.rejected("Request interrupted", 1);
+        } finally {
+            queueDepth.decrementAndGet();
+        }
+    }
+
+    // Rough estimate: time for the current queue to drain at full concurrency
+    private long retryAfterSeconds() {
+        long perOperation = Math.max(1, queueTimeoutMillis / Math.max(1, queueLimit));
+        return Math.max(1, queueDepth.get() * perOperation / maxConcurrency / 1000);
+    }
+
+    private LocalDateTime passTimeFor(String permNumber) {
+        if (passTimes.isEmpty()) {
+            return null;
+        }
+        return passTimes.get(Math.floorMod(permNumber.hashCode(), passTimes.size()));
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getActiveOperations() {
+        return maxConcurrency - slots.availablePermits();
+    }
+
+    public void printMetrics() {
+        System.out.println("\n=== Admission Control ===");
+        System.out.println("Active operations: " + getActiveOperations() + " / " + maxConcurrency);
+        System.out.println("Queue depth: " + getQueueDepth() + " (peak " + peakQueueDepth.get() + ", limit " + queueLimit + ")");
+        System.out.println("Admitted: " + admitted.get());
+        System.out.println("Rejected (pass time): " + rejectedPassTime.get());
+        System.out.println("Rejected (rate limit): " + rejectedRate.get());
+        System.out.println("Rejected (queue full): " + rejectedQueueFull.get());
+        System.out.println("Rejected (queue timeout): " + rejectedTimeout.get());
+    }
+
+    private static int intProperty(Properties props, String key, int defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid " + key + " '" + value + "', using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private class TokenBucket {
+        private double tokens = burst;
+        private long lastRefill = System.currentTimeMillis();
+        private boolean expired;
+
+        // Returns 0 if a token was taken, otherwise millis until one is
+        // available, or -1 if the bucket has been swept
+        synchronized long tryTake() {
+            if (expired) {
+                return -1;
+            }
+            long now = System.currentTimeMillis();
+            tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerMilli);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            if (tokensPerMilli <= 0) {
+                return Long.MAX_VALUE / 2;
+            }
+            return (long) Math.ceil((1 - tokens) / tokensPerMilli);
+        }
+
+        // Marks the bucket swept if it would be full by now
+        synchronized boolean expireIfFull(long now) {
+            if (tokens + (now - lastRefill) * tokensPerMilli >= burst) {
+                expired = true;
+            }
+            return expired;
+        }
+    }
+
+    public static class Decision {
+        static final Decision ADMITTED = new Decision(true, null, 0);
+
+        final boolean admitted;
+        final String reason;
+        final long retryAfterSeconds;
+
+        private Decision(boolean admitted, String reason, long retryAfterSeconds) {
+            this.admitted = admitted;
+            this.reason = reason;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        static Decision rejected(String reason, long retryAfterSeconds) {
+            return new Decision(false, reason, Math.max(1, retryAfterSeconds));
+        }
+
+        public boolean isAdmitted() {
+            return admitted;
+        }
+
+        public String getMessage() {
+            return admitted ? "Admitted" : reason + ". Please retry after " + retryAfterSeconds + " seconds.";
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Asynchronous facade over StudentTransactions.
+//
+// Each call runs on a bounded executor with its own pooled connection and
+// returns a CompletableFuture, so independent reads for one screen can run at
+// the same time and be combined (see dashboard). The executor has one thread
+// per connection. The build targets Java 17, which has no virtual threads, so
+// these are platform threads; with so few of them that costs little, since
+// the JDBC waits are bounded by the pool size anyway.
+public class AsyncStudentTransactions implements AutoCloseable {
+    private final BlockingQueue<StudentTransactions> pool;
+    private final ExecutorService executor;
+
+    public AsyncStudentTransactions(int connections) throws SQLException {
+        int size = Math.max(1, connections);
+        this.pool = new ArrayBlockingQueue<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                pool.add(StudentTransactions.connect());
+            }
+        } catch (SQLException e) {
+            closePool();
+            throw e;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threads = task -> {
+            Thread thread = new Thread(task, "student-transactions-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = Executors.newFixedThreadPool(size, threads);
+    }
+
+    // Runs any StudentTransactions call on a pooled connection
+    public <T> CompletableFuture<T> submit(Function<StudentTransactions, T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            StudentTransactions st = borrow();
+            try {
+                return call.apply(st);
+            } finally {
+                pool.add(st);
+            }
+        }, executor);
+    }
+
+    public CompletableFuture<List<StudentTransactions.CourseRow>> currentCourses(String permNumber) {
+        return submit(st -> st.getCurrentCourses(permNumber));
+    }
+
+    public CompletableFuture<GraduationAudit> graduationAudit(String permNumber) {
+        return submit(st -> st.auditGraduationRequirements(permNumber));
+    }
+
+    public CompletableFuture<Set<String>> passedCourses(String permNumber) {
+        return submit(st -> st.getPassedCourses(permNumber));
+    }
+
+    public CompletableFuture<Boolean> addCourse(String permNumber, String enrollmentCode) {
+        return submit(st -> st.addCourse(permNumber, enrollmentCode));
+    }
+
+    public CompletableFuture<Boolean> dropCourse(String permNumber, String pin, String enrollmentCode) {
+        return submit(st -> st.dropCourse(permNumber, pin, enrollmentCode));
+    }
+
+    // Current courses and requirements check fetched concurrently
+    public CompletableFuture<Dashboard> dashboard(String permNumber) {
+        return currentCourses(permNumber).thenCombine(graduationAudit(permNumber), Dashboard::new);
+    }
+
+    // Waits for a free connection; with one thread per connection that wait
+    // is normally zero
+    private StudentTransactions borrow() {
+        try {
+            return pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a connection", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closePool();
+    }
+
+    private void closePool() {
+        StudentTransactions st;
+        while ((st = pool.poll()) != null) {
+            st.close();
+        }
+    }
+
+    public static class Dashboard {
+        final List<StudentTransactions.CourseRow> currentCourses;
+        // Null if the student was not found
+        final GraduationAudit audit;
+
+        Dashboard(List<StudentTransactions.CourseRow> currentCourses, GraduationAudit audit) {
+            this.currentCourses = currentCourses;
+            this.audit = audit;
+        }
+
+        public List<StudentTransactions.CourseRow> getCurrentCourses() {
+            return currentCourses;
+        }
+
+        public GraduationAudit getAudit() {
+            return audit;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Graduation audit for every student of a major (or of all majors) at once.
+//
+// Requirements are loaded with one query, and passed courses are read from
+// Student_Passed_Course in a single scan ordered by perm number. Students are
+// evaluated in batches on a thread pool while the scan continues, and the
+// results are written in perm order, one tab separated line per student:
+//   perm_number  major  status  missing_required  electives_short
+// where status is ELIGIBLE, NOT_ELIGIBLE or NO_REQUIREMENTS.
+//
+// run can be called once per database (e.g. per shard); the per-major counts
+// accumulate across calls.
+public class BulkDegreeAudit {
+    private static final int BATCH_SIZE = 500;
+    private static final int FETCH_SIZE = 1000;
+
+    private final int parallelism;
+    private final Map<String, MajorCounts> counts = new TreeMap<>();
+
+    public BulkDegreeAudit(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public static void writeHeader(Writer out) throws IOException {
+        out.write("perm_number\tmajor\tstatus\tmissing_required\telectives_short\n");
+    }
+
+    // Audits the students of majorName, or of every major if it is null.
+    // Returns the number of students audited.
+    public int run(Connection connection, String majorName, Writer out) throws SQLException, IOException {
+        Map<String, RequirementProfile> requirements = RequirementProfile.load(connection, majorName);
+        String sql = "SELECT s.perm_number, s.major_name, p.course_number " +
+                    "FROM Student s LEFT JOIN Student_Passed_Course p ON p.perm_number = s.perm_number " +
+                    (majorName == null ? "" : "WHERE s.major_name = ? ") +
+                    "ORDER BY s.perm_number";
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        Deque<Future<List<GraduationAudit>>> inFlight = new ArrayDeque<>();
+        int students = 0;
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setFetchSize(FETCH_SIZE);
+            if (majorName != null) {
+                stmt.setString(1, majorName);
+            }
+            ResultSet rs = stmt.executeQuery();
+            List<StudentCourses> batch = new ArrayList<>();
+            StudentCourses current = null;
+            while (rs.next()) {
+                String permNumber = rs.getString("perm_number");
+                if (current == null || !current.permNumber.equals(permNumber)) {
+                    if (batch.size() == BATCH_SIZE) {
+                        inFlight.add(submit(executor, requirements, batch));
+                        batch = new ArrayList<>();
+                        // Bound how far the scan runs ahead of the writer
+                        if (inFlight.size() >= parallelism * 2) {
+                            write(inFlight.poll(), out);
+                        }
+                    }
+                    current = new StudentCourses(permNumber, rs.getString("major_name"));
+                    batch.add(current);
+                    students++;
+                }
+                String course = rs.getString("course_number");
+                if (course != null) {
+                    current.passed.add(course);
+                }
+            }
+            if (!batch.isEmpty()) {
+                inFlight.add(submit(executor, requirements, batch));
+            }
+            while (!inFlight.isEmpty()) {
+                write(inFlight.poll(), out);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return students;
+    }
+
+    private Future<List<GraduationAudit>> submit(ExecutorService executor, Map<String, RequirementProfile> requirements,
+                                                 List<StudentCourses> batch) {
+        return executor.submit(() -> {
+            List<GraduationAudit> audits = new ArrayList<>(batch.size());
+            for (StudentCourses student : batch) {
+                RequirementProfile major = requirements.get(student.majorName);
+                if (major == null) {
+                    major = RequirementProfile.empty(student.majorName);
+                }
+                audits.add(major.audit(student.permNumber, student.passed));
+            }
+            return audits;
+        });
+    }
+
+    private void write(Future<List<GraduationAudit>> batch, Writer out) throws IOException, SQLException {
+        List<GraduationAudit> audits;
+        try {
+            audits = batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted during degree audit", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Degree audit failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        for (GraduationAudit audit : audits) {
+            String status = audit.noRequirements ? "NO_REQUIREMENTS" : audit.isEligible() ? "ELIGIBLE" : "NOT_ELIGIBLE";
+            out.write(audit.permNumber + "\t" + audit.majorName + "\t" + status + "\t" +
+                      String.join(",", audit.missingRequired) + "\t" + audit.getElectivesShort() + "\n");
+
+            MajorCounts major = counts.computeIfAbsent(String.valueOf(audit.majorName), name -> new MajorCounts());
+            major.students++;
+            if (audit.isEligible()) {
+                major.eligible++;
+            }
+            if (!audit.missingRequired.isEmpty()) {
+                major.missingRequired++;
+            }
+            if (audit.getElectivesShort() > 0) {
+                major.electivesShort++;
+            }
+        }
+    }
+
+    public void printSummary() {
+        System.out.printf("%-25s %8s %8s %12s %15s%n", "Major", "Students", "Eligible", "Missing req.", "Electives short");
+        int students = 0;
+        int eligible = 0;
+        for (Map.Entry<String, MajorCounts> entry : counts.entrySet()) {
+            MajorCounts major = entry.getValue();
+            System.out.printf("%-25s %8d %8d %12d %15d%n", entry.getKey(), major.students, major.eligible,
+                major.missingRequired, major.electivesShort);
+            students += major.students;
+            eligible += major.eligible;
+        }
+        System.out.println("Total: " + students + " student(s), " + eligible + " eligible to graduate.");
+    }
+
+    private static class StudentCourses {
+        final String permNumber;
+        final String majorName;
+        final Set<String> passed = new HashSet<>();
+
+        StudentCourses(String permNumber, String majorName) {
+            this.permNumber = permNumber;
+            this.majorName = majorName;
+        }
+    }
+
+    private static class MajorCounts {
+        int students;
+        int eligible;
+        int missingRequired;
+        int electivesShort;
+    }
+}
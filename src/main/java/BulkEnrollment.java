@@ -0,0 +1,424 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Registrar adds and drops for many (perm number, enrollment code) pairs at
+// once.
+//
+// Instead of running the per-pair checks of addCourse, the students,
+// offerings, current enrollments, passed courses and prerequisites involved
+// are loaded with a few IN-list queries. Every pair is then checked in input
+// order against that data, with seats and course counts taken by earlier
+// pairs already counted. Accepted pairs go to the database as one JDBC batch,
+// which the Oracle driver sends as a single array-bound statement. The
+// students' rows and then the offerings are locked first, the same order as
+// single adds and drops, so course counts and seat counts hold until the
+// caller commits.
+//
+// Each pair gets an Outcome; only OK pairs were applied.
+public class BulkEnrollment {
+    // Oracle allows at most 1000 expressions in an IN list
+    private static final int MAX_IN_LIST = 1000;
+    private static final int MAX_CURRENT_COURSES = 5;
+
+    public enum Outcome {
+        OK, DUPLICATE, STUDENT_NOT_FOUND, OFFERING_NOT_FOUND, NOT_CURRENT_TERM, FULL,
+        ALREADY_ENROLLED, COURSE_LIMIT, MISSING_PREREQUISITE, NOT_ENROLLED, LAST_COURSE,
+        FAILED
+    }
+
+    // Moves a waitlisted student into a freed seat; returns their perm number or null
+    interface Promoter {
+        String promote(String enrollmentCode) throws SQLException;
+    }
+
+    private final Connection connection;
+    private final Term currentTerm;
+    private final List<Pair> promoted = new ArrayList<>();
+
+    // Loaded per run
+    private final Map<String, Offering> offerings = new HashMap<>();
+    private final Map<String, Set<String>> currentByStudent = new HashMap<>();
+    private final Map<String, Set<String>> passedByStudent = new HashMap<>();
+    private final Map<String, List<String>> prerequisites = new HashMap<>();
+
+    BulkEnrollment(Connection connection, Term currentTerm) {
+        this.connection = connection;
+        this.currentTerm = currentTerm;
+    }
+
+    // Checks and inserts the adds. Runs inside the caller's transaction and
+    // returns the pairs that were added.
+    List<Pair> add(List<Pair> pairs) throws SQLException {
+        lockStudents(permsOf(pairs));
+        lockOfferings(codesOf(pairs));
+        loadOfferings(codesOf(pairs));
+        loadStudents(permsOf(pairs));
+        loadPassedCourses(permsOf(pairs));
+        Set<String> courses = new HashSet<>();
+        for (Offering offering : offerings.values()) {
+            courses.add(offering.courseNumber);
+        }
+        loadPrerequisites(courses);
+
+        List<Pair> accepted = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Pair pair : pairs) {
+            pair.outcome = checkAdd(pair, seen);
+            if (pair.outcome == Outcome.OK) {
+                currentByStudent.get(pair.permNumber).add(pair.enrollmentCode);
+                offerings.get(pair.enrollmentCode).enrolled++;
+                accepted.add(pair);
+            }
+        }
+
+        String sql = "INSERT INTO Enrolls_in (perm_number, enrollment_code, year, quarter, status) " +
+                    "VALUES (?, ?, ?, ?, 'Current')";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (Pair pair : accepted) {
+                Offering offering = offerings.get(pair.enrollmentCode);
+                stmt.setString(1, pair.permNumber);
+                stmt.setString(2, pair.enrollmentCode);
+                stmt.setInt(3, offering.year);
+                stmt.setString(4, offering.quarter);
+                stmt.addBatch();
+            }
+            if (!accepted.isEmpty()) {
+                markFailures(accepted, stmt.executeBatch());
+            }
+        }
+        accepted.removeIf(pair -> pair.outcome != Outcome.OK);
+        return accepted;
+    }
+
+    private Outcome checkAdd(Pair pair, Set<String> seen) {
+        if (!seen.add(pair.permNumber + "\t" + pair.enrollmentCode)) {
+            return Outcome.DUPLICATE;
+        }
+        Set<String> current = currentByStudent.get(pair.permNumber);
+        if (current == null) {
+            return Outcome.STUDENT_NOT_FOUND;
+        }
+        Offering offering = offerings.get(pair.enrollmentCode);
+        if (offering == null) {
+            return Outcome.OFFERING_NOT_FOUND;
+        }
+        if (!currentTerm.matches(offering.quarter, offering.year)) {
+            return Outcome.NOT_CURRENT_TERM;
+        }
+        if (offering.enrolled >= offering.limit) {
+            return Outcome.FULL;
+        }
+        if (current.contains(pair.enrollmentCode)) {
+            return Outcome.ALREADY_ENROLLED;
+        }
+        if (current.size() >= MAX_CURRENT_COURSES) {
+            return Outcome.COURSE_LIMIT;
+        }
+        Set<String> passed = passedByStudent.getOrDefault(pair.permNumber, Collections.emptySet());
+        if (!passed.containsAll(prerequisites.getOrDefault(offering.courseNumber, Collections.emptyList()))) {
+            return Outcome.MISSING_PREREQUISITE;
+        }
+        return Outcome.OK;
+    }
+
+    // Checks and deletes the drops, then fills each freed seat from the
+    // offering's waitlist. Runs inside the caller's transaction and returns
+    // the pairs that were dropped; see getPromoted for the waitlist moves.
+    List<Pair> drop(List<Pair> pairs, Promoter promoter) throws SQLException {
+        lockStudents(permsOf(pairs));
+        lockOfferings(codesOf(pairs));
+        loadStudents(permsOf(pairs));
+
+        List<Pair> accepted = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Pair pair : pairs) {
+            Set<String> current = currentByStudent.get(pair.permNumber);
+            if (!seen.add(pair.permNumber + "\t" + pair.enrollmentCode)) {
+                pair.outcome = Outcome.DUPLICATE;
+            } else if (current == null) {
+                pair.outcome = Outcome.STUDENT_NOT_FOUND;
+            } else if (!current.contains(pair.enrollmentCode)) {
+                pair.outcome = Outcome.NOT_ENROLLED;
+            } else if (current.size() <= 1) {
+                // Students must stay enrolled in at least one course
+                pair.outcome = Outcome.LAST_COURSE;
+            } else {
+                pair.outcome = Outcome.OK;
+                current.remove(pair.enrollmentCode);
+                accepted.add(pair);
+            }
+        }
+
+        // The only-course check is repeated in the delete, as for single drops
+        String sql = "DELETE FROM Enrolls_in WHERE perm_number = ? AND enrollment_code = ? AND status = 'Current' " +
+                    "AND (SELECT COUNT(*) FROM Enrolls_in e WHERE e.perm_number = ? AND e.status = 'Current') > 1";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (Pair pair : accepted) {
+                stmt.setString(1, pair.permNumber);
+                stmt.setString(2, pair.enrollmentCode);
+                stmt.setString(3, pair.permNumber);
+                stmt.addBatch();
+            }
+            if (!accepted.isEmpty()) {
+                markFailures(accepted, stmt.executeBatch());
+            }
+        }
+        accepted.removeIf(pair -> pair.outcome != Outcome.OK);
+
+        // One promotion per freed seat, offerings in a fixed order
+        Map<String, Integer> freed = new TreeMap<>();
+        for (Pair pair : accepted) {
+            freed.merge(pair.enrollmentCode, 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : freed.entrySet()) {
+            for (int seat = 0; seat < entry.getValue(); seat++) {
+                String permNumber = promoter.promote(entry.getKey());
+                if (permNumber == null) {
+                    break;
+                }
+                Pair moved = new Pair(permNumber, entry.getKey());
+                moved.outcome = Outcome.OK;
+                promoted.add(moved);
+            }
+        }
+        return accepted;
+    }
+
+    // Students moved off a waitlist by the last drop
+    List<Pair> getPromoted() {
+        return promoted;
+    }
+
+    // Oracle reports SUCCESS_NO_INFO for batched rows; only an explicit 0 is a miss
+    private static void markFailures(List<Pair> batch, int[] counts) {
+        for (int i = 0; i < batch.size() && i < counts.length; i++) {
+            if (counts[i] == 0 || counts[i] == Statement.EXECUTE_FAILED) {
+                batch.get(i).outcome = Outcome.FAILED;
+            }
+        }
+    }
+
+    // Loading
+
+    // Single adds and drops of these students wait until the caller commits
+    private void lockStudents(Set<String> perms) throws SQLException {
+        // Sorted, so two bulk jobs lock shared students in the same order
+        forChunks(new TreeSet<>(perms), (chunk, in) -> {
+            String sql = "SELECT perm_number FROM Student WHERE perm_number IN " + in +
+                        " ORDER BY perm_number FOR UPDATE";
+            try (PreparedStatement stmt = prepare(sql, chunk)) {
+                stmt.executeQuery();
+            }
+        });
+    }
+
+    private void lockOfferings(Set<String> codes) throws SQLException {
+        // Sorted, so two bulk jobs lock shared offerings in the same order
+        forChunks(new TreeSet<>(codes), (chunk, in) -> {
+            String sql = "SELECT enrollment_code FROM Course_Offering WHERE enrollment_code IN " + in +
+                        " ORDER BY enrollment_code FOR UPDATE";
+            try (PreparedStatement stmt = prepare(sql, chunk)) {
+                stmt.executeQuery();
+            }
+            // Single adds and drops that read these offerings before now retry
+            String bumpSql = "UPDATE Course_Offering SET version = version + 1 WHERE enrollment_code IN " + in;
+            try (PreparedStatement stmt = prepare(bumpSql, chunk)) {
+                stmt.executeUpdate();
+            }
+        });
+    }
+
+    private void loadOfferings(Set<String> codes) throws SQLException {
+        forChunks(codes, (chunk, in) -> {
+            String sql = "SELECT enrollment_code, course_number, year, quarter, enroll_limit " +
+                        "FROM Course_Offering WHERE enrollment_code IN " + in;
+            try (PreparedStatement stmt = prepare(sql, chunk)) {
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    offerings.put(rs.getString("enrollment_code"), new Offering(rs.getString("course_number"),
+                        rs.getInt("year"), rs.getString("quarter"), rs.getInt("enroll_limit")));
+                }
+            }
+            String countSql = "SELECT enrollment_code, COUNT(*) FROM Enrolls_in " +
+                             "WHERE status = 'Current' AND enrollment_code IN " + in + " GROUP BY enrollment_code";
+            try (PreparedStatement stmt = prepare(countSql, chunk)) {
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    offerings.get(rs.getString(1)).enrolled = rs.getInt(2);
+                }
+            }
+        });
+    }
+
+    // Every existing student gets an entry, with their current offerings
+    private void loadStudents(Set<String> perms) throws SQLException {
+        forChunks(perms, (chunk, in) -> {
+            String sql = "SELECT s.perm_number, e.enrollment_code FROM Student s " +
+                        "LEFT JOIN Enrolls_in e ON e.perm_number = s.perm_number AND e.status = 'Current' " +
+                        "WHERE s.perm_number IN " + in;
+            try (PreparedStatement stmt = prepare(sql, chunk)) {
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    Set<String> current = currentByStudent.computeIfAbsent(rs.getString("perm_number"), p -> new HashSet<>());
+                    String code = rs.getString("enrollment_code");
+                    if (code != null) {
+                        current.add(code);
+                    }
+                }
+            }
+        });
+    }
+
+    private void loadPassedCourses(Set<String> perms) throws SQLException {
+        forChunks(perms, (chunk, in) -> {
+            String sql = "SELECT perm_number, course_number FROM Student_Passed_Course WHERE perm_number IN " + in;
+            try (PreparedStatement stmt = prepare(sql, chunk)) {
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    passedByStudent.computeIfAbsent(rs.getString("perm_number"), p -> new HashSet<>())
+                                   .add(rs.getString("course_number"));
+                }
+            }
+        });
+    }
+
+    private void loadPrerequisites(Set<String> courses) throws SQLException {
+        forChunks(courses, (chunk, in) -> {
+            String sql = "SELECT course_number, prerequisite_course_number FROM Prerequisite WHERE course_number IN " + in;
+            try (PreparedStatement stmt = prepare(sql, chunk)) {
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    prerequisites.computeIfAbsent(rs.getString("course_number"), c -> new ArrayList<>())
+                                 .add(rs.getString("prerequisite_course_number"));
+                }
+            }
+        });
+    }
+
+    private interface ChunkQuery {
+        void run(List<String> chunk, String inList) throws SQLException;
+    }
+
+    private static void forChunks(Collection<String> values, ChunkQuery query) throws SQLException {
+        List<String> all = new ArrayList<>(values);
+        for (int from = 0; from < all.size(); from += MAX_IN_LIST) {
+            List<String> chunk = all.subList(from, Math.min(all.size(), from + MAX_IN_LIST));
+            query.run(chunk, "(" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")");
+        }
+    }
+
+    private PreparedStatement prepare(String sql, List<String> values) throws SQLException {
+        PreparedStatement stmt = connection.prepareStatement(sql);
+        for (int i = 0; i < values.size(); i++) {
+            stmt.setString(i + 1, values.get(i));
+        }
+        return stmt;
+    }
+
+    private static Set<String> permsOf(List<Pair> pairs) {
+        Set<String> perms = new HashSet<>();
+        for (Pair pair : pairs) {
+            perms.add(pair.permNumber);
+        }
+        return perms;
+    }
+
+    private static Set<String> codesOf(List<Pair> pairs) {
+        Set<String> codes = new HashSet<>();
+        for (Pair pair : pairs) {
+            codes.add(pair.enrollmentCode);
+        }
+        return codes;
+    }
+
+    // Files
+
+    // One "perm_number enrollment_code" pair per line; '#' starts a comment.
+    // Malformed lines are skipped with a warning.
+    public static List<Pair> read(BufferedReader reader) throws IOException {
+        List<Pair> pairs = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if (parts.length != 2) {
+                System.err.println("Skipping line " + lineNumber + ": expected <perm> <enrollment_code>");
+                continue;
+            }
+            pairs.add(new Pair(parts[0], parts[1]));
+        }
+        return pairs;
+    }
+
+    // One tab separated line per pair: perm_number, enrollment_code, outcome
+    public static void writeReport(List<Pair> pairs, Writer out) throws IOException {
+        for (Pair pair : pairs) {
+            out.write(pair.permNumber + "\t" + pair.enrollmentCode + "\t" + pair.outcome + "\n");
+        }
+    }
+
+    public static void printSummary(List<Pair> pairs) {
+        Map<Outcome, Integer> counts = new TreeMap<>();
+        for (Pair pair : pairs) {
+            counts.merge(pair.outcome, 1, Integer::sum);
+        }
+        for (Map.Entry<Outcome, Integer> entry : counts.entrySet()) {
+            System.out.printf("%-22s %8d%n", entry.getKey(), entry.getValue());
+        }
+    }
+
+    public static class Pair {
+        final String permNumber;
+        final String enrollmentCode;
+        Outcome outcome;
+
+        public Pair(String permNumber, String enrollmentCode) {
+            this.permNumber = permNumber;
+            this.enrollmentCode = enrollmentCode;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+    }
+
+    private static class Offering {
+        final String courseNumber;
+        final int year;
+        final String quarter;
+        final int limit;
+        int enrolled;
+
+        Offering(String courseNumber, int year, String quarter, int limit) {
+            this.courseNumber = courseNumber;
+            this.year = year;
+            this.quarter = quarter;
+            this.limit = limit;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-process stream of enrollment changes (adds, drops, grades, PIN changes).
+//
+// Events are published after the change commits (or is journaled) into a ring
+// buffer of EVENT_BUFFER_SIZE slots (default 4096). Every subscriber reads the
+// ring on its own thread at its own pace. When the slowest subscriber is a
+// full ring behind, publish waits up to EVENT_PUBLISH_TIMEOUT_MS (default 100)
+// for it; after that the subscriber skips ahead and is told which events it
+// missed, so one stuck consumer can't stall enrollment.
+//
+// With EVENT_LOG_FILE set, every event is also appended to a local log, one
+// tab separated line per event:
+//   sequence  timestamp  type  perm_number  enrollment_code  grade
+// Lines are written in sequence order, and publish returns once its line is
+// forced to disk. Sequence numbers continue across restarts, and replay
+// reads the log from any sequence on.
+public class ChangeEventStream {
+    private static final int DEFAULT_BUFFER_SIZE = 4096;
+    private static final long DEFAULT_PUBLISH_TIMEOUT_MS = 100;
+
+    public enum Type { ADD, DROP, GRADE, PIN_CHANGE }
+
+    public interface Subscriber {
+        void onEvent(Event event) throws Exception;
+
+        // Events fromSequence to toSequence (inclusive) were overwritten
+        // before this subscriber read them
+        default void onMissed(long fromSequence, long toSequence) {
+            System.err.println("Event subscriber missed events " + fromSequence + "-" + toSequence);
+        }
+    }
+
+    private final Event[] ring;
+    private final long publishTimeoutMillis;
+    private final Object lock = new Object();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final FileChannel log;
+    // Sequence of the next event
+    private long nextSequence;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong publisherWaits = new AtomicLong();
+
+    public ChangeEventStream(int bufferSize, long publishTimeoutMillis, Path logFile) throws IOException {
+        this.ring = new Event[Math.max(16, bufferSize)];
+        this.publishTimeoutMillis = Math.max(0, publishTimeoutMillis);
+        if (logFile == null) {
+            log = null;
+            nextSequence = 1;
+        } else {
+            nextSequence = lastLoggedSequence(logFile) + 1;
+            log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        }
+    }
+
+    public static ChangeEventStream fromConfig(Properties props) {
+        int bufferSize = DEFAULT_BUFFER_SIZE;
+        long timeout = DEFAULT_PUBLISH_TIMEOUT_MS;
+        try {
+            bufferSize = Integer.parseInt(props.getProperty("EVENT_BUFFER_SIZE", String.valueOf(bufferSize)).trim());
+            timeout = Long.parseLong(props.getProperty("EVENT_PUBLISH_TIMEOUT_MS", String.valueOf(timeout)).trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid EVENT_BUFFER_SIZE or EVENT_PUBLISH_TIMEOUT_MS, using defaults");
+            bufferSize = DEFAULT_BUFFER_SIZE;
+            timeout = DEFAULT_PUBLISH_TIMEOUT_MS;
+        }
+        String logFile = props.getProperty("EVENT_LOG_FILE");
+        if (logFile != null) {
+            try {
+                return new ChangeEventStream(bufferSize, timeout, Paths.get(logFile.trim()));
+            } catch (IOException e) {
+                System.err.println("Event log disabled: " + e.getMessage());
+            }
+        }
+        try {
+            return new ChangeEventStream(bufferSize, timeout, null);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Starts delivering events published from now on to subscriber
+    public void subscribe(String name, Subscriber subscriber) {
+        Subscription subscription;
+        synchronized (lock) {
+            subscription = new Subscription(name, subscriber, nextSequence);
+            subscriptions.add(subscription);
+        }
+        Thread thread = new Thread(subscription::run, "events-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void unsubscribe(String name) {
+        synchronized (lock) {
+            for (Subscription subscription : subscriptions) {
+                if (subscription.name.equals(name)) {
+                    subscription.running = false;
+                    subscriptions.remove(subscription);
+                }
+            }
+            lock.notifyAll();
+        }
+    }
+
+    // enrollmentCode is null for PIN changes, grade is null except for grades
+    public void publish(Type type, String permNumber, String enrollmentCode, String grade) {
+        Event event;
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + publishTimeoutMillis;
+            boolean waited = false;
+            while (slowestCursor() <= nextSequence - ring.length) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                waited = true;
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (waited) {
+                publisherWaits.incrementAndGet();
+            }
+            event = new Event(nextSequence++, System.currentTimeMillis(), type, permNumber, enrollmentCode, grade);
+            ring[(int) (event.sequence % ring.length)] = event;
+            if (log != null) {
+                // Written under the lock, so lines are in sequence order
+                try {
+                    ByteBuffer line = ByteBuffer.wrap((event.toLogLine() + "\n").getBytes(StandardCharsets.UTF_8));
+                    while (line.hasRemaining()) {
+                        log.write(line);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error writing event log: " + e.getMessage());
+                }
+            }
+            lock.notifyAll();
+        }
+        published.incrementAndGet();
+        if (log != null) {
+            // Outside the lock: concurrent publishers share one force
+            try {
+                log.force(false);
+            } catch (IOException e) {
+                System.err.println("Error writing event log: " + e.getMessage());
+            }
+        }
+    }
+
+    // Caller holds lock
+    private long slowestCursor() {
+        long slowest = nextSequence;
+        for (Subscription subscription : subscriptions) {
+            slowest = Math.min(slowest, subscription.cursor);
+        }
+        return slowest;
+    }
+
+    // Delivers every logged event with sequence >= fromSequence to subscriber,
+    // in order. Returns the number delivered.
+    public static int replay(Path logFile, long fromSequence, Subscriber subscriber) throws IOException {
+        int delivered = 0;
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Event event = Event.fromLogLine(line);
+                if (event == null || event.sequence < fromSequence) {
+                    continue;
+                }
+                try {
+                    subscriber.onEvent(event);
+                } catch (Exception e) {
+                    throw new IOException("Replay stopped at event " + event.sequence + ": " + e.getMessage(), e);
+                }
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    private static long lastLoggedSequence(Path logFile) throws IOException {
+        long last = 0;
+        if (Files.exists(logFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Event event = Event.fromLogLine(line);
+                    if (event != null) {
+                        last = Math.max(last, event.sequence);
+                    }
+                }
+            }
+        }
+        return last;
+    }
+
+    public void printMetrics() {
+        System.out.println("Change events published: " + published.get() +
+                          ", publisher waited for a slow subscriber " + publisherWaits.get() + " time(s)");
+        long head;
+        synchronized (lock) {
+            head = nextSequence;
+        }
+        for (Subscription subscription : subscriptions) {
+            System.out.println("  " + subscription.name + ": " + (head - subscription.cursor) + " behind, " +
+                              subscription.missed.get() + " missed, " + subscription.failed.get() + " failed");
+        }
+    }
+
+    public void close() {
+        synchronized (lock) {
+            for (Subscription subscription : subscriptions) {
+                subscription.running = false;
+            }
+            subscriptions.clear();
+            lock.notifyAll();
+        }
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.err.println("Error closing event log: " + e.getMessage());
+            }
+        }
+    }
+
+    private class Subscription {
+        final String name;
+        final Subscriber subscriber;
+        // Sequence of the next event to deliver; guarded by lock
+        volatile long cursor;
+        volatile boolean running = true;
+        final AtomicLong missed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+
+        Subscription(String name, Subscriber subscriber, long cursor) {
+            this.name = name;
+            this.subscriber = subscriber;
+            this.cursor = cursor;
+        }
+
+        void run() {
+            List<Event> batch = new ArrayList<>();
+            while (running) {
+                long missedFrom = 0;
+                long missedTo = 0;
+                synchronized (lock) {
+                    while (running && cursor == nextSequence) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (!running) {
+                        return;
+                    }
+                    long oldest = nextSequence - ring.length;
+                    if (cursor < oldest) {
+                        missedFrom = cursor;
+                        missedTo = oldest - 1;
+                        cursor = oldest;
+                    }
+                    for (long sequence = cursor; sequence < nextSequence; sequence++) {
+                        batch.add(ring[(int) (sequence % ring.length)]);
+                    }
+                }
+                if (missedFrom > 0) {
+                    missed.addAndGet(missedTo - missedFrom + 1);
+                    subscriber.onMissed(missedFrom, missedTo);
+                }
+                for (Event event : batch) {
+                    try {
+                        subscriber.onEvent(event);
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        System.err.println("Error in event subscriber " + name + " at event " + event.sequence + ": " + e.getMessage());
+                    }
+                }
+                synchronized (lock) {
+                    // Only move forward; a skip-ahead may have happened meanwhile
+                    cursor = Math.max(cursor, batch.get(batch.size() - 1).sequence + 1);
+                    lock.notifyAll();
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    public static class Event {
+        final long sequence;
+        final long timestamp;
+        final Type type;
+        final String permNumber;
+        final String enrollmentCode;
+        final String grade;
+
+        Event(long sequence, long timestamp, Type type, String permNumber, String enrollmentCode, String grade) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.type = type;
+            this.permNumber = permNumber;
+            this.enrollmentCode = enrollmentCode;
+            this.grade = grade;
+        }
+
+        String toLogLine() {
+            return sequence + "\t" + timestamp + "\t" + type + "\t" + permNumber + "\t" +
+                   (enrollmentCode == null ? "" : enrollmentCode) + "\t" + (grade == null ? "" : grade);
+        }
+
+        // Null for a line that isn't a complete event (e.g. cut off by a crash)
+        static Event fromLogLine(String line) {
+            String[] f = line.split("\t", -1);
+            if (f.length != 6) {
+                return null;
+            }
+            try {
+                return new Event(Long.parseLong(f[0]), Long.parseLong(f[1]), Type.valueOf(f[2]), f[3],
+                                 f[4].isEmpty() ? null : f[4], f[5].isEmpty() ? null : f[5]);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return toLogLine();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Class lists read with one query per call: every row carries the offering
+// header (course, term, limit, enrolled count) next to the student columns.
+// Offerings without students still return one row with a null perm number so
+// the header is always available.
+public class ClassRoster {
+    // Rows fetched per round trip while streaming large rosters
+    static final int FETCH_SIZE = 500;
+
+    // Oracle allows at most 1000 expressions in an IN list
+    private static final int MAX_IN_LIST = 1000;
+
+    private static final String ROSTER_SELECT =
+        "SELECT co.enrollment_code, co.course_number, c.title, co.quarter, co.year, co.enroll_limit, " +
+        "COUNT(e.perm_number) OVER (PARTITION BY co.enrollment_code) AS enrolled_count, " +
+        "s.perm_number, s.name, s.major_name, s.department_name " +
+        "FROM Course_Offering co " +
+        "JOIN Course c ON co.course_number = c.course_number " +
+        "LEFT JOIN Enrolls_in e ON e.enrollment_code = co.enrollment_code AND e.status = 'Current' " +
+        "LEFT JOIN Student s ON s.perm_number = e.perm_number ";
+
+    private final Connection connection;
+
+    public ClassRoster(Connection connection) {
+        this.connection = connection;
+    }
+
+    // Streams the rosters of the given offerings, ordered by offering then
+    // student name. Returns the number of offerings found.
+    public int stream(List<String> enrollmentCodes, Consumer<Row> handler) throws SQLException {
+        int offerings = 0;
+        for (int from = 0; from < enrollmentCodes.size(); from += MAX_IN_LIST) {
+            List<String> chunk = enrollmentCodes.subList(from, Math.min(enrollmentCodes.size(), from + MAX_IN_LIST));
+            String sql = ROSTER_SELECT +
+                        "WHERE co.enrollment_code IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ") " +
+                        "ORDER BY co.enrollment_code, s.name, s.perm_number";
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setFetchSize(FETCH_SIZE);
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setString(i + 1, chunk.get(i));
+                }
+                ResultSet rs = stmt.executeQuery();
+                String lastCode = null;
+                while (rs.next()) {
+                    Row row = new Row(rs);
+                    if (!row.enrollmentCode.equals(lastCode)) {
+                        offerings++;
+                        lastCode = row.enrollmentCode;
+                    }
+                    handler.accept(row);
+                }
+            }
+        }
+        return offerings;
+    }
+
+    // One page of a roster, keyed on the last (name, perm number) of the previous
+    // page. Pass null keys for the first page. The enrolled count in each row is
+    // for the whole offering, not the page.
+    public List<Row> page(String enrollmentCode, String afterName, String afterPerm, int pageSize) throws SQLException {
+        String sql = "SELECT * FROM (" + ROSTER_SELECT + "WHERE co.enrollment_code = ?) r " +
+                    "WHERE ? IS NULL OR r.name > ? OR (r.name = ? AND r.perm_number > ?) " +
+                    "ORDER BY r.name, r.perm_number " +
+                    "FETCH FIRST ? ROWS ONLY";
+        List<Row> rows = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setFetchSize(Math.min(pageSize, FETCH_SIZE));
+            stmt.setString(1, enrollmentCode);
+            stmt.setString(2, afterName);
+            stmt.setString(3, afterName);
+            stmt.setString(4, afterName);
+            stmt.setString(5, afterPerm);
+            stmt.setInt(6, pageSize);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                rows.add(new Row(rs));
+            }
+        }
+        return rows;
+    }
+
+    // Writes the rosters as CSV, one line per enrolled student
+    public int export(List<String> enrollmentCodes, Writer out) throws SQLException, IOException {
+        out.write("enrollment_code,course_number,quarter,year,enrolled,enroll_limit,perm_number,name,major_name,department_name\n");
+        List<IOException> failure = new ArrayList<>();
+        int offerings = stream(enrollmentCodes, row -> {
+            if (row.permNumber == null || !failure.isEmpty()) {
+                return;
+            }
+            try {
+                out.write(csv(row.enrollmentCode) + "," + csv(row.courseNumber) + "," + csv(row.quarter) + "," +
+                          row.year + "," + row.enrolledCount + "," + row.enrollLimit + "," +
+                          csv(row.permNumber) + "," + csv(row.name) + "," + csv(row.majorName) + "," +
+                          csv(row.departmentName) + "\n");
+            } catch (IOException e) {
+                failure.add(e);
+            }
+        });
+        if (!failure.isEmpty()) {
+            throw failure.get(0);
+        }
+        return offerings;
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    public static class Row {
+        final String enrollmentCode;
+        final String courseNumber;
+        final String title;
+        final String quarter;
+        final int year;
+        final int enrollLimit;
+        final int enrolledCount;
+        // Null when the offering has no enrolled students
+        final String permNumber;
+        final String name;
+        final String majorName;
+        final String departmentName;
+
+        Row(ResultSet rs) throws SQLException {
+            enrollmentCode = rs.getString("enrollment_code");
+            courseNumber = rs.getString("course_number");
+            title = rs.getString("title");
+            quarter = rs.getString("quarter");
+            year = rs.getInt("year");
+            enrollLimit = rs.getInt("enroll_limit");
+            enrolledCount = rs.getInt("enrolled_count");
+            permNumber = rs.getString("perm_number");
+            name = rs.getString("name");
+            majorName = rs.getString("major_name");
+            departmentName = rs.getString("department_name");
+        }
+
+        private Row(Row row, int enrolledCount) {
+            enrollmentCode = row.enrollmentCode;
+            courseNumber = row.courseNumber;
+            title = row.title;
+            quarter = row.quarter;
+            year = row.year;
+            enrollLimit = row.enrollLimit;
+            this.enrolledCount = enrolledCount;
+            permNumber = row.permNumber;
+            name = row.name;
+            majorName = row.majorName;
+            departmentName = row.departmentName;
+        }
+
+        // The same row with the offering's total from several databases
+        Row withEnrolledCount(int enrolledCount) {
+            return new Row(this, enrolledCount);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// In-memory copy of what graduation planning needs from the catalog: which
+// courses exist, which quarter types (Fall, Winter, Spring) each course has
+// ever been offered in, the course of each offering and each course's
+// prerequisites. Read-only once loaded, so any number of plans and
+// prerequisite checks can use it at the same time.
+public class CourseCatalog {
+    private final Set<String> courses = new HashSet<>();
+    private final Map<String, Set<String>> offeredQuarters = new HashMap<>();
+    private final Map<String, String> offeringCourses = new HashMap<>();
+    private final Map<String, List<String>> prerequisites = new HashMap<>();
+
+    private CourseCatalog() {
+    }
+
+    static CourseCatalog load(Connection connection) throws SQLException {
+        CourseCatalog catalog = new CourseCatalog();
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT course_number FROM Course")) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                catalog.courses.add(rs.getString("course_number"));
+            }
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT enrollment_code, course_number, quarter FROM Course_Offering")) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                String courseNumber = rs.getString("course_number");
+                catalog.offeringCourses.put(rs.getString("enrollment_code"), courseNumber);
+                catalog.offeredQuarters.computeIfAbsent(courseNumber, course -> new HashSet<>())
+                                       .add(rs.getString("quarter"));
+            }
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT course_number, prerequisite_course_number FROM Prerequisite")) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                catalog.prerequisites.computeIfAbsent(rs.getString("course_number"), course -> new ArrayList<>())
+                                     .add(rs.getString("prerequisite_course_number"));
+            }
+        }
+        return catalog;
+    }
+
+    public boolean exists(String courseNumber) {
+        return courses.contains(courseNumber);
+    }
+
+    public boolean isOfferedIn(String courseNumber, String quarterType) {
+        return offeredQuarters.getOrDefault(courseNumber, Collections.emptySet()).contains(quarterType);
+    }
+
+    // Null for offerings created after the catalog was loaded
+    public String courseOf(String enrollmentCode) {
+        return offeringCourses.get(enrollmentCode);
+    }
+
+    public List<String> prerequisitesOf(String courseNumber) {
+        return prerequisites.getOrDefault(courseNumber, Collections.emptyList());
+    }
+
+    // The course exists and every prerequisite is in completed
+    public boolean canTake(String courseNumber, Set<String> completed) {
+        return exists(courseNumber) && completed.containsAll(prerequisitesOf(courseNumber));
+    }
+}
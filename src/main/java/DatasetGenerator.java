@@ -0,0 +1,780 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+// Synthetic university for benchmarks and load tests.
+//
+// The same spec and seed always give the same rows, whichever sink they go
+// to. What gets generated:
+//   - departments, each with courses in prerequisiteDepth + 1 tiers; every
+//     course above tier 0 requires a course one tier down (so the longest
+//     prerequisite chain is exactly prerequisiteDepth) and maybe a few lower
+//     ones, some from the first department (the service department)
+//   - majors per department: required courses with everything they depend
+//     on, electives from the upper tiers
+//   - an offering of every course in each quarter type it runs in, every term
+//     from Winter of (current year - years) through the current term, with
+//     enroll limits sized to the student body
+//   - students who enter in some Fall of that window and take 2 to 5 courses
+//     a quarter for about four years: major requirements first, only with
+//     prerequisites passed, only where seats are left. Past quarters get
+//     grades that depend on the student and the course; the current term's
+//     enrollments are Current
+//
+// Students are generated one at a time and their rows streamed to the sink,
+// so millions of enrollments take no more memory than the catalog.
+//
+// config.properties keys (all optional): DATASET_SEED, DATASET_STUDENTS,
+// DATASET_DEPARTMENTS, DATASET_COURSES_PER_DEPARTMENT,
+// DATASET_MAJORS_PER_DEPARTMENT, DATASET_PREREQUISITE_DEPTH, DATASET_YEARS.
+public class DatasetGenerator {
+    public enum Table {
+        COURSE("Course", "course_number", "title"),
+        PREREQUISITE("Prerequisite", "course_number", "prerequisite_course_number"),
+        MAJOR("Major", "name", "elective_number"),
+        PART_OF_MAJOR("Part_of_Major", "major_name", "course_number", "required"),
+        COURSE_OFFERING("Course_Offering", "enrollment_code", "course_number", "quarter", "year", "enroll_limit",
+                        "prof_first_name", "prof_last_name"),
+        STUDENT("Student", "perm_number", "name", "address", "major_name", "department_name"),
+        ENROLLS_IN("Enrolls_in", "perm_number", "enrollment_code", "year", "quarter", "status", "grade",
+                   "grade_points");
+
+        final String tableName;
+        final String[] columns;
+
+        Table(String tableName, String... columns) {
+            this.tableName = tableName;
+            this.columns = columns;
+        }
+    }
+
+    // Where generated rows go. Rows arrive parents first.
+    public interface Sink extends AutoCloseable {
+        void row(Table table, Object... values) throws IOException, SQLException;
+
+        @Override
+        void close() throws IOException, SQLException;
+    }
+
+    private static final String[][] DEPARTMENTS = {
+        {"MATH", "Mathematics"}, {"CMPSC", "Computer Science"}, {"PHYS", "Physics"}, {"CHEM", "Chemistry"},
+        {"ECON", "Economics"}, {"PSTAT", "Statistics"}, {"ECE", "Electrical Engineering"},
+        {"ME", "Mechanical Engineering"}, {"MCDB", "Molecular Biology"}, {"EEMB", "Ecology"},
+        {"ENGL", "English"}, {"HIST", "History"}, {"PSY", "Psychology"}, {"SOC", "Sociology"},
+        {"POLS", "Political Science"}, {"PHIL", "Philosophy"}, {"ART", "Art"}, {"MUS", "Music"},
+        {"GEOG", "Geography"}, {"COMM", "Communication"}, {"LING", "Linguistics"}, {"ANTH", "Anthropology"},
+        {"ES", "Environmental Studies"}, {"CHE", "Chemical Engineering"},
+    };
+    private static final String[] TIER_TITLES = {
+        "Introduction to", "Foundations of", "Intermediate", "Topics in", "Advanced", "Seminar in", "Research in",
+    };
+    private static final String[] MAJOR_SUFFIXES = {"", " (Applied)", " (Honors)", " (Quantitative)"};
+    private static final String[] FIRST_NAMES = {
+        "Alex", "Jordan", "Taylor", "Morgan", "Casey", "Riley", "Jamie", "Avery", "Quinn", "Harper", "Rowan",
+        "Emerson", "Hayden", "Parker", "Reese", "Skyler", "Dakota", "Sage", "Kendall", "Finley", "Maya", "Wei",
+        "Priya", "Diego", "Amara", "Kenji", "Sofia", "Omar", "Lena", "Mateo",
+    };
+    private static final String[] LAST_NAMES = {
+        "Nguyen", "Garcia", "Smith", "Chen", "Patel", "Johnson", "Kim", "Martinez", "Brown", "Lee", "Lopez", "Wang",
+        "Davis", "Singh", "Rodriguez", "Wilson", "Tanaka", "Hernandez", "Clark", "Ali", "Moore", "Young", "Silva",
+        "Walker", "Cohen", "Okafor", "Rossi", "Novak", "Haddad", "Larsen",
+    };
+    private static final String[] STREETS = {
+        "Del Playa Dr", "Sabado Tarde Rd", "El Colegio Rd", "Pardall Rd", "Trigo Rd", "Embarcadero del Norte",
+        "Camino Pescadero", "Storke Rd", "Hollister Ave", "Cannon Green Dr",
+    };
+    private static final String[] QUARTERS = {"Winter", "Spring", "Fall"};
+
+    // Grades from worst to best and how often each is given, in percent
+    private static final String[] GRADES = {"F", "D-", "D", "D+", "C-", "C", "C+", "B-", "B", "B+", "A-", "A", "A+"};
+    private static final int[] GRADE_PERCENT = {5, 1, 3, 2, 5, 7, 8, 9, 13, 12, 12, 20, 3};
+    // Index of the lowest grade that satisfies a prerequisite (C)
+    private static final int FIRST_PASSING = 5;
+
+    private static final int QUARTERS_TO_GRADUATE = 12;
+    private static final int MAX_COURSES_PER_QUARTER = 5;
+
+    private final Spec spec;
+
+    // Catalog, built once by buildCatalog
+    private final List<CourseDef> courses = new ArrayList<>();
+    private final List<MajorDef> majors = new ArrayList<>();
+    private double[] majorWeights;
+    private Term[] terms;
+    // sections[term][course]: offering ids of the course that term (or null)
+    private int[][][] sections;
+    private int[] offeringTerms;
+    private int[] offeringCourses;
+    private String[] offeringCodes;
+    private int[] offeringLimits;
+    private int[] offeringEnrolled;
+
+    private final Map<Table, Long> counts = new EnumMap<>(Table.class);
+
+    public DatasetGenerator(Spec spec) {
+        this.spec = spec;
+    }
+
+    public static class Spec {
+        final long seed;
+        final int students;
+        final int departments;
+        final int coursesPerDepartment;
+        final int majorsPerDepartment;
+        final int prerequisiteDepth;
+        final int years;
+        final Term currentTerm;
+
+        public Spec(long seed, int students, int departments, int coursesPerDepartment, int majorsPerDepartment,
+                    int prerequisiteDepth, int years, Term currentTerm) {
+            this.seed = seed;
+            this.students = Math.max(1, students);
+            this.departments = Math.max(1, departments);
+            this.coursesPerDepartment = Math.max(prerequisiteDepth + 1, coursesPerDepartment);
+            this.majorsPerDepartment = Math.max(1, Math.min(MAJOR_SUFFIXES.length, majorsPerDepartment));
+            this.prerequisiteDepth = Math.max(0, Math.min(TIER_TITLES.length - 1, prerequisiteDepth));
+            this.years = Math.max(1, years);
+            this.currentTerm = currentTerm;
+        }
+
+        public static Spec fromConfig(Properties props) {
+            return new Spec(
+                longSetting(props, "DATASET_SEED", 42),
+                (int) longSetting(props, "DATASET_STUDENTS", 10000),
+                (int) longSetting(props, "DATASET_DEPARTMENTS", 12),
+                (int) longSetting(props, "DATASET_COURSES_PER_DEPARTMENT", 40),
+                (int) longSetting(props, "DATASET_MAJORS_PER_DEPARTMENT", 2),
+                (int) longSetting(props, "DATASET_PREREQUISITE_DEPTH", 5),
+                (int) longSetting(props, "DATASET_YEARS", 4),
+                Term.fromConfig(props));
+        }
+
+        private static long longSetting(Properties props, String key, long defaultValue) {
+            String value = props.getProperty(key, String.valueOf(defaultValue)).trim();
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid " + key + " '" + value + "', using " + defaultValue);
+                return defaultValue;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return students + " students, " + departments + " departments x " + coursesPerDepartment +
+                   " courses, prerequisite depth " + prerequisiteDepth + ", " + years + " year(s) to " +
+                   currentTerm + ", seed " + seed;
+        }
+    }
+
+    // Generates everything into sink; returns rows written per table
+    public Map<Table, Long> generate(Sink sink) throws IOException, SQLException {
+        buildCatalog(new SplittableRandom(spec.seed));
+        for (CourseDef course : courses) {
+            emit(sink, Table.COURSE, course.number, course.title);
+        }
+        for (CourseDef course : courses) {
+            for (int prerequisite : course.prerequisites) {
+                emit(sink, Table.PREREQUISITE, course.number, courses.get(prerequisite).number);
+            }
+        }
+        for (MajorDef major : majors) {
+            emit(sink, Table.MAJOR, major.name, major.electivesRequired);
+            for (int course : major.required) {
+                emit(sink, Table.PART_OF_MAJOR, major.name, courses.get(course).number, 1);
+            }
+            for (int course : major.electives) {
+                emit(sink, Table.PART_OF_MAJOR, major.name, courses.get(course).number, 0);
+            }
+        }
+        SplittableRandom professors = new SplittableRandom(spec.seed ^ 0x5DEECE66DL);
+        for (int offering = 0; offering < offeringCodes.length; offering++) {
+            Term term = terms[offeringTerms[offering]];
+            emit(sink, Table.COURSE_OFFERING, offeringCodes[offering], courses.get(offeringCourses[offering]).number,
+                 term.quarter, term.year, offeringLimits[offering],
+                 pick(professors, FIRST_NAMES), pick(professors, LAST_NAMES));
+        }
+
+        int permBase = spec.students < 9_000_000 ? 1_000_000 : 10_000_000;
+        for (int i = 0; i < spec.students; i++) {
+            generateStudent(sink, String.valueOf(permBase + i), new SplittableRandom(mix(spec.seed, i)));
+            if ((i + 1) % 50_000 == 0) {
+                System.out.println("  " + (i + 1) + " students, " + counts.getOrDefault(Table.ENROLLS_IN, 0L) +
+                                   " enrollments");
+            }
+        }
+        return counts;
+    }
+
+    private void emit(Sink sink, Table table, Object... values) throws IOException, SQLException {
+        sink.row(table, values);
+        counts.merge(table, 1L, Long::sum);
+    }
+
+    // Catalog
+
+    private void buildCatalog(SplittableRandom random) {
+        int tiers = spec.prerequisiteDepth + 1;
+        // courseIds[department][tier]: ids of that tier's courses
+        List<List<List<Integer>>> courseIds = new ArrayList<>();
+        for (int d = 0; d < spec.departments; d++) {
+            String[] department = department(d);
+            List<List<Integer>> byTier = new ArrayList<>();
+            for (int t = 0; t < tiers; t++) {
+                byTier.add(new ArrayList<>());
+            }
+            // Lower tiers hold more courses: weights tiers, tiers-1, ..., 1
+            int weightSum = tiers * (tiers + 1) / 2;
+            int made = 0;
+            int nextNumber = 1;
+            for (int t = 0; t < tiers; t++) {
+                int count = t == tiers - 1 ? spec.coursesPerDepartment - made
+                                           : Math.max(1, spec.coursesPerDepartment * (tiers - t) / weightSum);
+                count = Math.min(count, spec.coursesPerDepartment - made - (tiers - 1 - t));
+                for (int j = 0; j < count; j++) {
+                    int number = Math.max(nextNumber, tierBase(t, tiers));
+                    nextNumber = number + 1;
+                    CourseDef course = new CourseDef(courses.size(), d, t, department[0] + number,
+                        TIER_TITLES[t] + " " + department[1] + " " + (char) ('A' + j % 26) + (j >= 26 ? j / 26 : ""));
+                    // Intro courses run most quarters, advanced ones once or twice a year
+                    int offered = 0;
+                    while (offered == 0) {
+                        for (int q = 0; q < QUARTERS.length; q++) {
+                            if (random.nextDouble() < (t == 0 ? 0.85 : t == 1 ? 0.6 : 0.4)) {
+                                course.quarters.set(q);
+                                offered++;
+                            }
+                        }
+                    }
+                    byTier.get(t).add(course.id);
+                    courses.add(course);
+                }
+                made += count;
+            }
+            courseIds.add(byTier);
+        }
+
+        // Prerequisites: one course a tier down, sometimes more from any lower
+        // tier, sometimes one from the service department
+        for (CourseDef course : courses) {
+            if (course.tier == 0) {
+                continue;
+            }
+            List<List<Integer>> own = courseIds.get(course.department);
+            List<Integer> prerequisites = new ArrayList<>();
+            prerequisites.add(pick(random, own.get(course.tier - 1)));
+            int extra = random.nextInt(100) < 40 ? 1 + random.nextInt(2) : 0;
+            for (int k = 0; k < extra; k++) {
+                int tier = random.nextInt(course.tier);
+                int prerequisite = pick(random, own.get(tier));
+                if (!prerequisites.contains(prerequisite)) {
+                    prerequisites.add(prerequisite);
+                }
+            }
+            if (course.department != 0 && random.nextInt(100) < 15) {
+                List<Integer> service = courseIds.get(0).get(Math.min(course.tier - 1, 1));
+                int prerequisite = pick(random, service);
+                if (!prerequisites.contains(prerequisite)) {
+                    prerequisites.add(prerequisite);
+                }
+            }
+            course.prerequisites = prerequisites.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // Majors: a spine of required courses through the tiers plus their
+        // prerequisites, electives from the rest of the upper tiers
+        for (int d = 0; d < spec.departments; d++) {
+            List<List<Integer>> byTier = courseIds.get(d);
+            for (int m = 0; m < spec.majorsPerDepartment; m++) {
+                BitSet required = new BitSet();
+                for (int t = 0; t < tiers; t++) {
+                    List<Integer> tierCourses = byTier.get(t);
+                    int wanted = Math.max(1, Math.min(tierCourses.size(), (tiers - t + 1) / 2));
+                    for (int k = 0; k < wanted; k++) {
+                        addWithPrerequisites(required, pick(random, tierCourses));
+                    }
+                }
+                List<Integer> electives = new ArrayList<>();
+                for (int t = Math.min(2, tiers - 1); t < tiers; t++) {
+                    for (int course : byTier.get(t)) {
+                        if (!required.get(course) && random.nextInt(100) < 60) {
+                            electives.add(course);
+                        }
+                    }
+                }
+                int[] requiredIds = required.stream().toArray();
+                // Lower tiers first, so students take requirements in order
+                sortByTier(requiredIds);
+                int[] electiveIds = electives.stream().mapToInt(Integer::intValue).toArray();
+                sortByTier(electiveIds);
+                majors.add(new MajorDef(department(d)[1] + MAJOR_SUFFIXES[m], department(d)[1], requiredIds,
+                    electiveIds, Math.min(electiveIds.length, 3 + random.nextInt(4))));
+            }
+        }
+        // A few popular majors, a long tail of small ones
+        majorWeights = new double[majors.size()];
+        double total = 0;
+        for (int m = 0; m < majors.size(); m++) {
+            total += 1.0 / (1 + (m + random.nextInt(majors.size())) * 0.3);
+            majorWeights[m] = total;
+        }
+
+        buildOfferings(random);
+    }
+
+    private void addWithPrerequisites(BitSet required, int course) {
+        if (required.get(course)) {
+            return;
+        }
+        required.set(course);
+        for (int prerequisite : courses.get(course).prerequisites) {
+            addWithPrerequisites(required, prerequisite);
+        }
+    }
+
+    private void sortByTier(int[] ids) {
+        Integer[] boxed = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            boxed[i] = ids[i];
+        }
+        Arrays.sort(boxed, (a, b) -> courses.get(a).tier != courses.get(b).tier
+            ? Integer.compare(courses.get(a).tier, courses.get(b).tier) : Integer.compare(a, b));
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = boxed[i];
+        }
+    }
+
+    private void buildOfferings(SplittableRandom random) {
+        List<Term> window = new ArrayList<>();
+        for (Term term = new Term("Winter", spec.currentTerm.year - spec.years); ; term = term.next()) {
+            window.add(term);
+            if (term.equals(spec.currentTerm)) {
+                break;
+            }
+        }
+        terms = window.toArray(new Term[0]);
+
+        // Students in a term, times courses each, spread over that term's
+        // offerings with headroom; intro courses get bigger rooms
+        double activeStudents = (double) spec.students * QUARTERS_TO_GRADUATE / Math.max(QUARTERS_TO_GRADUATE, terms.length);
+        double seatsPerTerm = activeStudents * 3.5 * 1.6;
+        double weightPerTerm = 0;
+        for (CourseDef course : courses) {
+            weightPerTerm += tierWeight(course.tier) * course.quarters.cardinality() / (double) QUARTERS.length;
+        }
+
+        sections = new int[terms.length][courses.size()][];
+        List<Integer> limits = new ArrayList<>();
+        List<Integer> offeringTermList = new ArrayList<>();
+        List<Integer> offeringCourseList = new ArrayList<>();
+        for (int t = 0; t < terms.length; t++) {
+            int quarter = Arrays.asList(QUARTERS).indexOf(terms[t].quarter);
+            for (CourseDef course : courses) {
+                if (!course.quarters.get(quarter)) {
+                    continue;
+                }
+                int seats = (int) Math.ceil(seatsPerTerm * tierWeight(course.tier) / weightPerTerm);
+                // Big intro courses split into sections of at most 300
+                int count = Math.max(1, (seats + 299) / 300);
+                sections[t][course.id] = new int[count];
+                for (int s = 0; s < count; s++) {
+                    sections[t][course.id][s] = limits.size();
+                    limits.add(Math.max(20, seats / count + random.nextInt(11) - 5));
+                    offeringTermList.add(t);
+                    offeringCourseList.add(course.id);
+                }
+            }
+        }
+        offeringLimits = limits.stream().mapToInt(Integer::intValue).toArray();
+        offeringTerms = offeringTermList.stream().mapToInt(Integer::intValue).toArray();
+        offeringCourses = offeringCourseList.stream().mapToInt(Integer::intValue).toArray();
+        offeringEnrolled = new int[offeringLimits.length];
+        offeringCodes = new String[offeringLimits.length];
+        int codeWidth = Math.max(5, String.valueOf(10_000 + offeringCodes.length).length());
+        for (int i = 0; i < offeringCodes.length; i++) {
+            offeringCodes[i] = String.format("%0" + codeWidth + "d", 10_000 + i);
+        }
+    }
+
+    private static double tierWeight(int tier) {
+        return tier == 0 ? 3 : tier == 1 ? 2 : 1;
+    }
+
+    // Students
+
+    private void generateStudent(Sink sink, String permNumber, SplittableRandom random)
+            throws IOException, SQLException {
+        int majorIndex = pickWeighted(random, majorWeights);
+        MajorDef major = majors.get(majorIndex);
+        emit(sink, Table.STUDENT, permNumber, pick(random, FIRST_NAMES) + " " + pick(random, LAST_NAMES),
+             (1 + random.nextInt(9999)) + " " + pick(random, STREETS) + ", Isla Vista, CA",
+             major.name, major.departmentName);
+
+        // Enter in one of the window's Falls (or its first term); a few leave early
+        List<Integer> entries = new ArrayList<>();
+        entries.add(0);
+        for (int t = 1; t < terms.length; t++) {
+            if (terms[t].quarter.equals("Fall")) {
+                entries.add(t);
+            }
+        }
+        int entry = pick(random, entries);
+        int quarters = random.nextInt(100) < 5 ? 1 + random.nextInt(6)
+                                               : QUARTERS_TO_GRADUATE - 1 + random.nextInt(3);
+        double ability = random.nextGaussian();
+
+        BitSet passed = new BitSet();
+        BitSet taking = new BitSet();
+        int current = terms.length - 1;
+        for (int t = entry; t < Math.min(terms.length, entry + quarters); t++) {
+            int load = pickLoad(random);
+            taking.clear();
+            chooseCourses(major.required, passed, taking, t, load, random, false);
+            chooseCourses(major.electives, passed, taking, t, load, random, true);
+            chooseGeneral(major, passed, taking, t, load, random);
+            for (int course = taking.nextSetBit(0); course >= 0; course = taking.nextSetBit(course + 1)) {
+                int offering = openSection(t, course);
+                offeringEnrolled[offering]++;
+                if (t == current) {
+                    emit(sink, Table.ENROLLS_IN, permNumber, offeringCodes[offering], terms[t].year, terms[t].quarter,
+                         "Current", null, null);
+                } else {
+                    int grade = drawGrade(random, ability, courses.get(course).tier);
+                    emit(sink, Table.ENROLLS_IN, permNumber, offeringCodes[offering], terms[t].year, terms[t].quarter,
+                         "Past", GRADES[grade], StudentTransactions.calculateGradePoints(GRADES[grade]));
+                    if (grade >= FIRST_PASSING) {
+                        passed.set(course);
+                    }
+                }
+            }
+        }
+    }
+
+    // Adds courses from candidates (in order, or shuffled) until taking holds load
+    private void chooseCourses(int[] candidates, BitSet passed, BitSet taking, int term, int load,
+                               SplittableRandom random, boolean shuffled) {
+        int start = shuffled && candidates.length > 0 ? random.nextInt(candidates.length) : 0;
+        for (int k = 0; k < candidates.length && taking.cardinality() < load; k++) {
+            int course = candidates[(start + k) % candidates.length];
+            if (!passed.get(course) && !taking.get(course) && canTake(course, passed)
+                && openSection(term, course) >= 0) {
+                taking.set(course);
+            }
+        }
+    }
+
+    // Fills the rest of the load with lower-division courses from anywhere,
+    // mostly the student's own department
+    private void chooseGeneral(MajorDef major, BitSet passed, BitSet taking, int term, int load,
+                               SplittableRandom random) {
+        for (int attempt = 0; attempt < 40 && taking.cardinality() < load; attempt++) {
+            int course = random.nextInt(courses.size());
+            CourseDef def = courses.get(course);
+            if (def.tier <= 1 && !passed.get(course) && !taking.get(course) && canTake(course, passed)
+                && openSection(term, course) >= 0
+                && (department(def.department)[1].equals(major.departmentName) || random.nextInt(100) < 60)) {
+                taking.set(course);
+            }
+        }
+    }
+
+    private boolean canTake(int course, BitSet passed) {
+        for (int prerequisite : courses.get(course).prerequisites) {
+            if (!passed.get(prerequisite)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // First section of course in term with a seat left, or -1
+    private int openSection(int term, int course) {
+        int[] courseSections = sections[term][course];
+        if (courseSections != null) {
+            for (int offering : courseSections) {
+                if (offeringEnrolled[offering] < offeringLimits[offering]) {
+                    return offering;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int pickLoad(SplittableRandom random) {
+        int roll = random.nextInt(100);
+        return roll < 10 ? 2 : roll < 50 ? 3 : roll < 95 ? 4 : MAX_COURSES_PER_QUARTER;
+    }
+
+    // Stronger students and easier courses shift the draw toward better grades.
+    // The score has unit variance, so over all students and courses grades
+    // come out close to GRADE_PERCENT.
+    private static int drawGrade(SplittableRandom random, double ability, int tier) {
+        double z = 0.75 * ability + 0.66 * random.nextGaussian() - 0.08 * (tier - 2);
+        // Logistic approximation of the normal CDF
+        double p = 1 / (1 + Math.exp(-1.702 * z));
+        int cumulative = 0;
+        for (int g = 0; g < GRADES.length; g++) {
+            cumulative += GRADE_PERCENT[g];
+            if (p * 100 < cumulative) {
+                return g;
+            }
+        }
+        return GRADES.length - 1;
+    }
+
+    // Helpers
+
+    private static String[] department(int index) {
+        String[] department = DEPARTMENTS[index % DEPARTMENTS.length];
+        int round = index / DEPARTMENTS.length;
+        if (round == 0) {
+            return department;
+        }
+        return new String[] {department[0] + (round + 1), department[1] + " " + (round + 1)};
+    }
+
+    // Where a tier's course numbers start: 1-99 lower division, 100-199
+    // upper, 200+ graduate. A crowded tier runs into the next one's numbers.
+    private static int tierBase(int tier, int tiers) {
+        if (tier < 2) {
+            return 1 + tier * 40;
+        }
+        if (tier == tiers - 1 && tiers > 4) {
+            return 200;
+        }
+        return 100 + (tier - 2) * (100 / Math.max(1, tiers - 2));
+    }
+
+    private static <T> T pick(SplittableRandom random, T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static <T> T pick(SplittableRandom random, List<T> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static int pickWeighted(SplittableRandom random, double[] cumulative) {
+        double roll = random.nextDouble() * cumulative[cumulative.length - 1];
+        for (int i = 0; i < cumulative.length; i++) {
+            if (roll < cumulative[i]) {
+                return i;
+            }
+        }
+        return cumulative.length - 1;
+    }
+
+    // SplitMix64 finalizer: well spread per-student seeds
+    private static long mix(long seed, long index) {
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static class CourseDef {
+        final int id;
+        final int department;
+        final int tier;
+        final String number;
+        final String title;
+        // Quarter types (index into QUARTERS) the course runs in
+        final BitSet quarters = new BitSet();
+        int[] prerequisites = new int[0];
+
+        CourseDef(int id, int department, int tier, String number, String title) {
+            this.id = id;
+            this.department = department;
+            this.tier = tier;
+            this.number = number;
+            this.title = title;
+        }
+    }
+
+    private static class MajorDef {
+        final String name;
+        final String departmentName;
+        final int[] required;
+        final int[] electives;
+        final int electivesRequired;
+
+        MajorDef(String name, String departmentName, int[] required, int[] electives, int electivesRequired) {
+            this.name = name;
+            this.departmentName = departmentName;
+            this.required = required;
+            this.electives = electives;
+            this.electivesRequired = electivesRequired;
+        }
+    }
+
+    // Sinks
+
+    // Batched inserts. Pending batches are executed together in table order,
+    // so a child row never reaches the database before its parent.
+    public static class JdbcSink implements Sink {
+        private static final int BATCH_SIZE = 1000;
+        private static final int COMMIT_EVERY = 20_000;
+
+        private final Connection connection;
+        private final Map<Table, PreparedStatement> statements = new LinkedHashMap<>();
+        private final boolean autoCommit;
+        private int pending;
+        private int uncommitted;
+
+        public JdbcSink(Connection connection) throws SQLException {
+            this.connection = connection;
+            this.autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+        }
+
+        @Override
+        public void row(Table table, Object... values) throws SQLException {
+            PreparedStatement stmt = statements.get(table);
+            if (stmt == null) {
+                String placeholders = String.join(", ", Collections.nCopies(table.columns.length, "?"));
+                stmt = connection.prepareStatement("INSERT INTO " + table.tableName + " (" +
+                    String.join(", ", table.columns) + ") VALUES (" + placeholders + ")");
+                statements.put(table, stmt);
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    stmt.setNull(i + 1, Types.VARCHAR);
+                } else {
+                    stmt.setObject(i + 1, values[i]);
+                }
+            }
+            stmt.addBatch();
+            if (++pending >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() throws SQLException {
+            for (PreparedStatement stmt : statements.values()) {
+                stmt.executeBatch();
+            }
+            uncommitted += pending;
+            pending = 0;
+            if (uncommitted >= COMMIT_EVERY) {
+                connection.commit();
+                uncommitted = 0;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                flush();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                for (PreparedStatement stmt : statements.values()) {
+                    stmt.close();
+                }
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    // One CSV file per table plus a SQL*Loader control file for a direct
+    // path load: sqlldr control=<Table>.ctl direct=true, parents first
+    // (Course, Prerequisite, Major, Part_of_Major, Course_Offering, Student,
+    // Enrolls_in).
+    public static class FileSink implements Sink {
+        private final Path directory;
+        private final Map<Table, BufferedWriter> writers = new EnumMap<>(Table.class);
+
+        public FileSink(Path directory) throws IOException {
+            this.directory = directory;
+            Files.createDirectories(directory);
+        }
+
+        @Override
+        public void row(Table table, Object... values) throws IOException {
+            BufferedWriter out = writers.get(table);
+            if (out == null) {
+                out = Files.newBufferedWriter(directory.resolve(table.tableName + ".csv"), StandardCharsets.UTF_8);
+                writers.put(table, out);
+                writeControlFile(table);
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write(csv(values[i]));
+            }
+            out.newLine();
+        }
+
+        private static String csv(Object value) {
+            if (value == null) {
+                return "";
+            }
+            String text = value.toString();
+            if (text.indexOf(',') < 0 && text.indexOf('"') < 0) {
+                return text;
+            }
+            return '"' + text.replace("\"", "\"\"") + '"';
+        }
+
+        private void writeControlFile(Table table) throws IOException {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(
+                    directory.resolve(table.tableName + ".ctl"), StandardCharsets.UTF_8))) {
+                out.println("LOAD DATA");
+                out.println("CHARACTERSET UTF8");
+                out.println("INFILE '" + table.tableName + ".csv'");
+                out.println("APPEND INTO TABLE " + table.tableName);
+                out.println("FIELDS TERMINATED BY ',' OPTIONALLY ENCLOSED BY '\"'");
+                out.println("TRAILING NULLCOLS");
+                out.println("(" + String.join(", ", table.columns) + ")");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (BufferedWriter out : writers.values()) {
+                out.close();
+            }
+        }
+    }
+
+    // Enrollments only, straight into an off-heap EnrollmentStore
+    public static class StoreSink implements Sink {
+        private final EnrollmentStore store;
+
+        public StoreSink(EnrollmentStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public void row(Table table, Object... values) throws IOException {
+            if (table == Table.ENROLLS_IN) {
+                store.add((String) values[0], (String) values[1], (String) values[5],
+                          "Current".equals(values[4]) ? EnrollmentStore.STATUS_CURRENT : EnrollmentStore.STATUS_PAST);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            store.force();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+// Moves enrollments of closed quarters from Enrolls_in to Enrolls_in_Archive.
+//
+// Registration only ever looks at 'Current' rows, but they share Enrolls_in
+// and its indexes with every past quarter. Archiving keeps Enrolls_in down to
+// the current term plus the last keepQuarters closed quarters (late grade
+// changes and recent transcripts), so its indexes stay small.
+//
+// History queries (transcripts, grade mailers, aggregate rebuilds, snapshots)
+// read the Enrolls_in_All view, the union of both tables; see historyTable.
+// Current rows and rows of a quarter that is still kept are never moved, so
+// adds, drops, grading and rollover only need Enrolls_in.
+//
+// Each offering's rows move in one transaction (lock them, insert them into
+// the archive, then delete them), so an interrupted run can simply be run
+// again. The lock keeps a late grade change from committing between the copy
+// and the delete, where the archive would keep the old grade.
+public class EnrollmentArchive {
+    static final String HOT_TABLE = "Enrolls_in";
+    static final String HISTORY_VIEW = "Enrolls_in_All";
+
+    private static final int DEFAULT_KEEP_QUARTERS = 2;
+    // Offerings moved per commit
+    private static final int OFFERINGS_PER_COMMIT = 50;
+
+    private final Connection connection;
+    private final TransactionTemplate transactions;
+
+    public EnrollmentArchive(Connection connection, TransactionTemplate transactions) {
+        this.connection = connection;
+        this.transactions = transactions;
+    }
+
+    // ARCHIVE_KEEP_QUARTERS from config.properties, 2 by default
+    public static int keepQuartersFromConfig(Properties props) {
+        String value = props.getProperty("ARCHIVE_KEEP_QUARTERS", String.valueOf(DEFAULT_KEEP_QUARTERS)).trim();
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid ARCHIVE_KEEP_QUARTERS '" + value + "', using " + DEFAULT_KEEP_QUARTERS);
+            return DEFAULT_KEEP_QUARTERS;
+        }
+    }
+
+    // The table history queries should read: the union view once the archive
+    // migration has run, Enrolls_in before that
+    static String historyTable(Connection connection) {
+        String sql = "SELECT 1 FROM USER_VIEWS WHERE view_name = 'ENROLLS_IN_ALL'";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            return stmt.executeQuery().next() ? HISTORY_VIEW : HOT_TABLE;
+        } catch (SQLException e) {
+            return HOT_TABLE;
+        }
+    }
+
+    // Quarters with rows in Enrolls_in that are older than the current term
+    // and the keepQuarters quarters before it, oldest first
+    public List<Term> closedQuarters(Term currentTerm, int keepQuarters) throws SQLException {
+        List<Term> quarters = new ArrayList<>();
+        String sql = "SELECT DISTINCT co.quarter, co.year FROM Enrolls_in e " +
+                    "JOIN Course_Offering co ON e.enrollment_code = co.enrollment_code " +
+                    "WHERE e.status <> 'Current'";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                Term term = new Term(rs.getString("quarter"), rs.getInt("year"));
+                if (term.ordinal() < currentTerm.ordinal() - keepQuarters) {
+                    quarters.add(term);
+                }
+            }
+        }
+        quarters.sort((a, b) -> Integer.compare(a.ordinal(), b.ordinal()));
+        return quarters;
+    }
+
+    // Moves every non-current row of the quarter's offerings to the archive;
+    // returns the number of rows moved
+    public long archiveQuarter(Term quarter) throws SQLException {
+        List<String> offerings = new ArrayList<>();
+        String sql = "SELECT enrollment_code FROM Course_Offering WHERE quarter = ? AND year = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, quarter.quarter);
+            stmt.setInt(2, quarter.year);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                offerings.add(rs.getString("enrollment_code"));
+            }
+        }
+
+        String lockSql = "SELECT 1 FROM Enrolls_in WHERE enrollment_code = ? AND status <> 'Current' FOR UPDATE";
+        String copySql = "INSERT INTO Enrolls_in_Archive " +
+                        "SELECT * FROM Enrolls_in WHERE enrollment_code = ? AND status <> 'Current'";
+        String deleteSql = "DELETE FROM Enrolls_in WHERE enrollment_code = ? AND status <> 'Current'";
+        long moved = 0;
+        for (int start = 0; start < offerings.size(); start += OFFERINGS_PER_COMMIT) {
+            List<String> chunk = offerings.subList(start, Math.min(offerings.size(), start + OFFERINGS_PER_COMMIT));
+            moved += transactions.execute(conn -> {
+                long chunkMoved = 0;
+                try (PreparedStatement lock = conn.prepareStatement(lockSql);
+                     PreparedStatement copy = conn.prepareStatement(copySql);
+                     PreparedStatement delete = conn.prepareStatement(deleteSql)) {
+                    for (String enrollmentCode : chunk) {
+                        lock.setString(1, enrollmentCode);
+                        try (ResultSet rs = lock.executeQuery()) {
+                            while (rs.next()) {
+                                // Locks are taken as the rows are fetched
+                            }
+                        }
+                        copy.setString(1, enrollmentCode);
+                        int copied = copy.executeUpdate();
+                        if (copied == 0) {
+                            continue;
+                        }
+                        delete.setString(1, enrollmentCode);
+                        int deleted = delete.executeUpdate();
+                        if (deleted != copied) {
+                            // Rows changed between the two statements; roll back and let a rerun retry
+                            throw new SQLException("Offering " + enrollmentCode + ": copied " + copied +
+                                                   " rows but deleted " + deleted);
+                        }
+                        chunkMoved += copied;
+                    }
+                }
+                return chunkMoved;
+            });
+        }
+        return moved;
+    }
+
+    // Archives every closed quarter; returns the number of rows moved
+    public long archiveClosedQuarters(Term currentTerm, int keepQuarters) throws SQLException {
+        long moved = 0;
+        for (Term quarter : closedQuarters(currentTerm, keepQuarters)) {
+            long quarterMoved = archiveQuarter(quarter);
+            System.out.println(quarter + ": " + quarterMoved + " enrollment(s) archived");
+            moved += quarterMoved;
+        }
+        if (moved > 0) {
+            compactIndexes();
+        }
+        return moved;
+    }
+
+    // Merges the leaf blocks the archived rows left half empty, so the
+    // Enrolls_in indexes shrink to the remaining rows. Online; failures only
+    // cost space.
+    private void compactIndexes() {
+        List<String> indexes = new ArrayList<>();
+        String sql = "SELECT index_name FROM USER_INDEXES WHERE table_name = 'ENROLLS_IN' AND index_type LIKE '%NORMAL'";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                indexes.add(rs.getString("index_name"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error listing Enrolls_in indexes: " + e.getMessage());
+            return;
+        }
+        for (String index : indexes) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("ALTER INDEX \"" + index + "\" COALESCE");
+            } catch (SQLException e) {
+                System.err.println("Error coalescing index " + index + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public void printStats() throws SQLException {
+        String sql = "SELECT (SELECT COUNT(*) FROM Enrolls_in), (SELECT COUNT(*) FROM Enrolls_in_Archive) FROM DUAL";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                System.out.println("Enrollments: " + rs.getLong(1) + " in Enrolls_in, " + rs.getLong(2) + " archived");
+            }
+        }
+    }
+}
@@ -0,0 +1,498 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Local write-ahead journal for enrollment mutations.
+//
+// addCourse, dropCourse and grade posting append a record to a memory-mapped
+// log and return once it is on disk. A flusher thread forces the log for every
+// waiting writer at once (group commit), and a drain thread applies durable
+// records to the database in batched transactions. On restart, records after
+// the last applied checkpoint are replayed. Callers check adds and drops
+// against the database plus the records still pending (see pending and
+// appendIf), so what was acknowledged is what gets applied.
+//
+// File layout:
+//   [0, HEADER_SIZE)  long MAGIC, long checkpoint (last applied sequence)
+//   records           int length, int crc32, long sequence, byte type, payload
+//   terminator        int 0 after the last record
+//
+// The payload is the record's strings, each as (short length, UTF-8 bytes).
+// Once every record is applied the log wraps back to the start, so the file
+// only has to hold what is waiting for the database.
+//
+// A record the database refuses (the add is no longer valid, or it fails
+// with something other than a lost connection) was already acknowledged, so
+// it is not just dropped: it goes to <file>.rejected, one tab separated line
+// per record (time, sequence, record, reason), forced before the checkpoint
+// moves past it. A crash in between can list a record twice, never lose it.
+public class EnrollmentJournal {
+    static final byte ADD = 1;
+    static final byte DROP = 2;
+    static final byte GRADE = 3;
+
+    private static final long MAGIC = 0x474F4C444A524E4CL; // "GOLDJRNL"
+    private static final int HEADER_SIZE = 4096;
+    private static final int RECORD_OVERHEAD = 4 + 4 + 8 + 1;
+    private static final int DRAIN_BATCH = 500;
+    private static final int MAX_BATCH_ATTEMPTS = 3;
+
+    // Applies a batch of durable entries to the database in one transaction.
+    // Returns the entries it refused, each with the reason.
+    public interface Applier {
+        Map<Entry, String> apply(List<Entry> batch) throws SQLException;
+    }
+
+    private final Path file;
+    private final Path rejectedFile;
+    private final MappedByteBuffer log;
+    private final Applier applier;
+    private final Object lock = new Object();
+    private final List<Entry> pending = new ArrayList<>();
+
+    private int writePosition = HEADER_SIZE;
+    private long appendedSeq;
+    private long durableSeq;
+    private long appliedSeq;
+    // Bumped whenever applied records leave pending (see pending)
+    private long drainEpoch;
+    private volatile boolean running = true;
+    private final Thread flusher;
+    private final Thread drainer;
+
+    private EnrollmentJournal(Path file, long capacity, Applier applier) throws IOException {
+        this.file = file;
+        this.rejectedFile = Paths.get(file + ".rejected");
+        this.applier = applier;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = Math.max(capacity, channel.size());
+            log = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        recover();
+
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        drainer = new Thread(this::drainLoop, "journal-drainer");
+        flusher.setDaemon(true);
+        drainer.setDaemon(true);
+        flusher.start();
+        drainer.start();
+    }
+
+    public static EnrollmentJournal open(Path file, long capacity, Applier applier) throws IOException {
+        return new EnrollmentJournal(file, capacity, applier);
+    }
+
+    // Appends a mutation and blocks until it is durable
+    public long append(byte type, String... fields) throws IOException {
+        return appendIf(null, type, fields);
+    }
+
+    // Journaled adds and drops of a student and an offering that have not
+    // reached the database yet. Checks that read the database must count
+    // these too, or they accept changes the drain thread will reject.
+    public Pending pending(String permNumber, String enrollmentCode) {
+        synchronized (lock) {
+            return pendingLocked(permNumber, enrollmentCode);
+        }
+    }
+
+    // Appends an add or drop (fields: perm number, enrollment code) only if
+    // nothing counted in seen changed since: no record for the student or the
+    // offering was appended and no batch was applied. Returns 0 without
+    // appending if something changed; read the database again and retry.
+    public long appendIf(Pending seen, byte type, String... fields) throws IOException {
+        byte[] payload = encode(fields);
+        long seq;
+        synchronized (lock) {
+            if (!running) {
+                throw new IOException("Journal " + file + " is closed");
+            }
+            int needed = RECORD_OVERHEAD + payload.length + 4;
+            if (HEADER_SIZE + needed > log.capacity()) {
+                throw new IOException("Journal record larger than " + file);
+            }
+            while (writePosition + needed > log.capacity()) {
+                if (appliedSeq == appendedSeq) {
+                    // Everything has reached the database; start over at the front
+                    writePosition = HEADER_SIZE;
+                    log.putInt(writePosition, 0);
+                } else if (!drainer.isAlive()) {
+                    throw new IOException("Journal " + file + " is full and no longer drained");
+                } else {
+                    waitOnLock();
+                }
+            }
+            if (seen != null && !seen.equals(pendingLocked(fields[0], fields[1]))) {
+                return 0;
+            }
+            seq = ++appendedSeq;
+            CRC32 crc = new CRC32();
+            crc.update(longBytes(seq));
+            crc.update(type);
+            crc.update(payload);
+
+            int pos = writePosition;
+            log.putInt(pos, payload.length);
+            log.putInt(pos + 4, (int) crc.getValue());
+            log.putLong(pos + 8, seq);
+            log.put(pos + 16, type);
+            log.put(pos + RECORD_OVERHEAD, payload);
+            writePosition = pos + RECORD_OVERHEAD + payload.length;
+            log.putInt(writePosition, 0);
+
+            pending.add(new Entry(seq, type, fields));
+            lock.notifyAll();
+
+            while (durableSeq < seq) {
+                if (!running) {
+                    throw new IOException("Journal closed before record " + seq + " was flushed");
+                }
+                waitOnLock();
+            }
+        }
+        return seq;
+    }
+
+    private Pending pendingLocked(String permNumber, String enrollmentCode) {
+        Pending counts = new Pending(drainEpoch);
+        for (Entry entry : pending) {
+            if (entry.type != ADD && entry.type != DROP) {
+                continue;
+            }
+            boolean add = entry.type == ADD;
+            boolean student = entry.fields[0].equals(permNumber);
+            boolean offering = entry.fields[1].equals(enrollmentCode);
+            if (student) {
+                if (add) {
+                    counts.studentAdds++;
+                } else {
+                    counts.studentDrops++;
+                }
+            }
+            if (offering && add) {
+                counts.offeringAdds++;
+            }
+            if (student && offering) {
+                counts.added |= add;
+                counts.dropped |= !add;
+            }
+        }
+        return counts;
+    }
+
+    // Rebuilds the write position and pending entries from the file
+    private void recover() throws IOException {
+        if (log.getLong(0) != MAGIC) {
+            log.putLong(0, MAGIC);
+            log.putLong(8, 0);
+            log.putInt(HEADER_SIZE, 0);
+            log.force();
+            return;
+        }
+        appliedSeq = log.getLong(8);
+        appendedSeq = appliedSeq;
+
+        int pos = HEADER_SIZE;
+        long lastSeq = 0;
+        while (pos + RECORD_OVERHEAD <= log.capacity()) {
+            int length = log.getInt(pos);
+            if (length <= 0 || pos + RECORD_OVERHEAD + length > log.capacity()) {
+                break;
+            }
+            long seq = log.getLong(pos + 8);
+            byte type = log.get(pos + 16);
+            byte[] payload = new byte[length];
+            log.get(pos + RECORD_OVERHEAD, payload);
+
+            CRC32 crc = new CRC32();
+            crc.update(longBytes(seq));
+            crc.update(type);
+            crc.update(payload);
+            if ((int) crc.getValue() != log.getInt(pos + 4) || seq <= lastSeq) {
+                break;
+            }
+            lastSeq = seq;
+            if (seq > appliedSeq) {
+                pending.add(new Entry(seq, type, decode(payload)));
+                appendedSeq = seq;
+            }
+            pos += RECORD_OVERHEAD + length;
+        }
+        writePosition = pos;
+        log.putInt(writePosition, 0);
+        durableSeq = appendedSeq;
+        if (!pending.isEmpty()) {
+            System.out.println("Replaying " + pending.size() + " journaled enrollment change(s)");
+        }
+    }
+
+    // Group commit: one force covers every record appended since the last one
+    private void flushLoop() {
+        while (true) {
+            long target;
+            synchronized (lock) {
+                while (running && durableSeq == appendedSeq) {
+                    waitOnLock();
+                }
+                if (!running && durableSeq == appendedSeq) {
+                    return;
+                }
+                target = appendedSeq;
+            }
+            log.force();
+            synchronized (lock) {
+                durableSeq = Math.max(durableSeq, target);
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void drainLoop() {
+        while (true) {
+            List<Entry> batch = new ArrayList<>();
+            synchronized (lock) {
+                while (pending.isEmpty() || pending.get(0).seq > durableSeq) {
+                    if (!running && pending.isEmpty()) {
+                        return;
+                    }
+                    waitOnLock();
+                }
+                for (Entry entry : pending) {
+                    if (entry.seq > durableSeq || batch.size() == DRAIN_BATCH) {
+                        break;
+                    }
+                    batch.add(entry);
+                }
+            }
+
+            Map<Entry, String> rejected = applyWithRetry(batch);
+            if (rejected == null) {
+                System.err.println("Database unavailable; " + getBacklog() + " journal record(s) left for replay");
+                return;
+            }
+            if (!rejected.isEmpty() && !writeRejected(rejected)) {
+                // Keep the records in the log rather than lose them
+                System.err.println("Journal drain stopped; " + getBacklog() + " journal record(s) left for replay");
+                return;
+            }
+
+            synchronized (lock) {
+                pending.subList(0, batch.size()).clear();
+                drainEpoch++;
+                appliedSeq = batch.get(batch.size() - 1).seq;
+                log.putLong(8, appliedSeq);
+                lock.notifyAll();
+            }
+            // The checkpoint must be on disk before the log wraps over these records
+            log.force(0, HEADER_SIZE);
+        }
+    }
+
+    // Retries the batch, then falls back to one entry per transaction so a
+    // single bad record can't hold up the rest. Connection failures are retried
+    // until the journal closes. Returns the refused entries with their
+    // reasons, or null if records were left for replay.
+    private Map<Entry, String> applyWithRetry(List<Entry> batch) {
+        int attempt = 0;
+        while (true) {
+            try {
+                return applier.apply(batch);
+            } catch (SQLException e) {
+                attempt++;
+                System.err.println("Journal drain attempt " + attempt + " failed: " + e.getMessage());
+                if (isConnectionFailure(e)) {
+                    if (!running) {
+                        return null;
+                    }
+                } else if (attempt >= MAX_BATCH_ATTEMPTS) {
+                    break;
+                }
+                sleep(Math.min(5000, 100L * attempt));
+            }
+        }
+        Map<Entry, String> rejected = new LinkedHashMap<>();
+        for (Entry entry : batch) {
+            for (attempt = 1; ; attempt++) {
+                try {
+                    rejected.putAll(applier.apply(List.of(entry)));
+                    break;
+                } catch (SQLException e) {
+                    if (!isConnectionFailure(e)) {
+                        rejected.put(entry, e.getMessage());
+                        break;
+                    }
+                    if (!running) {
+                        return null;
+                    }
+                    sleep(Math.min(5000, 100L * attempt));
+                }
+            }
+        }
+        return rejected;
+    }
+
+    // Appends the refused records to the rejected file and forces it
+    private boolean writeRejected(Map<Entry, String> rejected) {
+        StringBuilder lines = new StringBuilder();
+        for (Map.Entry<Entry, String> record : rejected.entrySet()) {
+            Entry entry = record.getKey();
+            String reason = record.getValue() == null ? "" : record.getValue().replaceAll("\\s+", " ").trim();
+            lines.append(Instant.now()).append('\t').append(entry.seq).append('\t')
+                 .append(entry).append('\t').append(reason).append('\n');
+            System.err.println("Journal record " + entry.seq + " (" + entry + ") rejected: " + reason +
+                               "; see " + rejectedFile);
+        }
+        try (FileChannel out = FileChannel.open(rejectedFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+            out.force(true);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing " + rejectedFile + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean isConnectionFailure(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLTransientException || e instanceof SQLRecoverableException
+            || (state != null && state.startsWith("08"));
+    }
+
+    // Number of durable records not yet applied to the database
+    public int getBacklog() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    // Stops accepting records and waits for the backlog to reach the database
+    public void close() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.force();
+    }
+
+    private void waitOnLock() {
+        try {
+            lock.wait(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] longBytes(long value) {
+        byte[] bytes = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+        return bytes;
+    }
+
+    private static byte[] encode(String[] fields) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (String field : fields) {
+            byte[] value = field.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(value.length);
+            out.write(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String[] decode(byte[] payload) {
+        List<String> fields = new ArrayList<>();
+        int pos = 0;
+        while (pos + 2 <= payload.length) {
+            int length = ((payload[pos] & 0xFF) << 8) | (payload[pos + 1] & 0xFF);
+            fields.add(new String(payload, pos + 2, length, StandardCharsets.UTF_8));
+            pos += 2 + length;
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    // See pending. Adds and drops counted as not yet in the database.
+    public static class Pending {
+        private final long epoch;
+        int studentAdds;
+        int studentDrops;
+        int offeringAdds;
+        // An add / a drop of this student in this offering is waiting
+        boolean added;
+        boolean dropped;
+
+        Pending(long epoch) {
+            this.epoch = epoch;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Pending)) {
+                return false;
+            }
+            Pending p = (Pending) other;
+            return epoch == p.epoch && studentAdds == p.studentAdds && studentDrops == p.studentDrops
+                && offeringAdds == p.offeringAdds && added == p.added && dropped == p.dropped;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(epoch) * 31 + studentAdds * 7 + studentDrops * 5 + offeringAdds;
+        }
+    }
+
+    public static class Entry {
+        final long seq;
+        final byte type;
+        final String[] fields;
+
+        Entry(long seq, byte type, String[] fields) {
+            this.seq = seq;
+            this.type = type;
+            this.fields = fields;
+        }
+
+        @Override
+        public String toString() {
+            String name = type == ADD ? "add" : type == DROP ? "drop" : type == GRADE ? "grade" : "type " + type;
+            return name + " " + String.join(" ", fields);
+        }
+    }
+}
@@ -0,0 +1,447 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Columnar snapshot of Student, Course, Course_Offering and Enrolls_in for
+// offline reporting. Analytics jobs read the snapshot file instead of querying
+// the database that serves registration.
+//
+// Every string column is dictionary encoded; rows refer to dictionary ids.
+// File layout (big endian, as written by DataOutputStream):
+//
+//   long   MAGIC, int VERSION
+//   dict   students (perm numbers), majors, courses, course titles (one per
+//          course), offerings (enrollment codes), quarters, grades
+//   int[]  student -> major id             (students)
+//   int[]  offering -> course id           (offerings)
+//   int[]  offering -> year                (offerings)
+//   byte[] offering -> quarter id          (offerings)
+//   int[]  offering -> enroll limit        (offerings)
+//   int    enrollment count n
+//   int[]  enrollment -> student id        (n)
+//   int[]  enrollment -> offering id       (n)
+//   byte[] enrollment -> grade id, -1=none (n)
+//   byte[] enrollment -> status            (n)
+//
+// A dict is an int count followed by that many (short length, UTF-8 bytes).
+// The reader maps the file, decodes only the dictionaries and reads columns
+// in place, so files are limited to 2 GB (roughly 200 million enrollments).
+public class EnrollmentSnapshot {
+    static final long MAGIC = 0x474F4C44534E4150L; // "GOLDSNAP"
+    static final int VERSION = 1;
+
+    static final byte STATUS_CURRENT = 0;
+    static final byte STATUS_PAST = 1;
+    static final byte STATUS_OTHER = 2;
+
+    private static final int FETCH_SIZE = 1000;
+
+    // Streams the four tables into a snapshot file. The file is written next
+    // to the target and moved into place once complete.
+    public static int export(Connection connection, Path target) throws SQLException, IOException {
+        Dictionary students = new Dictionary();
+        Dictionary majors = new Dictionary();
+        Dictionary courses = new Dictionary();
+        Dictionary offerings = new Dictionary();
+        Dictionary quarters = new Dictionary();
+        Dictionary grades = new Dictionary();
+        List<String> courseTitles = new ArrayList<>();
+
+        IntColumn studentMajor = new IntColumn();
+        IntColumn offeringCourse = new IntColumn();
+        IntColumn offeringYear = new IntColumn();
+        ByteColumn offeringQuarter = new ByteColumn();
+        IntColumn offeringLimit = new IntColumn();
+        IntColumn enrollStudent = new IntColumn();
+        IntColumn enrollOffering = new IntColumn();
+        ByteColumn enrollGrade = new ByteColumn();
+        ByteColumn enrollStatus = new ByteColumn();
+
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT perm_number, major_name FROM Student")) {
+            stmt.setFetchSize(FETCH_SIZE);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                int id = students.intern(rs.getString("perm_number"));
+                String major = rs.getString("major_name");
+                studentMajor.set(id, major == null ? -1 : majors.intern(major));
+            }
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT course_number, title FROM Course")) {
+            stmt.setFetchSize(FETCH_SIZE);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                int id = courses.intern(rs.getString("course_number"));
+                setTitle(courseTitles, id, rs.getString("title"));
+            }
+        }
+
+        String offeringSql = "SELECT enrollment_code, course_number, quarter, year, enroll_limit FROM Course_Offering";
+        try (PreparedStatement stmt = connection.prepareStatement(offeringSql)) {
+            stmt.setFetchSize(FETCH_SIZE);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                int id = offerings.intern(rs.getString("enrollment_code"));
+                int course = courses.intern(rs.getString("course_number"));
+                setTitle(courseTitles, course, null);
+                offeringCourse.set(id, course);
+                offeringYear.set(id, rs.getInt("year"));
+                offeringQuarter.set(id, (byte) quarters.intern(rs.getString("quarter")));
+                offeringLimit.set(id, rs.getInt("enroll_limit"));
+            }
+        }
+
+        int enrollments = 0;
+        String enrollSql = "SELECT perm_number, enrollment_code, grade, status FROM " +
+            EnrollmentArchive.historyTable(connection);
+        try (PreparedStatement stmt = connection.prepareStatement(enrollSql)) {
+            stmt.setFetchSize(FETCH_SIZE);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                int student = students.intern(rs.getString("perm_number"));
+                if (student >= studentMajor.size()) {
+                    studentMajor.set(student, -1);
+                }
+                enrollStudent.set(enrollments, student);
+                enrollOffering.set(enrollments, offerings.intern(rs.getString("enrollment_code")));
+                String grade = rs.getString("grade");
+                enrollGrade.set(enrollments, grade == null ? -1 : (byte) grades.intern(grade.trim()));
+                enrollStatus.set(enrollments, statusCode(rs.getString("status")));
+                enrollments++;
+            }
+        }
+        // Enrollments may reference offerings missing from Course_Offering
+        for (int id = offeringCourse.size(); id < offerings.size(); id++) {
+            offeringCourse.set(id, -1);
+            offeringYear.set(id, 0);
+            offeringQuarter.set(id, (byte) -1);
+            offeringLimit.set(id, 0);
+        }
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            students.write(out);
+            majors.write(out);
+            courses.write(out);
+            writeStrings(out, courseTitles, courses.size());
+            offerings.write(out);
+            quarters.write(out);
+            grades.write(out);
+            studentMajor.write(out);
+            offeringCourse.write(out);
+            offeringYear.write(out);
+            offeringQuarter.write(out);
+            offeringLimit.write(out);
+            out.writeInt(enrollments);
+            enrollStudent.write(out);
+            enrollOffering.write(out);
+            enrollGrade.write(out);
+            enrollStatus.write(out);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return enrollments;
+    }
+
+    private static byte statusCode(String status) {
+        if ("Current".equals(status)) {
+            return STATUS_CURRENT;
+        }
+        if ("Past".equals(status)) {
+            return STATUS_PAST;
+        }
+        return STATUS_OTHER;
+    }
+
+    private static void setTitle(List<String> titles, int courseId, String title) {
+        while (titles.size() <= courseId) {
+            titles.add(null);
+        }
+        if (title != null) {
+            titles.set(courseId, title);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            String value = i < values.size() && values.get(i) != null ? values.get(i) : "";
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    public static Reader open(Path file) throws IOException {
+        return new Reader(file);
+    }
+
+    // Memory-mapped, read-only view of a snapshot file
+    public static class Reader {
+        private final MappedByteBuffer buffer;
+        private final String[] students;
+        private final String[] majors;
+        private final String[] courses;
+        private final String[] courseTitles;
+        private final String[] offerings;
+        private final String[] quarters;
+        private final String[] grades;
+        private final int studentMajorAt;
+        private final int offeringCourseAt;
+        private final int offeringYearAt;
+        private final int offeringQuarterAt;
+        private final int offeringLimitAt;
+        private final int enrollments;
+        private final int enrollStudentAt;
+        private final int enrollOfferingAt;
+        private final int enrollGradeAt;
+        private final int enrollStatusAt;
+
+        private Reader(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (buffer.getLong() != MAGIC) {
+                throw new IOException(file + " is not an enrollment snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            students = readStrings();
+            majors = readStrings();
+            courses = readStrings();
+            courseTitles = readStrings();
+            offerings = readStrings();
+            quarters = readStrings();
+            grades = readStrings();
+
+            int pos = buffer.position();
+            studentMajorAt = pos;
+            pos += students.length * 4;
+            offeringCourseAt = pos;
+            pos += offerings.length * 4;
+            offeringYearAt = pos;
+            pos += offerings.length * 4;
+            offeringQuarterAt = pos;
+            pos += offerings.length;
+            offeringLimitAt = pos;
+            pos += offerings.length * 4;
+            enrollments = buffer.getInt(pos);
+            pos += 4;
+            enrollStudentAt = pos;
+            pos += enrollments * 4;
+            enrollOfferingAt = pos;
+            pos += enrollments * 4;
+            enrollGradeAt = pos;
+            pos += enrollments;
+            enrollStatusAt = pos;
+            pos += enrollments;
+            if (pos != buffer.capacity()) {
+                throw new IOException("Snapshot " + file + " is truncated or corrupt");
+            }
+        }
+
+        private String[] readStrings() {
+            String[] values = new String[buffer.getInt()];
+            for (int i = 0; i < values.length; i++) {
+                byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(bytes);
+                values[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return values;
+        }
+
+        public int enrollmentCount() {
+            return enrollments;
+        }
+
+        public int studentCount() {
+            return students.length;
+        }
+
+        public int offeringCount() {
+            return offerings.length;
+        }
+
+        public int courseCount() {
+            return courses.length;
+        }
+
+        // Enrollment columns
+
+        public int studentOf(int row) {
+            return buffer.getInt(enrollStudentAt + row * 4);
+        }
+
+        public int offeringOf(int row) {
+            return buffer.getInt(enrollOfferingAt + row * 4);
+        }
+
+        // Grade id, or -1 if ungraded
+        public int gradeOf(int row) {
+            return buffer.get(enrollGradeAt + row);
+        }
+
+        public byte statusOf(int row) {
+            return buffer.get(enrollStatusAt + row);
+        }
+
+        // Offering columns
+
+        public int courseOfOffering(int offering) {
+            return buffer.getInt(offeringCourseAt + offering * 4);
+        }
+
+        public int yearOfOffering(int offering) {
+            return buffer.getInt(offeringYearAt + offering * 4);
+        }
+
+        public String quarterOfOffering(int offering) {
+            int quarter = buffer.get(offeringQuarterAt + offering);
+            return quarter < 0 ? null : quarters[quarter];
+        }
+
+        public int enrollLimitOfOffering(int offering) {
+            return buffer.getInt(offeringLimitAt + offering * 4);
+        }
+
+        // Dictionaries
+
+        public String permNumber(int student) {
+            return students[student];
+        }
+
+        public String majorOf(int student) {
+            int major = buffer.getInt(studentMajorAt + student * 4);
+            return major < 0 ? null : majors[major];
+        }
+
+        public String courseNumber(int course) {
+            return course < 0 ? null : courses[course];
+        }
+
+        public String courseTitle(int course) {
+            return course < 0 ? null : courseTitles[course];
+        }
+
+        public String enrollmentCode(int offering) {
+            return offerings[offering];
+        }
+
+        public String grade(int gradeId) {
+            return gradeId < 0 ? null : grades[gradeId];
+        }
+
+        public int gradeCount() {
+            return grades.length;
+        }
+
+        // Example report: grade distribution per course over all past enrollments
+        public void printGradeDistribution() {
+            int[][] counts = new int[courses.length][grades.length];
+            for (int row = 0; row < enrollments; row++) {
+                int grade = gradeOf(row);
+                int course = courseOfOffering(offeringOf(row));
+                if (grade >= 0 && course >= 0 && statusOf(row) == STATUS_PAST) {
+                    counts[course][grade]++;
+                }
+            }
+            System.out.println("\n=== Grade Distribution (" + enrollments + " enrollments) ===");
+            for (int course = 0; course < courses.length; course++) {
+                StringBuilder line = new StringBuilder(String.format("%-8s", courses[course]));
+                int total = 0;
+                for (int grade = 0; grade < grades.length; grade++) {
+                    if (counts[course][grade] > 0) {
+                        line.append(" ").append(grades[grade]).append("=").append(counts[course][grade]);
+                        total += counts[course][grade];
+                    }
+                }
+                if (total > 0) {
+                    System.out.println(line);
+                }
+            }
+        }
+    }
+
+    private static class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int intern(String value) {
+            String key = value == null ? "" : value;
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = values.size();
+                ids.put(key, id);
+                values.add(key);
+            }
+            return id;
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeStrings(out, values, values.size());
+        }
+    }
+
+    private static class IntColumn {
+        private int[] values = new int[1024];
+        private int size = 0;
+
+        void set(int index, int value) {
+            if (index >= values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, index + 1));
+            }
+            values[index] = value;
+            size = Math.max(size, index + 1);
+        }
+
+        int size() {
+            return size;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            for (int i = 0; i < size; i++) {
+                out.writeInt(values[i]);
+            }
+        }
+    }
+
+    private static class ByteColumn {
+        private byte[] values = new byte[1024];
+        private int size = 0;
+
+        void set(int index, byte value) {
+            if (index >= values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, index + 1));
+            }
+            values[index] = value;
+            size = Math.max(size, index + 1);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.write(values, 0, size);
+        }
+    }
+}
@@ -0,0 +1,499 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Off-heap store of Enrolls_in rows for in-process lookups.
+//
+// Rows live in memory-mapped files, not on the Java heap, so tens of millions
+// of enrollments cost about 18 bytes each (the 10 byte row plus two index
+// links) and add nothing for the garbage collector to trace. Perm numbers and
+// enrollment codes are interned to int ids; only those two dictionaries are
+// decoded when the store is reopened.
+//
+// Files in the store directory:
+//   rows.dat          header, then one ROW_SIZE record per enrollment:
+//                     int perm id, int offering id, byte grade code, byte status
+//   perm.heads        int per perm id: newest row of that student, or -1
+//   perm.next         int per row: next older row of the same student, or -1
+//   offering.heads    int per offering id: newest row of that offering, or -1
+//   offering.next     int per row: next older row of the same offering, or -1
+//   students.dict     perm numbers in id order (short length, UTF-8 bytes)
+//   offerings.dict    enrollment codes in id order
+//
+// Drops only mark the row. The header's clean flag is cleared on the first
+// change and set again by force(); if the process died in between, the index
+// chains are rebuilt from rows.dat on open. A new perm number or enrollment
+// code is written out to its dictionary before a row refers to it; rows
+// that still refer to ids missing from a dictionary (the machine went down
+// before the file reached the disk) are cut off on open.
+public class EnrollmentStore implements AutoCloseable {
+    static final int ROW_SIZE = 10;
+
+    static final byte STATUS_CURRENT = EnrollmentSnapshot.STATUS_CURRENT;
+    static final byte STATUS_PAST = EnrollmentSnapshot.STATUS_PAST;
+    static final byte STATUS_OTHER = EnrollmentSnapshot.STATUS_OTHER;
+    static final byte STATUS_DROPPED = 3;
+
+    // Grade code 0 is "no grade"; the others index this table
+    private static final String[] GRADES = {null, "A+", "A", "A-", "B+", "B", "B-", "C+", "C", "C-",
+                                            "D+", "D", "D-", "F", "F-"};
+
+    private static final long MAGIC = 0x474F4C4453544F52L; // "GOLDSTOR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int INITIAL_ROWS = 1 << 16;
+    private static final int INITIAL_KEYS = 1 << 12;
+    private static final int FETCH_SIZE = 1000;
+
+    public interface RowVisitor {
+        void visit(int row);
+    }
+
+    private final Path directory;
+    private final Segment rows;
+    private final Segment permHeads;
+    private final Segment permNext;
+    private final Segment offeringHeads;
+    private final Segment offeringNext;
+    private final Dictionary students;
+    private final Dictionary offerings;
+    private int rowCount;
+    private boolean dirty;
+
+    private EnrollmentStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        rows = new Segment(directory.resolve("rows.dat"), HEADER_SIZE + (long) INITIAL_ROWS * ROW_SIZE);
+        permHeads = new Segment(directory.resolve("perm.heads"), INITIAL_KEYS * 4L);
+        permNext = new Segment(directory.resolve("perm.next"), INITIAL_ROWS * 4L);
+        offeringHeads = new Segment(directory.resolve("offering.heads"), INITIAL_KEYS * 4L);
+        offeringNext = new Segment(directory.resolve("offering.next"), INITIAL_ROWS * 4L);
+        students = new Dictionary(directory.resolve("students.dict"));
+        offerings = new Dictionary(directory.resolve("offerings.dict"));
+
+        MappedByteBuffer header = rows.buffer;
+        if (header.getLong(0) != MAGIC) {
+            header.putLong(0, MAGIC);
+            header.putInt(8, VERSION);
+            header.putInt(12, 0);
+            header.put(16, (byte) 1);
+            fillEmpty(permHeads, 0);
+            fillEmpty(offeringHeads, 0);
+            return;
+        }
+        if (header.getInt(8) != VERSION) {
+            throw new IOException("Unsupported enrollment store version " + header.getInt(8));
+        }
+        rowCount = header.getInt(12);
+        if (header.get(16) == 0) {
+            System.out.println("Enrollment store was not closed cleanly; rebuilding indexes");
+            recover();
+        }
+    }
+
+    public static EnrollmentStore open(Path directory) throws IOException {
+        return new EnrollmentStore(directory);
+    }
+
+    // Appends every enrollment of the connection's database, archived ones
+    // included; returns the number of rows added
+    public int loadFrom(Connection connection) throws SQLException, IOException {
+        String sql = "SELECT perm_number, enrollment_code, grade, status FROM " +
+            EnrollmentArchive.historyTable(connection);
+        int added = 0;
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setFetchSize(FETCH_SIZE);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                add(rs.getString("perm_number"), rs.getString("enrollment_code"),
+                    rs.getString("grade"), statusCode(rs.getString("status")));
+                added++;
+            }
+        }
+        force();
+        return added;
+    }
+
+    // Appends a row and returns its number
+    public synchronized int add(String permNumber, String enrollmentCode, String grade, byte status) throws IOException {
+        markDirty();
+        int perm = students.intern(permNumber);
+        int offering = offerings.intern(enrollmentCode);
+        // The row must not reach rows.dat before its ids reach the dictionaries
+        if (perm == students.size() - 1) {
+            students.flush();
+        }
+        if (offering == offerings.size() - 1) {
+            offerings.flush();
+        }
+        int row = rowCount;
+        rows.ensure(HEADER_SIZE + (long) (row + 1) * ROW_SIZE);
+        permNext.ensure((row + 1) * 4L);
+        offeringNext.ensure((row + 1) * 4L);
+        ensureHeads(permHeads, perm);
+        ensureHeads(offeringHeads, offering);
+
+        int at = HEADER_SIZE + row * ROW_SIZE;
+        rows.buffer.putInt(at, perm);
+        rows.buffer.putInt(at + 4, offering);
+        rows.buffer.put(at + 8, gradeCode(grade));
+        rows.buffer.put(at + 9, status);
+        link(row, perm, offering);
+        rowCount = row + 1;
+        rows.buffer.putInt(12, rowCount);
+        return row;
+    }
+
+    // Grades the student's current row in the offering and moves it to past
+    public synchronized boolean setGrade(String permNumber, String enrollmentCode, String grade) {
+        int row = findCurrent(permNumber, enrollmentCode);
+        if (row < 0) {
+            return false;
+        }
+        markDirty();
+        rows.buffer.put(HEADER_SIZE + row * ROW_SIZE + 8, gradeCode(grade));
+        rows.buffer.put(HEADER_SIZE + row * ROW_SIZE + 9, STATUS_PAST);
+        return true;
+    }
+
+    public synchronized boolean drop(String permNumber, String enrollmentCode) {
+        int row = findCurrent(permNumber, enrollmentCode);
+        if (row < 0) {
+            return false;
+        }
+        markDirty();
+        rows.buffer.put(HEADER_SIZE + row * ROW_SIZE + 9, STATUS_DROPPED);
+        return true;
+    }
+
+    private int findCurrent(String permNumber, String enrollmentCode) {
+        int perm = students.idOf(permNumber);
+        int offering = offerings.idOf(enrollmentCode);
+        if (perm < 0 || offering < 0) {
+            return -1;
+        }
+        for (int row = head(permHeads, perm); row >= 0; row = permNext.buffer.getInt(row * 4)) {
+            if (offeringIdOf(row) == offering && statusOf(row) == STATUS_CURRENT) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    // Visits the student's rows, newest first, skipping dropped rows
+    public synchronized void forEachOfStudent(String permNumber, RowVisitor visitor) {
+        int perm = students.idOf(permNumber);
+        if (perm < 0) {
+            return;
+        }
+        for (int row = head(permHeads, perm); row >= 0; row = permNext.buffer.getInt(row * 4)) {
+            if (statusOf(row) != STATUS_DROPPED) {
+                visitor.visit(row);
+            }
+        }
+    }
+
+    // Visits the offering's rows, newest first, skipping dropped rows
+    public synchronized void forEachOfOffering(String enrollmentCode, RowVisitor visitor) {
+        int offering = offerings.idOf(enrollmentCode);
+        if (offering < 0) {
+            return;
+        }
+        for (int row = head(offeringHeads, offering); row >= 0; row = offeringNext.buffer.getInt(row * 4)) {
+            if (statusOf(row) != STATUS_DROPPED) {
+                visitor.visit(row);
+            }
+        }
+    }
+
+    public int countCurrent(String enrollmentCode) {
+        int[] count = new int[1];
+        forEachOfOffering(enrollmentCode, row -> {
+            if (statusOf(row) == STATUS_CURRENT) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    // Keeps the store in step with the change-event stream. Events it missed
+    // can't be recovered from the stream, so the store then needs rebuilding.
+    public ChangeEventStream.Subscriber follower() {
+        return new ChangeEventStream.Subscriber() {
+            @Override
+            public void onEvent(ChangeEventStream.Event event) throws IOException {
+                switch (event.type) {
+                    case ADD:
+                        add(event.permNumber, event.enrollmentCode, null, STATUS_CURRENT);
+                        break;
+                    case DROP:
+                        drop(event.permNumber, event.enrollmentCode);
+                        break;
+                    case GRADE:
+                        setGrade(event.permNumber, event.enrollmentCode, event.grade);
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            @Override
+            public void onMissed(long fromSequence, long toSequence) {
+                System.err.println("Enrollment store " + directory + " missed events " + fromSequence + "-" +
+                                  toSequence + "; delete the directory and rebuild it with --build-store " + directory);
+            }
+        };
+    }
+
+    // Row accessors
+
+    public synchronized int size() {
+        return rowCount;
+    }
+
+    public String permNumberOf(int row) {
+        return students.valueOf(rows.buffer.getInt(HEADER_SIZE + row * ROW_SIZE));
+    }
+
+    public String enrollmentCodeOf(int row) {
+        return offerings.valueOf(offeringIdOf(row));
+    }
+
+    // Null if ungraded
+    public String gradeOf(int row) {
+        int code = rows.buffer.get(HEADER_SIZE + row * ROW_SIZE + 8);
+        return code > 0 && code < GRADES.length ? GRADES[code] : null;
+    }
+
+    public byte statusOf(int row) {
+        return rows.buffer.get(HEADER_SIZE + row * ROW_SIZE + 9);
+    }
+
+    private int offeringIdOf(int row) {
+        return rows.buffer.getInt(HEADER_SIZE + row * ROW_SIZE + 4);
+    }
+
+    // Flushes every file and marks the store clean
+    public synchronized void force() throws IOException {
+        students.flush();
+        offerings.flush();
+        permHeads.buffer.force();
+        permNext.buffer.force();
+        offeringHeads.buffer.force();
+        offeringNext.buffer.force();
+        rows.buffer.put(16, (byte) 1);
+        rows.buffer.force();
+        dirty = false;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        students.close();
+        offerings.close();
+    }
+
+    public void printStats() {
+        System.out.println("Enrollment store " + directory + ": " + size() + " rows, " +
+                          students.size() + " students, " + offerings.size() + " offerings");
+    }
+
+    private void markDirty() {
+        if (!dirty) {
+            rows.buffer.put(16, (byte) 0);
+            rows.buffer.force();
+            dirty = true;
+        }
+    }
+
+    private void link(int row, int perm, int offering) {
+        permNext.buffer.putInt(row * 4, head(permHeads, perm));
+        permHeads.buffer.putInt(perm * 4, row);
+        offeringNext.buffer.putInt(row * 4, head(offeringHeads, offering));
+        offeringHeads.buffer.putInt(offering * 4, row);
+    }
+
+    private int head(Segment heads, int id) {
+        return (id + 1) * 4L <= heads.size() ? heads.buffer.getInt(id * 4) : -1;
+    }
+
+    private void ensureHeads(Segment heads, int id) throws IOException {
+        long oldSize = heads.size();
+        if (heads.ensure((id + 1) * 4L)) {
+            fillEmpty(heads, oldSize);
+        }
+    }
+
+    // After a crash: keeps the rows up to the first one whose ids are not in
+    // the dictionaries, then relinks the index chains
+    private void recover() throws IOException {
+        int valid = 0;
+        while (valid < rowCount) {
+            int at = HEADER_SIZE + valid * ROW_SIZE;
+            int perm = rows.buffer.getInt(at);
+            int offering = rows.buffer.getInt(at + 4);
+            if (perm < 0 || perm >= students.size() || offering < 0 || offering >= offerings.size()) {
+                break;
+            }
+            valid++;
+        }
+        if (valid < rowCount) {
+            System.out.println("Dropping " + (rowCount - valid) + " row(s) written after the last dictionary flush");
+            rowCount = valid;
+            rows.buffer.putInt(12, rowCount);
+        }
+        ensureHeads(permHeads, students.size() - 1);
+        ensureHeads(offeringHeads, offerings.size() - 1);
+        fillEmpty(permHeads, 0);
+        fillEmpty(offeringHeads, 0);
+        for (int row = 0; row < rowCount; row++) {
+            int at = HEADER_SIZE + row * ROW_SIZE;
+            link(row, rows.buffer.getInt(at), rows.buffer.getInt(at + 4));
+        }
+        rows.buffer.put(16, (byte) 1);
+    }
+
+    private static void fillEmpty(Segment heads, long from) {
+        for (long at = from; at + 4 <= heads.size(); at += 4) {
+            heads.buffer.putInt((int) at, -1);
+        }
+    }
+
+    private static byte gradeCode(String grade) {
+        if (grade == null) {
+            return 0;
+        }
+        String trimmed = grade.trim().toUpperCase();
+        for (int code = 1; code < GRADES.length; code++) {
+            if (GRADES[code].equals(trimmed)) {
+                return (byte) code;
+            }
+        }
+        return 0;
+    }
+
+    static byte statusCode(String status) {
+        if ("Current".equals(status)) {
+            return STATUS_CURRENT;
+        }
+        if ("Past".equals(status)) {
+            return STATUS_PAST;
+        }
+        return STATUS_OTHER;
+    }
+
+    // A file mapped in full; remapped at double the size when it runs out
+    private static class Segment {
+        private final Path file;
+        MappedByteBuffer buffer;
+
+        Segment(Path file, long initialSize) throws IOException {
+            this.file = file;
+            map(Math.max(initialSize, Files.exists(file) ? Files.size(file) : 0));
+        }
+
+        long size() {
+            return buffer.capacity();
+        }
+
+        // Returns true if the file had to grow
+        boolean ensure(long needed) throws IOException {
+            if (needed <= buffer.capacity()) {
+                return false;
+            }
+            long size = buffer.capacity();
+            while (size < needed) {
+                size *= 2;
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " would exceed 2 GB");
+            }
+            buffer.force();
+            map(size);
+            return true;
+        }
+
+        private void map(long size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+    }
+
+    // String <-> id map backed by an append-only file
+    private static class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private final DataOutputStream out;
+
+        Dictionary(Path file) throws IOException {
+            if (Files.exists(file)) {
+                byte[] bytes = Files.readAllBytes(file);
+                int pos = 0;
+                while (pos + 2 <= bytes.length) {
+                    int length = ((bytes[pos] & 0xFF) << 8) | (bytes[pos + 1] & 0xFF);
+                    if (pos + 2 + length > bytes.length) {
+                        break;
+                    }
+                    String value = new String(bytes, pos + 2, length, StandardCharsets.UTF_8);
+                    ids.put(value, values.size());
+                    values.add(value);
+                    pos += 2 + length;
+                }
+            }
+            OutputStream fileOut = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16));
+        }
+
+        int intern(String value) throws IOException {
+            String key = value == null ? "" : value.trim();
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = values.size();
+                ids.put(key, id);
+                values.add(key);
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+            return id;
+        }
+
+        int idOf(String value) {
+            Integer id = ids.get(value == null ? "" : value.trim());
+            return id == null ? -1 : id;
+        }
+
+        String valueOf(int id) {
+            return values.get(id);
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,318 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Java Flight Recorder events for StudentTransactions operations and the SQL
+// they run.
+//
+// Every public operation records a university.Operation event (operation,
+// perm number and/or enrollment code, statement and row counts, duration).
+// Connections are wrapped so every executed statement records a
+// university.Sql event with the enclosing operation, a SQL id, the statement
+// text, rows affected or fetched, and duration. A query's event lasts until
+// its result set is read to the end or closed, so it includes fetching.
+//
+// The events cost next to nothing unless a recording enables them; see
+// src/main/resources/jfr/university.jfc for a profile suited to continuous
+// recording. JFR_EVENTS=false in config.properties leaves connections
+// unwrapped.
+public class FlightEvents {
+    private static final ThreadLocal<Operation> current = new ThreadLocal<>();
+    private static volatile boolean enabled = true;
+
+    @Name("university.Operation")
+    @Label("Student Transactions Operation")
+    @Category({"University", "Operations"})
+    @Description("A public StudentTransactions operation")
+    @StackTrace(false)
+    static class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Perm Number")
+        String permNumber;
+
+        @Label("Enrollment Code")
+        String enrollmentCode;
+
+        @Label("Statements")
+        @Description("Statements executed during the operation")
+        int statements;
+
+        @Label("Rows")
+        @Description("Rows fetched or affected by those statements")
+        long rows;
+    }
+
+    @Name("university.Sql")
+    @Label("SQL Statement")
+    @Category({"University", "SQL"})
+    @Description("One executed statement, including fetching its result set")
+    static class SqlEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("SQL Id")
+        @Description("Stable id of the statement text, for grouping")
+        String sqlId;
+
+        @Label("SQL")
+        String sql;
+
+        @Label("Kind")
+        String kind;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Batch Size")
+        int batchSize;
+    }
+
+    public static void configure(Properties props) {
+        enabled = !"false".equalsIgnoreCase(props.getProperty("JFR_EVENTS", "true").trim());
+    }
+
+    // Starts an operation event on this thread; record closes it when the operation
+    // ends. A call nested in an operation of the same name (an overload or a
+    // hop to the replica) adds nothing.
+    private static Operation operation(String name, String permNumber, String enrollmentCode) {
+        Operation outer = current.get();
+        if (outer != null && outer.name.equals(name)) {
+            return new Operation(name, outer, null);
+        }
+        OperationEvent event = new OperationEvent();
+        event.operation = name;
+        event.permNumber = permNumber;
+        event.enrollmentCode = enrollmentCode;
+        event.begin();
+        Operation operation = new Operation(name, outer, event);
+        current.set(operation);
+        return operation;
+    }
+
+    // Runs body as the named operation and returns its result
+    public static <T> T record(String name, String permNumber, String enrollmentCode, Supplier<T> body) {
+        Operation operation = operation(name, permNumber, enrollmentCode);
+        try {
+            return body.get();
+        } finally {
+            operation.close();
+        }
+    }
+
+    public static void record(String name, String permNumber, String enrollmentCode, Runnable body) {
+        Operation operation = operation(name, permNumber, enrollmentCode);
+        try {
+            body.run();
+        } finally {
+            operation.close();
+        }
+    }
+
+    public static final class Operation implements AutoCloseable {
+        private final String name;
+        private final Operation outer;
+        // Null for a nested call of the same operation
+        private final OperationEvent event;
+
+        private Operation(String name, Operation outer, OperationEvent event) {
+            this.name = name;
+            this.outer = outer;
+            this.event = event;
+        }
+
+        // Only operations with an event are ever current
+        private void countStatement(long rows) {
+            event.statements++;
+            event.rows += Math.max(0, rows);
+        }
+
+        @Override
+        public void close() {
+            if (event != null) {
+                event.commit();
+                current.set(outer);
+            }
+        }
+    }
+
+    // SQL id: the statement text's hash in hex, stable across runs
+    static String sqlId(String sql) {
+        return sql == null ? null : String.format("%08x", sql.hashCode());
+    }
+
+    // connection, with every statement it creates recording SqlEvents
+    public static Connection instrument(Connection connection) {
+        if (!enabled) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(FlightEvents.class.getClassLoader(),
+            new Class<?>[] {Connection.class}, new ConnectionHandler(connection));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+
+        ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = FlightEvents.invoke(connection, method, args);
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return statement(PreparedStatement.class, (Statement) result, (String) args[0]);
+                case "prepareCall":
+                    return statement(CallableStatement.class, (Statement) result, (String) args[0]);
+                case "createStatement":
+                    return statement(Statement.class, (Statement) result, null);
+                default:
+                    return result;
+            }
+        }
+
+        private static Object statement(Class<?> type, Statement statement, String sql) {
+            return Proxy.newProxyInstance(FlightEvents.class.getClassLoader(), new Class<?>[] {type},
+                new StatementHandler(statement, sql));
+        }
+    }
+
+    private static class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        // Text of a prepared statement; null for a plain Statement
+        private final String preparedSql;
+        private int batchSize;
+        // The open result set's event, committed once it is read or closed
+        private QueryHandler openQuery;
+
+        StatementHandler(Statement statement, String preparedSql) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("addBatch")) {
+                batchSize++;
+            } else if (name.equals("clearBatch")) {
+                batchSize = 0;
+            } else if (name.equals("close") && openQuery != null) {
+                openQuery.finish();
+            }
+            if (!name.startsWith("execute")) {
+                return FlightEvents.invoke(statement, method, args);
+            }
+
+            if (openQuery != null) {
+                openQuery.finish();
+            }
+            Operation operation = current.get();
+            SqlEvent event = new SqlEvent();
+            event.operation = operation == null ? null : operation.name;
+            event.sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+            event.sqlId = sqlId(event.sql);
+            event.begin();
+            Object result = FlightEvents.invoke(statement, method, args);
+
+            long rows;
+            if (result instanceof ResultSet) {
+                event.kind = "query";
+                openQuery = new QueryHandler((ResultSet) result, event, operation);
+                return Proxy.newProxyInstance(FlightEvents.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+                    openQuery);
+            } else if (result instanceof int[] || result instanceof long[]) {
+                event.kind = "batch";
+                event.batchSize = batchSize;
+                batchSize = 0;
+                rows = 0;
+                if (result instanceof int[]) {
+                    for (int count : (int[]) result) {
+                        rows += Math.max(0, count);
+                    }
+                } else {
+                    for (long count : (long[]) result) {
+                        rows += Math.max(0, count);
+                    }
+                }
+            } else if (result instanceof Boolean) {
+                event.kind = "execute";
+                rows = (Boolean) result ? 0 : statement.getUpdateCount();
+            } else {
+                event.kind = "update";
+                rows = ((Number) result).longValue();
+            }
+            event.rows = Math.max(0, rows);
+            event.commit();
+            if (operation != null) {
+                operation.countStatement(rows);
+            }
+            return result;
+        }
+    }
+
+    private static class QueryHandler implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final SqlEvent event;
+        private final Operation operation;
+        private boolean finished;
+
+        QueryHandler(ResultSet resultSet, SqlEvent event, Operation operation) {
+            this.resultSet = resultSet;
+            this.event = event;
+            this.operation = operation;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                finish();
+            }
+            Object result = FlightEvents.invoke(resultSet, method, args);
+            if (name.equals("next") && !finished) {
+                if ((Boolean) result) {
+                    event.rows++;
+                } else {
+                    finish();
+                }
+            }
+            return result;
+        }
+
+        void finish() {
+            if (!finished) {
+                finished = true;
+                event.commit();
+                if (operation != null) {
+                    operation.countStatement(event.rows);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+// Result of checking a student's passed courses against one major's
+// requirements.
+public class GraduationAudit {
+    final String permNumber;
+    final String majorName;
+    final List<String> missingRequired;
+    final List<String> electivesNotTaken;
+    final int electivesCompleted;
+    final int electivesRequired;
+    // True when the major has no required or elective courses on record
+    final boolean noRequirements;
+
+    private GraduationAudit(String permNumber, String majorName, List<String> missingRequired,
+                            List<String> electivesNotTaken, int electivesCompleted,
+                            int electivesRequired, boolean noRequirements) {
+        this.permNumber = permNumber;
+        this.majorName = majorName;
+        this.missingRequired = missingRequired;
+        this.electivesNotTaken = electivesNotTaken;
+        this.electivesCompleted = electivesCompleted;
+        this.electivesRequired = electivesRequired;
+        this.noRequirements = noRequirements;
+    }
+
+    public static GraduationAudit evaluate(String permNumber, String majorName, List<String> requiredCourses,
+                                           List<String> electiveCourses, int electivesRequired,
+                                           Set<String> completedCourses) {
+        if (requiredCourses.isEmpty() && electiveCourses.isEmpty() && electivesRequired == 0) {
+            return new GraduationAudit(permNumber, majorName, Collections.emptyList(),
+                                       Collections.emptyList(), 0, 0, true);
+        }
+        List<String> missingRequired = new ArrayList<>();
+        for (String course : requiredCourses) {
+            if (!completedCourses.contains(course)) {
+                missingRequired.add(course);
+            }
+        }
+        int completedElectivesCount = 0;
+        List<String> electivesNotTaken = new ArrayList<>();
+        for (String course : electiveCourses) {
+            if (completedCourses.contains(course)) {
+                completedElectivesCount++;
+            } else {
+                electivesNotTaken.add(course);
+            }
+        }
+        return new GraduationAudit(permNumber, majorName, missingRequired, electivesNotTaken,
+                                   completedElectivesCount, electivesRequired, false);
+    }
+
+    public boolean isEligible() {
+        return !noRequirements && missingRequired.isEmpty() && electivesCompleted >= electivesRequired;
+    }
+
+    public int getElectivesShort() {
+        return Math.max(0, electivesRequired - electivesCompleted);
+    }
+
+    public List<String> getMissingRequired() {
+        return missingRequired;
+    }
+
+    public String getMajorName() {
+        return majorName;
+    }
+
+    public void print() {
+        if (noRequirements) {
+            System.out.println("No requirements defined for major: " + majorName);
+            return;
+        }
+        if (isEligible()) {
+            System.out.println("YES - Student meets all graduation requirements!");
+            return;
+        }
+        System.out.println("  Requirements not met:");
+        if (!missingRequired.isEmpty()) {
+            System.out.println("  Missing required courses: " + String.join(", ", missingRequired));
+        }
+        if (getElectivesShort() > 0) {
+            System.out.println("  Need " + getElectivesShort() + " more elective courses from the elective list.");
+            if (!electivesNotTaken.isEmpty()) {
+                 System.out.println("  Eligible electives not yet completed: " + String.join(", ", electivesNotTaken));
+            } else {
+                 System.out.println("  No more eligible electives listed for the major that haven't been taken.");
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+// Earliest graduation plan for a student against one major's requirements.
+//
+// Works only from a CourseCatalog and a RequirementProfile held in memory,
+// so it makes no database calls and plans for several majors can run in
+// parallel (see StudentTransactions.compareMajors).
+//
+// Each quarter takes up to MAX_COURSES_PER_QUARTER courses: remaining
+// required courses first, then electives, as long as the course is offered
+// in that quarter type and its prerequisites are done by an earlier quarter.
+public class GraduationPlanner {
+    static final int MAX_COURSES_PER_QUARTER = 5;
+    static final int MAX_QUARTERS = 20;
+
+    private final CourseCatalog catalog;
+
+    public GraduationPlanner(CourseCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    // Plans from firstTerm on; completed and current courses count as done
+    public Plan plan(RequirementProfile profile, Set<String> completed, Set<String> current, Term firstTerm) {
+        Plan plan = start(profile, completed, current, firstTerm);
+        if (plan.isComplete()) {
+            return plan;
+        }
+        List<String> availableElectives = new ArrayList<>();
+        for (String course : profile.electiveCourses) {
+            if (!plan.done.contains(course)) {
+                availableElectives.add(course);
+            }
+        }
+        schedule(plan, new ArrayList<>(plan.requiredStillNeeded), availableElectives, plan.electivesStillNeeded,
+                 new HashSet<>(plan.done), firstTerm);
+        return plan;
+    }
+
+    // The same plan as plan(), but keeps previous's quarters before the first
+    // one the difference in completed and current courses can change, and
+    // only schedules from there on. previous must come from this planner's
+    // catalog and the same profile.
+    public Plan replan(Plan previous, RequirementProfile profile, Set<String> completed, Set<String> current,
+                       Term firstTerm) {
+        if (!previous.majorName.equals(profile.majorName) || !previous.firstTerm.equals(firstTerm)) {
+            return plan(profile, completed, current, firstTerm);
+        }
+        Plan plan = start(profile, completed, current, firstTerm);
+        if (plan.isComplete()) {
+            return plan;
+        }
+        Set<String> changed = new HashSet<>(previous.done);
+        changed.addAll(plan.done);
+        Set<String> unchanged = new HashSet<>(previous.done);
+        unchanged.retainAll(plan.done);
+        changed.removeAll(unchanged);
+
+        int kept = firstAffectedQuarter(previous, plan, profile, changed);
+
+        // Replay the kept quarters to get the state plan() would have there
+        List<String> toScheduleRequired = new ArrayList<>(plan.requiredStillNeeded);
+        List<String> availableElectives = new ArrayList<>();
+        for (String course : profile.electiveCourses) {
+            if (!plan.done.contains(course)) {
+                availableElectives.add(course);
+            }
+        }
+        int electivesStillNeeded = plan.electivesStillNeeded;
+        Set<String> coursesConsideredTakenOrScheduled = new HashSet<>(plan.done);
+        Term term = firstTerm;
+        for (Quarter quarter : previous.quarters.subList(0, kept)) {
+            for (String course : quarter.courses) {
+                if (!toScheduleRequired.remove(course)) {
+                    availableElectives.remove(course);
+                    electivesStillNeeded--;
+                }
+            }
+            plan.quarters.add(quarter);
+            coursesConsideredTakenOrScheduled.addAll(quarter.courses);
+            term = term.next();
+        }
+        plan.reusedQuarters = kept;
+        schedule(plan, toScheduleRequired, availableElectives, electivesStillNeeded,
+                 coursesConsideredTakenOrScheduled, term);
+        return plan;
+    }
+
+    // The plan's header: what is still needed given completed and current
+    private Plan start(RequirementProfile profile, Set<String> completed, Set<String> current, Term firstTerm) {
+        Set<String> done = new HashSet<>(completed);
+        done.addAll(current);
+        List<String> requiredStillNeeded = new ArrayList<>();
+        for (String course : profile.requiredCourses) {
+            if (!done.contains(course)) {
+                requiredStillNeeded.add(course);
+            }
+        }
+        int completedElectiveUnitsCount = 0;
+        for (String course : profile.electiveCourses) {
+            if (done.contains(course)) {
+                completedElectiveUnitsCount++;
+            }
+        }
+        int electivesStillNeeded = Math.max(0, profile.electivesRequired - completedElectiveUnitsCount);
+        return new Plan(profile.majorName, requiredStillNeeded, electivesStillNeeded, done, firstTerm);
+    }
+
+    // Fills plan's quarters from term on
+    private void schedule(Plan plan, List<String> toScheduleRequired, List<String> availableElectives,
+                          int electivesStillNeeded, Set<String> coursesConsideredTakenOrScheduled, Term term) {
+        while ((!toScheduleRequired.isEmpty() || electivesStillNeeded > 0) && plan.quarters.size() < MAX_QUARTERS) {
+            Quarter quarterPlan = new Quarter(term.year, term.quarter);
+
+            // Schedule required courses first
+            Iterator<String> reqIter = toScheduleRequired.iterator();
+            while (reqIter.hasNext() && quarterPlan.courses.size() < MAX_COURSES_PER_QUARTER) {
+                String course = reqIter.next();
+                if (catalog.isOfferedIn(course, term.quarter) &&
+                    catalog.canTake(course, coursesConsideredTakenOrScheduled)) {
+                    quarterPlan.courses.add(course);
+                    reqIter.remove();
+                }
+            }
+
+            // Schedule elective courses
+            Iterator<String> elecIter = availableElectives.iterator();
+            while (elecIter.hasNext() && quarterPlan.courses.size() < MAX_COURSES_PER_QUARTER && electivesStillNeeded > 0) {
+                String course = elecIter.next();
+                if (!quarterPlan.courses.contains(course) &&
+                    catalog.isOfferedIn(course, term.quarter) &&
+                    catalog.canTake(course, coursesConsideredTakenOrScheduled)) {
+                    quarterPlan.courses.add(course);
+                    elecIter.remove();
+                    electivesStillNeeded--;
+                }
+            }
+
+            if (quarterPlan.courses.isEmpty()) {
+                plan.stalledAt = quarterPlan.getDisplayName();
+                break;
+            }
+            plan.quarters.add(quarterPlan);
+            coursesConsideredTakenOrScheduled.addAll(quarterPlan.courses);
+            term = term.next();
+        }
+        plan.exceedsLimit = plan.quarters.size() >= MAX_QUARTERS
+            && (!toScheduleRequired.isEmpty() || electivesStillNeeded > 0);
+    }
+
+    // Index of the first of previous's quarters whose courses can differ
+    // once the courses in changed flip between done and not done. Quarters
+    // before it come out of the greedy pass exactly as they did before:
+    // - a changed course, or one that directly requires it, can only move
+    //   from the quarter it was in, or into a quarter it is offered in
+    // - a change in how many electives are still needed only matters from
+    //   the quarter where the smaller count runs out (before that, neither
+    //   count stops an elective from going in)
+    private int firstAffectedQuarter(Plan previous, Plan plan, RequirementProfile profile, Set<String> changed) {
+        Set<String> affected = new HashSet<>(changed);
+        for (List<String> courses : List.of(profile.requiredCourses, profile.electiveCourses)) {
+            for (String course : courses) {
+                for (String prerequisite : catalog.prerequisitesOf(course)) {
+                    if (changed.contains(prerequisite)) {
+                        affected.add(course);
+                    }
+                }
+            }
+        }
+        int first = previous.quarters.size();
+        List<String> remainingRequired = new ArrayList<>(previous.requiredStillNeeded);
+        // Quarter of each elective previous scheduled, in order
+        List<Integer> electiveQuarters = new ArrayList<>();
+        for (int i = 0; i < previous.quarters.size(); i++) {
+            Quarter quarter = previous.quarters.get(i);
+            for (String course : quarter.courses) {
+                if (affected.contains(course)) {
+                    first = Math.min(first, i);
+                }
+                if (!remainingRequired.remove(course)) {
+                    electiveQuarters.add(i);
+                }
+            }
+            for (String course : affected) {
+                if (!plan.done.contains(course) && catalog.isOfferedIn(course, quarter.quarter)
+                    && (profile.requiredCourses.contains(course) || profile.electiveCourses.contains(course))) {
+                    first = Math.min(first, i);
+                }
+            }
+        }
+        if (plan.electivesStillNeeded < previous.electivesStillNeeded) {
+            // The elective after the new count's last one no longer goes in
+            if (plan.electivesStillNeeded < electiveQuarters.size()) {
+                first = Math.min(first, electiveQuarters.get(plan.electivesStillNeeded));
+            }
+        } else if (plan.electivesStillNeeded > previous.electivesStillNeeded) {
+            // Electives stopped after the previous count's last one
+            first = Math.min(first, previous.electivesStillNeeded == 0 || electiveQuarters.isEmpty()
+                ? 0 : electiveQuarters.get(Math.min(previous.electivesStillNeeded, electiveQuarters.size()) - 1));
+        }
+        return first;
+    }
+
+    public static class Plan {
+        final String majorName;
+        // What was left before planning
+        final List<String> requiredStillNeeded;
+        final int electivesStillNeeded;
+        // Completed and current courses it was planned from, and its first term
+        final Set<String> done;
+        final Term firstTerm;
+        final List<Quarter> quarters = new ArrayList<>();
+        // Leading quarters taken over from an earlier plan by replan
+        int reusedQuarters;
+        // First quarter where nothing could be scheduled, or null
+        String stalledAt;
+        boolean exceedsLimit;
+
+        Plan(String majorName, List<String> requiredStillNeeded, int electivesStillNeeded, Set<String> done,
+             Term firstTerm) {
+            this.majorName = majorName;
+            this.requiredStillNeeded = requiredStillNeeded;
+            this.electivesStillNeeded = electivesStillNeeded;
+            this.done = done;
+            this.firstTerm = firstTerm;
+        }
+
+        // Nothing left to take
+        public boolean isComplete() {
+            return requiredStillNeeded.isEmpty() && electivesStillNeeded <= 0;
+        }
+
+        // Every remaining requirement fits in the plan
+        public boolean isFeasible() {
+            return stalledAt == null && !exceedsLimit;
+        }
+
+        public List<Quarter> getQuarters() {
+            return quarters;
+        }
+
+        // Last planned quarter, or null if there is none
+        public String getGraduationTerm() {
+            return quarters.isEmpty() ? null : quarters.get(quarters.size() - 1).getDisplayName();
+        }
+
+        void printWarnings() {
+            if (stalledAt != null) {
+                System.out.println(" Warning: Unable to find any valid courses to schedule for " +
+                                 stalledAt +
+                                 ". Prerequisite issues or course availability constraints might exist. Please consult an advisor.");
+            }
+            if (exceedsLimit) {
+                System.out.println(" Warning: Plan exceeds reasonable timeframe (" + MAX_QUARTERS/4.0 + " years). Please consult an advisor.");
+            }
+        }
+    }
+
+    public static class Quarter {
+        final int year;
+        final String quarter;
+        final List<String> courses = new ArrayList<>();
+
+        Quarter(int year, String quarter) {
+            this.year = year;
+            this.quarter = quarter;
+        }
+
+        String getDisplayName() {
+            return quarter + " " + year;
+        }
+    }
+}
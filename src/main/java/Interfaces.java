@@ -1,12 +1,19 @@
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
 
 public class Interfaces {
     private StudentTransactions st;
     private Scanner scanner;
+    // Opened on first use of the student summary
+    private AsyncStudentTransactions async;
     
     public Interfaces(StudentTransactions studentTransactions) {
         this.st = studentTransactions;
@@ -60,6 +67,8 @@ public class Interfaces {
         
         String studentName = getStudentName(permNumber);
         System.out.println("Welcome, " + studentName + "!");
+        // Later plan views repair this login's last plan
+        StudentTransactions.PlanSession planSession = new StudentTransactions.PlanSession(permNumber);
         
         while (true) {
             System.out.println("\n" + repeatString("-", 50));
@@ -72,7 +81,10 @@ public class Interfaces {
             System.out.println("5. Requirements Check");
             System.out.println("6. Make a Plan");
             System.out.println("7. Change PIN");
-            System.out.println("8. Return to Main Menu");
+            System.out.println("8. Check Waitlist Position");
+            System.out.println("9. Compare Majors (What-If)");
+            System.out.println("10. Courses and Requirements Summary");
+            System.out.println("11. Return to Main Menu");
             System.out.println(repeatString("-", 50));
             System.out.print("Choose an option: ");
             
@@ -95,7 +107,7 @@ public class Interfaces {
                     st.checkGraduationRequirements(permNumber);
                     break;
                 case "6":
-                    st.makeGraduationPlan(permNumber);
+                    st.makeGraduationPlan(permNumber, planSession);
                     break;
                 case "7":
                     String updatedPin = studentChangePin(permNumber);
@@ -104,9 +116,18 @@ public class Interfaces {
                     }
                     break;
                 case "8":
+                    studentCheckWaitlist(permNumber);
+                    break;
+                case "9":
+                    studentCompareMajors(permNumber);
+                    break;
+                case "10":
+                    studentSummary(permNumber);
+                    break;
+                case "11":
                     return;
                 default:
-                    System.out.println("Invalid choice. Please select 1-8.");
+                    System.out.println("Invalid choice. Please select 1-11.");
             }
             
             System.out.println("\nPress Enter to continue...");
@@ -131,7 +152,8 @@ public class Interfaces {
             System.out.println("6. Enter Grades for a Course (file or manual)");
             System.out.println("7. Request Transcript for a Student");
             System.out.println("8. Generate Grade Mailer for All Students");
-            System.out.println("9. Return to Main Menu");
+            System.out.println("9. View Registration Load");
+            System.out.println("10. Return to Main Menu");
             System.out.println(repeatString("-", 50));
             System.out.print("Choose an option: ");
             
@@ -163,9 +185,12 @@ public class Interfaces {
                     adminGenerateGradeMailer();
                     break;
                 case "9":
+                    st.printAdmissionMetrics();
+                    break;
+                case "10":
                     return;
                 default:
-                    System.out.println("Invalid choice. Please select 1-9.");
+                    System.out.println("Invalid choice. Please select 1-10.");
             }
             
             System.out.println("\nPress Enter to continue...");
@@ -190,7 +215,46 @@ public class Interfaces {
         boolean success = st.addCourse(permNumber, enrollmentCode);
         if (success) {
             System.out.println("Course added successfully.");
+        } else if (st.isCourseFull(enrollmentCode)) {
+            System.out.print("This course is full. Join the waitlist? (y/n): ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                st.joinWaitlist(permNumber, enrollmentCode);
+            }
+        }
+    }
+    
+    private void studentCheckWaitlist(String permNumber) {
+        System.out.println("\nCHECK WAITLIST POSITION");
+        
+        System.out.print("Enter enrollment code: ");
+        String enrollmentCode = scanner.nextLine().trim();
+        
+        if (enrollmentCode.isEmpty()) {
+            System.out.println("Operation cancelled.");
+            return;
+        }
+        
+        int position = st.getWaitlistPosition(permNumber, enrollmentCode);
+        if (position > 0) {
+            System.out.println("You are number " + position + " on the waitlist for " + enrollmentCode + ".");
+        } else {
+            System.out.println("You are not on the waitlist for " + enrollmentCode + ".");
+        }
+    }
+    
+    private void studentCompareMajors(String permNumber) {
+        System.out.println("\nCOMPARE MAJORS");
+        
+        System.out.print("Enter majors separated by commas (or press Enter for all majors): ");
+        String input = scanner.nextLine().trim();
+        
+        List<String> majors = new ArrayList<>();
+        for (String major : input.split(",")) {
+            if (!major.trim().isEmpty()) {
+                majors.add(major.trim());
+            }
         }
+        st.printMajorComparison(permNumber, majors);
     }
     
     private void studentDropCourse(String permNumber, String pin) {
@@ -290,7 +354,7 @@ public class Interfaces {
             return;
         }
         
-        boolean success = st.addCourse(permNumber, enrollmentCode);
+        boolean success = st.registrarAddCourse(permNumber, enrollmentCode);
         if (success) {
             System.out.println("Student added to course successfully.");
         } else {
@@ -378,14 +442,38 @@ public class Interfaces {
     private void adminGenerateClassList() {
         System.out.println("\nGENERATE CLASS LIST FOR A COURSE");
         
-        System.out.print("Enter enrollment code: ");
-        String enrollmentCode = scanner.nextLine().trim();
+        System.out.print("Enter enrollment code(s), separated by spaces: ");
+        String input = scanner.nextLine().trim();
         
-        if (!enrollmentCode.isEmpty()) {
-            st.listStudentsInCourse(enrollmentCode);
-        } else {
+        if (input.isEmpty()) {
             System.out.println("Operation cancelled.");
+            return;
+        }
+        List<String> enrollmentCodes = Arrays.asList(input.split("[\\s,]+"));
+        
+        System.out.print("Export to CSV file (leave blank to print): ");
+        String filename = scanner.nextLine().trim();
+        
+        if (!filename.isEmpty()) {
+            st.exportClassLists(enrollmentCodes, filename);
+            return;
+        }
+        if (enrollmentCodes.size() == 1) {
+            System.out.print("Students per page (leave blank for all): ");
+            String pageSize = scanner.nextLine().trim();
+            if (!pageSize.isEmpty()) {
+                try {
+                    st.listStudentsInCoursePaged(enrollmentCodes.get(0), Math.max(1, Integer.parseInt(pageSize)), () -> {
+                        System.out.print("Press Enter for the next page, or q to stop: ");
+                        return !scanner.nextLine().trim().equalsIgnoreCase("q");
+                    });
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid page size. Please enter a number.");
+                }
+                return;
+            }
         }
+        st.listStudentsInCourses(enrollmentCodes);
     }
     
     // Handles both file and manual grade entry
@@ -508,6 +596,28 @@ public class Interfaces {
         return st.getStudentNameForInterface(permNumber);
     }
     
+    // Current courses and the requirements check, fetched at the same time
+    private void studentSummary(String permNumber) {
+        AsyncStudentTransactions.Dashboard dashboard;
+        try {
+            if (async == null) {
+                async = new AsyncStudentTransactions(2);
+            }
+            dashboard = async.dashboard(permNumber).join();
+        } catch (SQLException | CompletionException e) {
+            System.err.println("Error loading summary: " + e.getMessage());
+            return;
+        }
+        System.out.println("\n=== Current Courses for Student " + permNumber + " ===");
+        StudentTransactions.printCurrentCourses(dashboard.getCurrentCourses());
+        System.out.println("\n=== Graduation Requirements Check for Student " + permNumber + " ===");
+        if (dashboard.getAudit() == null) {
+            System.out.println("Student " + permNumber + " not found.");
+        } else {
+            dashboard.getAudit().print();
+        }
+    }
+    
     private String repeatString(String str, int count) {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < count; i++) {
@@ -517,6 +627,9 @@ public class Interfaces {
     }
     
     public void close() {
+        if (async != null) {
+            async.close();
+        }
         if (scanner != null) {
             scanner.close();
         }
@@ -0,0 +1,90 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Optimistic concurrency settings and per-offering contention counters for
+// adds and drops.
+//
+// An add or drop reads Course_Offering.version before its checks and bumps it
+// with "UPDATE ... WHERE version = ?" right before writing. If another session
+// changed the offering in between, the update matches no row: the attempt
+// rolls back and is retried after a jittered backoff. After maxAttempts lost
+// races the operation falls back to locking the offering row, so it always
+// finishes.
+public class OfferingContention {
+    private static final int DEFAULT_MAX_ATTEMPTS = 4;
+    private static final long BASE_BACKOFF_MS = 5;
+    private static final long MAX_BACKOFF_MS = 200;
+    private static final int HOTTEST_SHOWN = 10;
+
+    private final int maxAttempts;
+    private final Map<String, Counters> offerings = new ConcurrentHashMap<>();
+
+    public OfferingContention(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    public static OfferingContention fromConfig(Properties props) {
+        String value = props.getProperty("OPTIMISTIC_MAX_ATTEMPTS", String.valueOf(DEFAULT_MAX_ATTEMPTS)).trim();
+        try {
+            return new OfferingContention(Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid OPTIMISTIC_MAX_ATTEMPTS '" + value + "', using " + DEFAULT_MAX_ATTEMPTS);
+            return new OfferingContention(DEFAULT_MAX_ATTEMPTS);
+        }
+    }
+
+    // Attempt numbers start at 1; later attempts lock instead
+    public boolean isOptimistic(int attempt) {
+        return attempt <= maxAttempts;
+    }
+
+    public void recordCommitted(String enrollmentCode, int attempt) {
+        Counters counters = counters(enrollmentCode);
+        counters.operations.incrementAndGet();
+        if (!isOptimistic(attempt)) {
+            counters.lockedFallbacks.incrementAndGet();
+        }
+    }
+
+    public void recordConflict(String enrollmentCode) {
+        counters(enrollmentCode).conflicts.incrementAndGet();
+    }
+
+    // Full jitter: a random wait up to an exponentially growing cap
+    public void backoff(int attempt) {
+        long cap = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt, 10));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Counters counters(String enrollmentCode) {
+        return offerings.computeIfAbsent(enrollmentCode, code -> new Counters());
+    }
+
+    // The offerings with the most lost races
+    public void printMetrics() {
+        List<Map.Entry<String, Counters>> hottest = new ArrayList<>(offerings.entrySet());
+        hottest.removeIf(entry -> entry.getValue().conflicts.get() == 0);
+        hottest.sort((a, b) -> Long.compare(b.getValue().conflicts.get(), a.getValue().conflicts.get()));
+        System.out.println("Contended offerings: " + hottest.size());
+        for (Map.Entry<String, Counters> entry : hottest.subList(0, Math.min(HOTTEST_SHOWN, hottest.size()))) {
+            Counters counters = entry.getValue();
+            System.out.printf("  %-10s %6d lost race(s), %6d add/drop(s), %4d locked fallback(s)%n", entry.getKey(),
+                counters.conflicts.get(), counters.operations.get(), counters.lockedFallbacks.get());
+        }
+    }
+
+    private static class Counters {
+        final AtomicLong operations = new AtomicLong();
+        final AtomicLong conflicts = new AtomicLong();
+        final AtomicLong lockedFallbacks = new AtomicLong();
+    }
+}
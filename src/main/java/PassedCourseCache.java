@@ -0,0 +1,150 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Courses each student passed with C or better, kept in memory so adds,
+// graduation checks and plans don't query Student_Passed_Course every time.
+//
+// Course numbers are interned to small ints and each student's courses are a
+// BitSet over those ids, so an entry costs a few words however many courses
+// the student passed. At most maxStudents entries are kept; the least
+// recently used one is evicted first (PASSED_COURSE_CACHE_SIZE, default
+// 10000).
+//
+// Posting a grade invalidates the student's entry. A load that was already
+// running when an invalidation happened is not stored, so a grade committed
+// during the load can't be hidden by the older result.
+public class PassedCourseCache {
+    private static final int DEFAULT_MAX_STUDENTS = 10000;
+
+    public interface Loader {
+        Set<String> load(String permNumber) throws SQLException;
+    }
+
+    private final int maxStudents;
+    private final Map<String, Integer> courseIds = new ConcurrentHashMap<>();
+    private final List<String> courseNumbers = new ArrayList<>();
+    private final LinkedHashMap<String, BitSet> students;
+    private long invalidations;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public PassedCourseCache(int maxStudents) {
+        this.maxStudents = Math.max(1, maxStudents);
+        this.students = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BitSet> eldest) {
+                if (size() > PassedCourseCache.this.maxStudents) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static PassedCourseCache fromConfig(Properties props) {
+        String value = props.getProperty("PASSED_COURSE_CACHE_SIZE", String.valueOf(DEFAULT_MAX_STUDENTS)).trim();
+        try {
+            return new PassedCourseCache(Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid PASSED_COURSE_CACHE_SIZE '" + value + "', using " + DEFAULT_MAX_STUDENTS);
+            return new PassedCourseCache(DEFAULT_MAX_STUDENTS);
+        }
+    }
+
+    // The student's passed courses; a copy the caller may change
+    public Set<String> get(String permNumber, Loader loader) throws SQLException {
+        BitSet passed = lookup(permNumber, loader);
+        Set<String> courses = new HashSet<>();
+        synchronized (this) {
+            for (int id = passed.nextSetBit(0); id >= 0; id = passed.nextSetBit(id + 1)) {
+                courses.add(courseNumbers.get(id));
+            }
+        }
+        return courses;
+    }
+
+    // True if the student passed every one of courses
+    public boolean passedAll(String permNumber, Collection<String> courses, Loader loader) throws SQLException {
+        if (courses.isEmpty()) {
+            return true;
+        }
+        BitSet passed = lookup(permNumber, loader);
+        for (String course : courses) {
+            Integer id = courseIds.get(course);
+            if (id == null || !passed.get(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized void invalidate(String permNumber) {
+        students.remove(permNumber);
+        invalidations++;
+    }
+
+    // After bulk changes such as an aggregate rebuild
+    public synchronized void invalidateAll() {
+        students.clear();
+        invalidations++;
+    }
+
+    private BitSet lookup(String permNumber, Loader loader) throws SQLException {
+        long loadStartedAfter;
+        synchronized (this) {
+            BitSet passed = students.get(permNumber);
+            if (passed != null) {
+                hits.incrementAndGet();
+                return passed;
+            }
+            loadStartedAfter = invalidations;
+        }
+        misses.incrementAndGet();
+        Set<String> courses = loader.load(permNumber);
+        synchronized (this) {
+            BitSet passed = new BitSet();
+            for (String course : courses) {
+                passed.set(intern(course));
+            }
+            if (invalidations == loadStartedAfter) {
+                students.put(permNumber, passed);
+            }
+            return passed;
+        }
+    }
+
+    // Caller holds the lock
+    private int intern(String courseNumber) {
+        Integer id = courseIds.get(courseNumber);
+        if (id == null) {
+            id = courseNumbers.size();
+            courseNumbers.add(courseNumber);
+            courseIds.put(courseNumber, id);
+        }
+        return id;
+    }
+
+    public void printMetrics() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        int cached;
+        synchronized (this) {
+            cached = students.size();
+        }
+        System.out.println("Passed-course cache: " + cached + " / " + maxStudents + " students, " +
+                          (total == 0 ? 0 : hitCount * 100 / total) + "% hits, " + evictions.get() + " evicted");
+    }
+}
@@ -0,0 +1,152 @@
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Graduation plans shared between students who would get the same plan.
+//
+// A plan only depends on the major's requirements, the catalog, the start
+// term and which courses the student has completed or is taking (together;
+// GraduationPlanner treats both as done). Plans are keyed by exactly that:
+// the major, the version of the requirements and catalog it was planned
+// against, the completed-or-current courses as a BitSet over interned course
+// ids, and the start term. Many students of a major, freshmen above all,
+// share a key.
+//
+// A student who changes their enrollment and looks at their plan again misses
+// the cache, but the caller can hand in the plan they saw last: then only the
+// quarters the change can affect are planned again (GraduationPlanner.replan).
+//
+// At most maxPlans plans are kept, least recently used evicted first
+// (PLAN_CACHE_SIZE, default 2000). Plans are shared, so callers must not
+// change them.
+public class PlanCache {
+    private static final int DEFAULT_MAX_PLANS = 2000;
+
+    private final int maxPlans;
+    private final Map<String, Integer> courseIds = new HashMap<>();
+    private final LinkedHashMap<Key, GraduationPlanner.Plan> plans;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong repairs = new AtomicLong();
+    private final AtomicLong reusedQuarters = new AtomicLong();
+
+    public PlanCache(int maxPlans) {
+        this.maxPlans = Math.max(1, maxPlans);
+        this.plans = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, GraduationPlanner.Plan> eldest) {
+                if (size() > PlanCache.this.maxPlans) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static PlanCache fromConfig(Properties props) {
+        String value = props.getProperty("PLAN_CACHE_SIZE", String.valueOf(DEFAULT_MAX_PLANS)).trim();
+        try {
+            return new PlanCache(Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid PLAN_CACHE_SIZE '" + value + "', using " + DEFAULT_MAX_PLANS);
+            return new PlanCache(DEFAULT_MAX_PLANS);
+        }
+    }
+
+    // The cached plan, or planner's plan (then cached). planningVersion
+    // changes whenever requirements or the catalog are reloaded.
+    public GraduationPlanner.Plan plan(GraduationPlanner planner, long planningVersion, RequirementProfile profile,
+                                       Set<String> completed, Set<String> current, Term firstTerm) {
+        return plan(planner, planningVersion, profile, completed, current, firstTerm, null, 0);
+    }
+
+    // Like plan, but a miss repairs previous (planned against
+    // previousVersion) instead of planning from scratch when it can
+    public GraduationPlanner.Plan plan(GraduationPlanner planner, long planningVersion, RequirementProfile profile,
+                                       Set<String> completed, Set<String> current, Term firstTerm,
+                                       GraduationPlanner.Plan previous, long previousVersion) {
+        Key key = new Key(profile.majorName, planningVersion, fingerprint(completed, current), firstTerm);
+        synchronized (this) {
+            GraduationPlanner.Plan plan = plans.get(key);
+            if (plan != null) {
+                hits.incrementAndGet();
+                return plan;
+            }
+        }
+        misses.incrementAndGet();
+        // Planning runs outside the lock; two misses on one key just plan twice
+        GraduationPlanner.Plan plan;
+        if (previous != null && previousVersion == planningVersion) {
+            plan = planner.replan(previous, profile, completed, current, firstTerm);
+            repairs.incrementAndGet();
+            reusedQuarters.addAndGet(plan.reusedQuarters);
+        } else {
+            plan = planner.plan(profile, completed, current, firstTerm);
+        }
+        synchronized (this) {
+            plans.put(key, plan);
+        }
+        return plan;
+    }
+
+    private synchronized BitSet fingerprint(Set<String> completed, Set<String> current) {
+        BitSet done = new BitSet();
+        for (String course : completed) {
+            done.set(courseIds.computeIfAbsent(course, c -> courseIds.size()));
+        }
+        for (String course : current) {
+            done.set(courseIds.computeIfAbsent(course, c -> courseIds.size()));
+        }
+        return done;
+    }
+
+    public void printMetrics() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        int cached;
+        synchronized (this) {
+            cached = plans.size();
+        }
+        System.out.println("Plan cache: " + cached + " / " + maxPlans + " plans, " +
+                          (total == 0 ? 0 : hitCount * 100 / total) + "% hits (" + hitCount + " of " + total + "), " +
+                          evictions.get() + " evicted, " + repairs.get() + " repaired (" +
+                          reusedQuarters.get() + " quarter(s) kept)");
+    }
+
+    private static class Key {
+        final String majorName;
+        final long planningVersion;
+        final BitSet done;
+        final Term firstTerm;
+
+        Key(String majorName, long planningVersion, BitSet done, Term firstTerm) {
+            this.majorName = majorName;
+            this.planningVersion = planningVersion;
+            this.done = done;
+            this.firstTerm = firstTerm;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return planningVersion == key.planningVersion && majorName.equals(key.majorName)
+                && done.equals(key.done) && firstTerm.equals(key.firstTerm);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(majorName, planningVersion, done, firstTerm);
+        }
+    }
+}
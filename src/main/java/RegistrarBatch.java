@@ -0,0 +1,309 @@
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Non-interactive registrar mode. Reads a command script (or stdin) and runs it
+// through a small pool of StudentTransactions connections.
+//
+// Script format, one command per line ('#' starts a comment):
+//   add <perm> <enrollment_code>
+//   drop <perm> <enrollment_code>
+//   grade <enrollment_code> <perm> <grade>
+//   transcript <perm>
+//
+// Commands run in three stages: add/drop, then grades, then transcripts.
+// Add/drop commands for the same student keep their script order; different
+// students run in parallel. Grades are grouped per enrollment code so each
+// offering is posted with a single enterGradesForCourse call.
+//
+// Every command produces one tab separated line in the result log:
+//   line  command  arguments  status  millis
+//
+// Each transcript is written to transcript_<perm>.txt; its status is FAILED
+// if the student wasn't found. The operations still report progress on
+// stdout, so give a result-log file to keep the log apart from it.
+public class RegistrarBatch {
+    private static final int DEFAULT_PARALLELISM = 4;
+
+    private final int parallelism;
+    private final BlockingQueue<StudentTransactions> pool;
+    private final List<String> results = new ArrayList<>();
+
+    public RegistrarBatch(int parallelism) throws SQLException {
+        this.parallelism = Math.max(1, parallelism);
+        this.pool = new ArrayBlockingQueue<>(this.parallelism);
+        try {
+            for (int i = 0; i < this.parallelism; i++) {
+                pool.add(StudentTransactions.connect());
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // Usage: --batch <script|-> [result-log] [parallelism]
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: --batch <script|-> [result-log] [parallelism]");
+            return;
+        }
+        String script = args[1];
+        String resultLog = args.length > 2 ? args[2] : null;
+        int parallelism = DEFAULT_PARALLELISM;
+        if (args.length > 3) {
+            try {
+                parallelism = Integer.parseInt(args[3]);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid parallelism '" + args[3] + "', using " + DEFAULT_PARALLELISM);
+            }
+        }
+
+        RegistrarBatch batch = null;
+        try (Reader in = script.equals("-") ? new InputStreamReader(System.in) : new FileReader(script)) {
+            List<Command> commands = parse(new BufferedReader(in));
+            batch = new RegistrarBatch(parallelism);
+            List<String> results = batch.run(commands);
+
+            try (PrintWriter out = resultLog == null
+                    ? new PrintWriter(System.out, true)
+                    : new PrintWriter(new FileWriter(resultLog))) {
+                for (String line : results) {
+                    out.println(line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading batch script: " + e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("Database connection error: " + e.getMessage());
+        } finally {
+            if (batch != null) {
+                batch.close();
+            }
+        }
+    }
+
+    // Runs the commands and returns the result log lines in script order
+    public List<String> run(List<Command> commands) {
+        Map<String, List<Command>> enrollmentByStudent = new LinkedHashMap<>();
+        Map<String, List<Command>> gradesByOffering = new LinkedHashMap<>();
+        List<Command> transcripts = new ArrayList<>();
+
+        for (Command command : commands) {
+            if (!command.hasValidArity()) {
+                command.finish("INVALID", 0);
+                continue;
+            }
+            switch (command.name) {
+                case "add":
+                case "drop":
+                    enrollmentByStudent.computeIfAbsent(command.args[0], k -> new ArrayList<>()).add(command);
+                    break;
+                case "grade":
+                    gradesByOffering.computeIfAbsent(command.args[0], k -> new ArrayList<>()).add(command);
+                    break;
+                case "transcript":
+                    transcripts.add(command);
+                    break;
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Runnable> stage = new ArrayList<>();
+            for (List<Command> lane : enrollmentByStudent.values()) {
+                stage.add(() -> runEnrollmentLane(lane));
+            }
+            runStage(executor, stage);
+
+            stage.clear();
+            for (Map.Entry<String, List<Command>> group : gradesByOffering.entrySet()) {
+                stage.add(() -> runGradeGroup(group.getKey(), group.getValue()));
+            }
+            runStage(executor, stage);
+
+            stage.clear();
+            for (Command command : transcripts) {
+                stage.add(() -> runTranscript(command));
+            }
+            runStage(executor, stage);
+        } finally {
+            executor.shutdown();
+        }
+
+        results.clear();
+        for (Command command : commands) {
+            results.add(command.toResultLine());
+        }
+        return results;
+    }
+
+    private void runStage(ExecutorService executor, List<Runnable> tasks) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (Runnable task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                System.err.println("Batch task failed: " + e.getCause());
+            }
+        }
+    }
+
+    // A student's adds and drops, in script order. Each commits on its own, as
+    // in the menus: holding offering locks until the whole lane commits would
+    // let two lanes deadlock on offerings they take in different orders.
+    private void runEnrollmentLane(List<Command> lane) {
+        StudentTransactions st = borrow();
+        try {
+            for (Command command : lane) {
+                long start = System.nanoTime();
+                boolean success = command.name.equals("add")
+                    ? st.registrarAddCourse(command.args[0], command.args[1])
+                    : st.dropCourse(command.args[0], command.args[1]);
+                command.finish(success ? "OK" : "FAILED", start);
+            }
+        } finally {
+            release(st);
+        }
+    }
+
+    private void runGradeGroup(String enrollmentCode, List<Command> group) {
+        Map<String, String> grades = new LinkedHashMap<>();
+        for (Command command : group) {
+            grades.put(command.args[1], command.args[2]);
+        }
+        StudentTransactions st = borrow();
+        try {
+            long start = System.nanoTime();
+            Set<String> graded = st.postGradesInOneTransaction(enrollmentCode, grades);
+            for (Command command : group) {
+                if (graded == null) {
+                    command.finish("ERROR", start);
+                } else {
+                    command.finish(graded.contains(command.args[1]) ? "OK" : "FAILED", start);
+                }
+            }
+        } finally {
+            release(st);
+        }
+    }
+
+    private void runTranscript(Command command) {
+        StudentTransactions st = borrow();
+        try {
+            long start = System.nanoTime();
+            String file = "transcript_" + command.args[0] + ".txt";
+            try (PrintStream out = new PrintStream(new FileOutputStream(file), false, StandardCharsets.UTF_8)) {
+                boolean found = st.writeTranscript(command.args[0], out);
+                command.finish(out.checkError() ? "ERROR" : found ? "OK" : "FAILED", start);
+            } catch (IOException e) {
+                System.err.println("Error writing " + file + ": " + e.getMessage());
+                command.finish("ERROR", start);
+            }
+        } finally {
+            release(st);
+        }
+    }
+
+    private StudentTransactions borrow() {
+        try {
+            return pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a connection", e);
+        }
+    }
+
+    private void release(StudentTransactions st) {
+        pool.add(st);
+    }
+
+    public void close() {
+        StudentTransactions st;
+        while ((st = pool.poll()) != null) {
+            st.close();
+        }
+    }
+
+    // Parses a command script, skipping blank lines and comments
+    public static List<Command> parse(BufferedReader reader) throws IOException {
+        List<Command> commands = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            String name = parts[0].toLowerCase();
+            String[] args = new String[parts.length - 1];
+            System.arraycopy(parts, 1, args, 0, args.length);
+
+            commands.add(new Command(lineNumber, name, args));
+        }
+        return commands;
+    }
+
+    public static class Command {
+        final int line;
+        final String name;
+        final String[] args;
+        volatile String status = "SKIPPED";
+        volatile long millis = 0;
+
+        Command(int line, String name, String[] args) {
+            this.line = line;
+            this.name = name;
+            this.args = args;
+        }
+
+        boolean hasValidArity() {
+            return switch (name) {
+                case "add", "drop" -> args.length == 2;
+                case "grade" -> args.length == 3;
+                case "transcript" -> args.length == 1;
+                default -> false;
+            };
+        }
+
+        void finish(String status, long startNanos) {
+            this.status = status;
+            this.millis = startNanos == 0 ? 0 : (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        String toResultLine() {
+            return line + "\t" + name + "\t" + String.join(" ", args) + "\t" + status + "\t" + millis;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marks a StudentTransactions operation that may run on the read replica.
+// ReplicaRouter only sends operations carrying this annotation there, so
+// removing it moves the operation back to the primary.
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ReplicaRead {
+}
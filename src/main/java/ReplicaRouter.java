@@ -0,0 +1,87 @@
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Decides whether a read can go to the replica (REPLICA_DB_URL).
+//
+// Only operations annotated @ReplicaRead qualify. Adds, drops and grades
+// record the students and offerings they changed; for the next
+// REPLICA_READ_AFTER_WRITE_MS (5 seconds by default) reads about those keys
+// stay on the primary, so a student always sees their own change even while
+// the replica is catching up. Reads without a key (the grade mailer) stay on
+// the primary after any write in that window.
+public class ReplicaRouter {
+    private static final Set<String> REPLICA_OPERATIONS = annotatedOperations();
+    private static final int PRUNE_THRESHOLD = 10000;
+
+    private final long windowMillis;
+    private final Map<String, Long> lastWrite = new ConcurrentHashMap<>();
+    private volatile long lastAnyWrite;
+
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong pinnedReads = new AtomicLong();
+
+    public ReplicaRouter(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public static ReplicaRouter fromConfig(Properties props) {
+        String value = props.getProperty("REPLICA_READ_AFTER_WRITE_MS", "5000").trim();
+        try {
+            return new ReplicaRouter(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid REPLICA_READ_AFTER_WRITE_MS '" + value + "', using 5000");
+            return new ReplicaRouter(5000);
+        }
+    }
+
+    private static Set<String> annotatedOperations() {
+        Set<String> operations = new HashSet<>();
+        for (Method method : StudentTransactions.class.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(ReplicaRead.class)) {
+                operations.add(method.getName());
+            }
+        }
+        return operations;
+    }
+
+    // Called after a committed (or journaled) write
+    public void recordWrite(String... keys) {
+        long now = System.currentTimeMillis();
+        lastAnyWrite = now;
+        for (String key : keys) {
+            if (key != null) {
+                lastWrite.put(key, now);
+            }
+        }
+        if (lastWrite.size() > PRUNE_THRESHOLD) {
+            lastWrite.values().removeIf(time -> now - time > windowMillis);
+        }
+    }
+
+    public boolean useReplica(String operation, String... keys) {
+        if (!REPLICA_OPERATIONS.contains(operation)) {
+            return false;
+        }
+        long cutoff = System.currentTimeMillis() - windowMillis;
+        boolean recent = keys.length == 0 && lastAnyWrite > cutoff;
+        for (String key : keys) {
+            Long written = lastWrite.get(key);
+            if (written != null && written > cutoff) {
+                recent = true;
+                break;
+            }
+        }
+        (recent ? pinnedReads : replicaReads).incrementAndGet();
+        return !recent;
+    }
+
+    public void printMetrics() {
+        System.out.println("Replica reads: " + replicaReads.get() +
+                          ", kept on primary after a recent write: " + pinnedReads.get());
+    }
+}
@@ -0,0 +1,78 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// One major's graduation requirements (Major.elective_number plus its
+// Part_of_Major rows), loaded once and shared read-only between audits and
+// plans.
+public class RequirementProfile {
+    final String majorName;
+    final List<String> requiredCourses;
+    final List<String> electiveCourses;
+    final int electivesRequired;
+
+    RequirementProfile(String majorName, List<String> requiredCourses, List<String> electiveCourses,
+                       int electivesRequired) {
+        this.majorName = majorName;
+        this.requiredCourses = Collections.unmodifiableList(requiredCourses);
+        this.electiveCourses = Collections.unmodifiableList(electiveCourses);
+        this.electivesRequired = electivesRequired;
+    }
+
+    // A major with no requirements on record
+    static RequirementProfile empty(String majorName) {
+        return new RequirementProfile(majorName, new ArrayList<>(), new ArrayList<>(), 0);
+    }
+
+    // Every major's profile with one query, or just majorName's if it isn't null
+    static Map<String, RequirementProfile> load(Connection connection, String majorName) throws SQLException {
+        Map<String, List<String>> required = new HashMap<>();
+        Map<String, List<String>> electives = new HashMap<>();
+        Map<String, Integer> electivesRequired = new HashMap<>();
+        String sql = "SELECT m.name, m.elective_number, pom.course_number, pom.required " +
+                    "FROM Major m LEFT JOIN Part_of_Major pom ON m.name = pom.major_name" +
+                    (majorName == null ? "" : " WHERE m.name = ?");
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            if (majorName != null) {
+                stmt.setString(1, majorName);
+            }
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                String name = rs.getString("name");
+                electivesRequired.put(name, rs.getInt("elective_number"));
+                required.computeIfAbsent(name, major -> new ArrayList<>());
+                electives.computeIfAbsent(name, major -> new ArrayList<>());
+                String courseNumber = rs.getString("course_number");
+                if (courseNumber != null) {
+                    if (rs.getInt("required") == 1) {
+                        required.get(name).add(courseNumber);
+                    } else {
+                        electives.get(name).add(courseNumber);
+                    }
+                }
+            }
+        }
+        Map<String, RequirementProfile> profiles = new HashMap<>();
+        for (String name : electivesRequired.keySet()) {
+            profiles.put(name, new RequirementProfile(name, required.get(name), electives.get(name),
+                electivesRequired.get(name)));
+        }
+        return profiles;
+    }
+
+    public boolean isEmpty() {
+        return requiredCourses.isEmpty() && electiveCourses.isEmpty() && electivesRequired == 0;
+    }
+
+    public GraduationAudit audit(String permNumber, Set<String> completedCourses) {
+        return GraduationAudit.evaluate(permNumber, majorName, requiredCourses, electiveCourses,
+            electivesRequired, completedCourses);
+    }
+}
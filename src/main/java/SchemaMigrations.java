@@ -0,0 +1,336 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Versioned schema scripts under src/main/resources/db/migration.
+//
+// Scripts are named V<version>__<description>.sql and run in version order.
+// Each applied version is recorded in SCHEMA_VERSION with a checksum of its
+// script, so migrate only runs what is new. The schema predates this runner,
+// so "already exists" errors are treated as already applied: a database set
+// up by hand is adopted rather than rejected.
+//
+// check looks at the data dictionary for the tables, columns and indexes the
+// queries in StudentTransactions rely on, whichever way they were created.
+public class SchemaMigrations {
+    private static final String LOCATION = "db/migration";
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    // ORA-00955 name already used, ORA-01408 columns already indexed,
+    // ORA-01430 column already exists, ORA-02260/02261 key already exists,
+    // ORA-02264 constraint name already used, ORA-02275 foreign key already exists
+    private static final int[] ALREADY_EXISTS = {955, 1408, 1430, 2260, 2261, 2264, 2275};
+
+    // Tables the application reads and writes beyond the original schema
+    private static final String[] REQUIRED_TABLES = {"CURRENT_TERM", "WAITLIST", "STUDENT_GPA", "STUDENT_PASSED_COURSE",
+                                                      "ENROLLS_IN_ARCHIVE"};
+
+    // {table, column}
+    private static final String[][] REQUIRED_COLUMNS = {{"COURSE_OFFERING", "VERSION"}};
+
+    // {table, leading columns...}: some index must start with these columns
+    private static final String[][] REQUIRED_INDEXES = {
+        {"ENROLLS_IN", "PERM_NUMBER", "STATUS"},
+        {"ENROLLS_IN", "ENROLLMENT_CODE", "STATUS"},
+        {"PREREQUISITE", "COURSE_NUMBER"},
+        {"STUDENT", "PIN_HASH"},
+        {"WAITLIST", "ENROLLMENT_CODE"},
+        {"STUDENT_PASSED_COURSE", "PERM_NUMBER"},
+        {"STUDENT_GPA", "PERM_NUMBER"},
+        {"ENROLLS_IN_ARCHIVE", "PERM_NUMBER"},
+    };
+
+    // {table, column}: a primary key or unique constraint on exactly this column
+    private static final String[][] REQUIRED_UNIQUE_KEYS = {{"STUDENT", "PIN_HASH"}};
+
+    // Version of the script that creates Student_GPA and Student_Passed_Course
+    static final int AGGREGATE_TABLES_VERSION = 1;
+
+    private final Connection connection;
+    // Versions the last migrate applied
+    private final Set<Integer> ranVersions = new HashSet<>();
+
+    public SchemaMigrations(Connection connection) {
+        this.connection = connection;
+    }
+
+    // Applies every script newer than the recorded version; returns how many ran
+    public int migrate() throws SQLException, IOException {
+        ensureVersionTable();
+        Map<Integer, Long> applied = appliedVersions();
+        int ran = 0;
+        for (Script script : scripts().values()) {
+            Long checksum = applied.get(script.version);
+            if (checksum != null) {
+                if (checksum != script.checksum) {
+                    System.out.println("Warning: " + script.name + " changed after it was applied.");
+                }
+                continue;
+            }
+            System.out.println("Applying " + script.name);
+            for (String sql : script.statements()) {
+                execute(sql);
+            }
+            String record = "INSERT INTO SCHEMA_VERSION (version, description, checksum) VALUES (?, ?, ?)";
+            try (PreparedStatement stmt = connection.prepareStatement(record)) {
+                stmt.setInt(1, script.version);
+                stmt.setString(2, script.description);
+                stmt.setLong(3, script.checksum);
+                stmt.executeUpdate();
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            ranVersions.add(script.version);
+            ran++;
+        }
+        return ran;
+    }
+
+    // Whether the last migrate applied version (or adopted it as already present)
+    public boolean ran(int version) {
+        return ranVersions.contains(version);
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            for (int code : ALREADY_EXISTS) {
+                if (e.getErrorCode() == code) {
+                    System.out.println("  already present: " + firstLine(sql));
+                    return;
+                }
+            }
+            throw new SQLException("Migration statement failed: " + firstLine(sql) + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void ensureVersionTable() throws SQLException {
+        if (exists("SELECT 1 FROM USER_TABLES WHERE table_name = 'SCHEMA_VERSION'")) {
+            return;
+        }
+        execute("CREATE TABLE SCHEMA_VERSION (" +
+                "version NUMBER PRIMARY KEY, " +
+                "description VARCHAR2(200) NOT NULL, " +
+                "checksum NUMBER NOT NULL, " +
+                "installed_at TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL)");
+    }
+
+    private Map<Integer, Long> appliedVersions() throws SQLException {
+        Map<Integer, Long> applied = new HashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT version, checksum FROM SCHEMA_VERSION")) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), rs.getLong("checksum"));
+            }
+        }
+        return applied;
+    }
+
+    // Highest applied version, or 0 if migrations never ran
+    public int currentVersion() throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT NVL(MAX(version), 0) FROM SCHEMA_VERSION")) {
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            return 0;
+        }
+    }
+
+    // Prints what is missing; returns the number of missing objects
+    public int check(boolean verbose) throws SQLException {
+        int missing = 0;
+        for (String table : REQUIRED_TABLES) {
+            missing += report(verbose, exists("SELECT 1 FROM USER_TABLES WHERE table_name = ?", table), "table " + table);
+        }
+        for (String[] column : REQUIRED_COLUMNS) {
+            missing += report(verbose, exists("SELECT 1 FROM USER_TAB_COLUMNS WHERE table_name = ? AND column_name = ?", column),
+                "column " + column[0] + "." + column[1]);
+        }
+        Map<String, List<List<String>>> indexes = indexColumns();
+        for (String[] index : REQUIRED_INDEXES) {
+            List<String> wanted = List.of(index).subList(1, index.length);
+            boolean found = false;
+            for (List<String> columns : indexes.getOrDefault(index[0], List.of())) {
+                if (columns.size() >= wanted.size() && columns.subList(0, wanted.size()).equals(wanted)) {
+                    found = true;
+                    break;
+                }
+            }
+            missing += report(verbose, found, "index on " + index[0] + " (" + String.join(", ", wanted) + ")");
+        }
+        for (String[] key : REQUIRED_UNIQUE_KEYS) {
+            missing += report(verbose, exists("SELECT 1 FROM USER_CONSTRAINTS c " +
+                    "JOIN USER_CONS_COLUMNS cc ON cc.constraint_name = c.constraint_name " +
+                    "WHERE c.table_name = ? AND c.constraint_type IN ('P', 'U') " +
+                    "GROUP BY c.constraint_name HAVING COUNT(*) = 1 AND MAX(cc.column_name) = ?", key),
+                "unique key on " + key[0] + " (" + key[1] + ")");
+        }
+        return missing;
+    }
+
+    private int report(boolean verbose, boolean present, String what) {
+        if (!present) {
+            System.out.println("  MISSING " + what);
+        } else if (verbose) {
+            System.out.println("  ok      " + what);
+        }
+        return present ? 0 : 1;
+    }
+
+    private boolean exists(String sql, String... values) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < values.length; i++) {
+                stmt.setString(i + 1, values[i]);
+            }
+            return stmt.executeQuery().next();
+        }
+    }
+
+    // Table -> column lists of its indexes, in column order
+    private Map<String, List<List<String>>> indexColumns() throws SQLException {
+        Map<String, List<String>> byIndex = new TreeMap<>();
+        Map<String, String> tableOf = new HashMap<>();
+        String sql = "SELECT index_name, table_name, column_name FROM USER_IND_COLUMNS ORDER BY index_name, column_position";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                String index = rs.getString("index_name");
+                tableOf.put(index, rs.getString("table_name"));
+                byIndex.computeIfAbsent(index, i -> new ArrayList<>()).add(rs.getString("column_name"));
+            }
+        }
+        Map<String, List<List<String>>> byTable = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : byIndex.entrySet()) {
+            byTable.computeIfAbsent(tableOf.get(entry.getKey()), t -> new ArrayList<>()).add(entry.getValue());
+        }
+        return byTable;
+    }
+
+    // Scripts
+
+    static Map<Integer, Script> scripts() throws IOException {
+        Map<Integer, Script> scripts = new TreeMap<>();
+        for (String name : scriptNames()) {
+            Matcher matcher = SCRIPT_NAME.matcher(name);
+            if (!matcher.matches()) {
+                continue;
+            }
+            try (InputStream in = SchemaMigrations.class.getClassLoader().getResourceAsStream(LOCATION + "/" + name)) {
+                if (in == null) {
+                    continue;
+                }
+                Script script = new Script(Integer.parseInt(matcher.group(1)), matcher.group(2).replace('_', ' '),
+                                           name, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                if (scripts.put(script.version, script) != null) {
+                    throw new IOException("Two migration scripts have version " + script.version);
+                }
+            }
+        }
+        return scripts;
+    }
+
+    // Works from the classes directory and from a jar
+    private static List<String> scriptNames() throws IOException {
+        List<String> names = new ArrayList<>();
+        URL url = SchemaMigrations.class.getClassLoader().getResource(LOCATION);
+        if (url == null) {
+            return names;
+        }
+        if (url.getProtocol().equals("jar")) {
+            JarURLConnection jar = (JarURLConnection) url.openConnection();
+            jar.setUseCaches(false);
+            try (JarFile file = jar.getJarFile()) {
+                Enumeration<JarEntry> entries = file.entries();
+                while (entries.hasMoreElements()) {
+                    String entry = entries.nextElement().getName();
+                    if (entry.startsWith(LOCATION + "/") && entry.length() > LOCATION.length() + 1) {
+                        names.add(entry.substring(LOCATION.length() + 1));
+                    }
+                }
+            }
+        } else {
+            try (Stream<Path> files = Files.list(Paths.get(url.toURI()))) {
+                files.forEach(file -> names.add(file.getFileName().toString()));
+            } catch (URISyntaxException e) {
+                throw new IOException("Bad migration location " + url, e);
+            }
+        }
+        return names;
+    }
+
+    private static String firstLine(String sql) {
+        int newline = sql.indexOf('\n');
+        return newline < 0 ? sql : sql.substring(0, newline) + " ...";
+    }
+
+    static class Script {
+        final int version;
+        final String description;
+        final String name;
+        final String text;
+        final long checksum;
+
+        Script(int version, String description, String name, String text) {
+            this.version = version;
+            this.description = description;
+            this.name = name;
+            this.text = text;
+            CRC32 crc = new CRC32();
+            crc.update(text.getBytes(StandardCharsets.UTF_8));
+            this.checksum = crc.getValue();
+        }
+
+        // Statements end with ';' at the end of a line; '--' lines are comments
+        List<String> statements() {
+            List<String> statements = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            for (String line : text.split("\n")) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                    continue;
+                }
+                if (current.length() > 0) {
+                    current.append('\n');
+                }
+                if (trimmed.endsWith(";")) {
+                    current.append(line, 0, line.lastIndexOf(';'));
+                    statements.add(current.toString().trim());
+                    current.setLength(0);
+                } else {
+                    current.append(line);
+                }
+            }
+            if (current.toString().trim().length() > 0) {
+                statements.add(current.toString().trim());
+            }
+            return statements;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.Properties;
+
+// Maps a perm number to the database (shard) that holds that student's data:
+// Student, Enrolls_in, Waitlist and the student aggregates.
+//
+//   SHARD_COUNT    number of shards
+//   SHARD_<i>_DB_URL, SHARD_<i>_DB_USER, SHARD_<i>_DB_PASSWORD for i = 0 .. n-1
+//   SHARD_MODE     hash (default) or range
+//   SHARD_RANGES   range mode only: n-1 ascending perm numbers; shard i holds
+//                  the perms below bound i and the last shard holds the rest
+//
+// Hash mode uses String.hashCode, which the language fixes, so a perm number
+// maps to the same shard on every machine. Changing the shard count or the
+// bounds moves students and needs their rows moved with them.
+public class ShardRouter {
+    private final int shardCount;
+    // Null in hash mode
+    private final long[] upperBounds;
+
+    ShardRouter(int shardCount, long[] upperBounds) {
+        this.shardCount = shardCount;
+        this.upperBounds = upperBounds;
+    }
+
+    static boolean isConfigured(Properties props) {
+        String count = props.getProperty("SHARD_COUNT");
+        return count != null && !count.isBlank();
+    }
+
+    static ShardRouter fromConfig(Properties props) {
+        int count = Integer.parseInt(props.getProperty("SHARD_COUNT").trim());
+        if (count < 1) {
+            throw new IllegalArgumentException("SHARD_COUNT must be at least 1");
+        }
+        String mode = props.getProperty("SHARD_MODE", "hash").trim();
+        if (mode.equalsIgnoreCase("hash")) {
+            return new ShardRouter(count, null);
+        }
+        if (!mode.equalsIgnoreCase("range")) {
+            throw new IllegalArgumentException("Unknown SHARD_MODE " + mode);
+        }
+        // A blank SHARD_RANGES is zero bounds ("".split gives one empty value)
+        String ranges = props.getProperty("SHARD_RANGES", "").trim();
+        String[] values = ranges.isEmpty() ? new String[0] : ranges.split(",");
+        if (values.length != count - 1) {
+            throw new IllegalArgumentException("SHARD_RANGES needs " + (count - 1) + " bound(s)");
+        }
+        long[] bounds = new long[count - 1];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = Long.parseLong(values[i].trim());
+            if (i > 0 && bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("SHARD_RANGES must be ascending");
+            }
+        }
+        return new ShardRouter(count, bounds);
+    }
+
+    static String prefix(int shard) {
+        return "SHARD_" + shard + "_";
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int shardFor(String permNumber) {
+        if (upperBounds == null) {
+            return Math.floorMod(permNumber.trim().hashCode(), shardCount);
+        }
+        long perm;
+        try {
+            perm = Long.parseLong(permNumber.trim());
+        } catch (NumberFormatException e) {
+            // Not a perm number; any shard will report the student as missing
+            return 0;
+        }
+        for (int i = 0; i < upperBounds.length; i++) {
+            if (perm < upperBounds[i]) {
+                return i;
+            }
+        }
+        return upperBounds.length;
+    }
+}
@@ -0,0 +1,695 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+// StudentTransactions over several databases, with students partitioned by
+// perm number (see ShardRouter).
+//
+// DB_URL is the catalog database: Course, Major, Course_Offering,
+// Part_of_Major and Prerequisite are maintained there and copied to every
+// shard by replicateCatalog, so each shard can join its students against the
+// catalog locally. Student operations go to the student's shard. Offering-wide
+// reads (class lists, the grade mailer) and the rollover run on every shard in
+// parallel and are merged here.
+//
+// Seat limits count the students of every shard. An add locks the offering row
+// in the catalog database until the shard commits, so adds to one offering are
+// serialized across shards. Waitlists are kept per shard: a dropped seat goes
+// to the first waitlisted student on the dropping student's shard.
+public class ShardedStudentTransactions extends StudentTransactions {
+    private final ShardRouter router;
+    private final List<StudentTransactions> shards = new ArrayList<>();
+    private final TransactionTemplate catalogTransactions;
+    private final ExecutorService scatter;
+
+    ShardedStudentTransactions(Properties props) throws SQLException {
+        super(props, "");
+        try {
+            this.router = ShardRouter.fromConfig(props);
+        } catch (IllegalArgumentException e) {
+            super.close();
+            throw new SQLException("Invalid shard configuration: " + e.getMessage(), e);
+        }
+        this.catalogTransactions = new TransactionTemplate(getConnection());
+        this.scatter = Executors.newFixedThreadPool(router.getShardCount(), task -> {
+            Thread thread = new Thread(task, "shard-scatter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < router.getShardCount(); i++) {
+                shards.add(new StudentTransactions(props, ShardRouter.prefix(i)));
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+        for (int i = 0; i < shards.size(); i++) {
+            shards.get(i).setPeers(new Peers(i));
+        }
+        setRoster(new MergedRoster(getConnection()));
+    }
+
+    private StudentTransactions shardOf(String permNumber) {
+        return shards.get(router.shardFor(permNumber));
+    }
+
+    // Student operations
+
+    @Override
+    public List<CourseRow> getCurrentCourses(String permNumber) {
+        return shardOf(permNumber).getCurrentCourses(permNumber);
+    }
+
+    @Override
+    public boolean addCourse(String permNumber, String enrollmentCode) {
+        return shardOf(permNumber).addCourse(permNumber, enrollmentCode);
+    }
+
+    @Override
+    public boolean registrarAddCourse(String permNumber, String enrollmentCode) {
+        return shardOf(permNumber).registrarAddCourse(permNumber, enrollmentCode);
+    }
+
+    @Override
+    public boolean dropCourse(String permNumber, String pin, String enrollmentCode) {
+        return shardOf(permNumber).dropCourse(permNumber, pin, enrollmentCode);
+    }
+
+    @Override
+    public boolean dropCourse(String permNumber, String enrollmentCode) {
+        return shardOf(permNumber).dropCourse(permNumber, enrollmentCode);
+    }
+
+    // The catalog database and every shard
+    @Override
+    List<Connection> databases() {
+        List<Connection> databases = new ArrayList<>(super.databases());
+        for (StudentTransactions shard : shards) {
+            databases.addAll(shard.databases());
+        }
+        return databases;
+    }
+
+    // Pairs are split by shard; each shard keeps the pairs' input order.
+    // Seats are shared between shards, so shards add pair by pair.
+    @Override
+    public List<BulkEnrollment.Pair> bulkAddCourses(List<BulkEnrollment.Pair> pairs) {
+        for (Map.Entry<Integer, List<BulkEnrollment.Pair>> group : groupPairsByShard(pairs).entrySet()) {
+            if (shards.get(group.getKey()).bulkAddCourses(group.getValue()) == null) {
+                for (BulkEnrollment.Pair pair : group.getValue()) {
+                    pair.outcome = BulkEnrollment.Outcome.FAILED;
+                }
+            }
+        }
+        return pairs;
+    }
+
+    @Override
+    public List<BulkEnrollment.Pair> bulkDropCourses(List<BulkEnrollment.Pair> pairs) {
+        for (Map.Entry<Integer, List<BulkEnrollment.Pair>> group : groupPairsByShard(pairs).entrySet()) {
+            if (shards.get(group.getKey()).bulkDropCourses(group.getValue()) == null) {
+                for (BulkEnrollment.Pair pair : group.getValue()) {
+                    pair.outcome = BulkEnrollment.Outcome.FAILED;
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private Map<Integer, List<BulkEnrollment.Pair>> groupPairsByShard(List<BulkEnrollment.Pair> pairs) {
+        Map<Integer, List<BulkEnrollment.Pair>> groups = new TreeMap<>();
+        for (BulkEnrollment.Pair pair : pairs) {
+            groups.computeIfAbsent(router.shardFor(pair.permNumber), i -> new ArrayList<>()).add(pair);
+        }
+        return groups;
+    }
+
+    @Override
+    public boolean joinWaitlist(String permNumber, String enrollmentCode) {
+        return shardOf(permNumber).joinWaitlist(permNumber, enrollmentCode);
+    }
+
+    @Override
+    public int getWaitlistPosition(String permNumber, String enrollmentCode) {
+        return shardOf(permNumber).getWaitlistPosition(permNumber, enrollmentCode);
+    }
+
+    // Any shard answers for the whole offering through its peers
+    @Override
+    public boolean isCourseFull(String enrollmentCode) {
+        return shards.get(0).isCourseFull(enrollmentCode);
+    }
+
+    @Override
+    public boolean verifyPin(String permNumber, String pin) {
+        return shardOf(permNumber).verifyPin(permNumber, pin);
+    }
+
+    @Override
+    public boolean changePin(String permNumber, String oldPin, String newPin) {
+        return shardOf(permNumber).changePin(permNumber, oldPin, newPin);
+    }
+
+    @Override
+    public void listPreviousQuarterGrades(String permNumber, String quarter, int year) {
+        shardOf(permNumber).listPreviousQuarterGrades(permNumber, quarter, year);
+    }
+
+    @Override
+    public void generateTranscript(String permNumber, String pin) {
+        shardOf(permNumber).generateTranscript(permNumber, pin);
+    }
+
+    @Override
+    public void generateTranscript(String permNumber) {
+        shardOf(permNumber).generateTranscript(permNumber);
+    }
+
+    @Override
+    public boolean writeTranscript(String permNumber, PrintStream out) {
+        return shardOf(permNumber).writeTranscript(permNumber, out);
+    }
+
+    @Override
+    public GraduationAudit auditGraduationRequirements(String permNumber) {
+        return shardOf(permNumber).auditGraduationRequirements(permNumber);
+    }
+
+    @Override
+    public void makeGraduationPlan(String permNumber) {
+        shardOf(permNumber).makeGraduationPlan(permNumber);
+    }
+
+    @Override
+    public void makeGraduationPlan(String permNumber, PlanSession session) {
+        shardOf(permNumber).makeGraduationPlan(permNumber, session);
+    }
+
+    @Override
+    public List<MajorComparison> compareMajors(String permNumber, List<String> majorNames) {
+        return shardOf(permNumber).compareMajors(permNumber, majorNames);
+    }
+
+    @Override
+    public String getStudentNameForInterface(String permNumber) {
+        return shardOf(permNumber).getStudentNameForInterface(permNumber);
+    }
+
+    @Override
+    public Set<String> getPassedCourses(String permNumber) {
+        return shardOf(permNumber).getPassedCourses(permNumber);
+    }
+
+    // Grades are split by shard and each shard commits on its own, so a
+    // failed shard doesn't undo the others: its students are simply left out
+    // of the result. Null only if every shard failed.
+    @Override
+    Set<String> postGrades(String enrollmentCode, Map<String, String> studentGrades) {
+        return postGradesByShard(studentGrades, (shard, grades) -> shard.postGrades(enrollmentCode, grades));
+    }
+
+    @Override
+    Set<String> postGradesInOneTransaction(String enrollmentCode, Map<String, String> studentGrades) {
+        return postGradesByShard(studentGrades, (shard, grades) -> shard.postGradesInOneTransaction(enrollmentCode, grades));
+    }
+
+    private Set<String> postGradesByShard(Map<String, String> studentGrades,
+                                          BiFunction<StudentTransactions, Map<String, String>, Set<String>> post) {
+        Set<String> graded = new HashSet<>();
+        boolean anyPosted = false;
+        for (Map.Entry<Integer, Map<String, String>> group : groupByShard(studentGrades).entrySet()) {
+            Set<String> shardGraded = post.apply(shards.get(group.getKey()), group.getValue());
+            if (shardGraded == null) {
+                System.err.println("Grades for " + group.getValue().size() + " student(s) on shard " +
+                                   group.getKey() + " were not posted");
+                continue;
+            }
+            anyPosted = true;
+            graded.addAll(shardGraded);
+        }
+        return anyPosted || studentGrades.isEmpty() ? graded : null;
+    }
+
+    private Map<Integer, Map<String, String>> groupByShard(Map<String, String> studentGrades) {
+        Map<Integer, Map<String, String>> groups = new TreeMap<>();
+        for (Map.Entry<String, String> entry : studentGrades.entrySet()) {
+            groups.computeIfAbsent(router.shardFor(entry.getKey()), shard -> new LinkedHashMap<>())
+                  .put(entry.getKey(), entry.getValue());
+        }
+        return groups;
+    }
+
+    // Cross-shard jobs
+
+    // Every shard writes its letters in parallel; they are printed shard by shard
+    @Override
+    public void generateGradeMailer(String quarter, int year) {
+        System.out.println("\n=== Grade Mailer for " + quarter + " " + year + " ===");
+        List<String> letters;
+        try {
+            letters = scatter(shard -> {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8);
+                return shard.readSide("generateGradeMailer").writeGradeMailer(quarter, year, out) ? buffer.toString(StandardCharsets.UTF_8) : null;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error generating grade mailer: " + e.getMessage());
+            return;
+        }
+        boolean foundAnyGrades = false;
+        for (String shardLetters : letters) {
+            if (shardLetters != null) {
+                System.out.print(shardLetters);
+                foundAnyGrades = true;
+            }
+        }
+        if (!foundAnyGrades) {
+            System.out.println("No grades found to mail for " + quarter + " " + year + ".");
+        }
+    }
+
+    // Every shard's students, one shard after another
+    @Override
+    List<StudentTransactions> auditSources() {
+        return shards;
+    }
+
+    @Override
+    public void verifyAggregates(boolean repair) {
+        for (int i = 0; i < shards.size(); i++) {
+            System.out.println("\n--- Shard " + i + " ---");
+            shards.get(i).verifyAggregates(repair);
+        }
+    }
+
+    @Override
+    public void rebuildAggregates() {
+        for (int i = 0; i < shards.size(); i++) {
+            System.out.println("\n--- Shard " + i + " ---");
+            shards.get(i).rebuildAggregates();
+        }
+    }
+
+    @Override
+    public boolean archiveClosedQuarters(int keepQuarters) {
+        boolean archived = true;
+        for (int i = 0; i < shards.size(); i++) {
+            System.out.println("\n--- Shard " + i + " ---");
+            archived &= shards.get(i).archiveClosedQuarters(keepQuarters);
+        }
+        return archived;
+    }
+
+    // One snapshot per shard: <filename>.0, <filename>.1, ...
+    @Override
+    public boolean exportSnapshot(String filename) {
+        boolean exported = true;
+        for (int i = 0; i < shards.size(); i++) {
+            exported &= shards.get(i).exportSnapshot(filename + "." + i);
+        }
+        return exported;
+    }
+
+    // Rolls every shard over in parallel, then advances the catalog database.
+    // Shards already in the next term are skipped, so a rerun after a partial
+    // failure only repeats the shards that didn't finish.
+    static boolean rollover(Properties props, int partitions, int parallelism, boolean closeUngraded)
+            throws SQLException, IOException {
+        ShardedStudentTransactions sharded = new ShardedStudentTransactions(props);
+        try {
+            Term from = sharded.getCurrentTerm();
+            Term to = from.next();
+            List<Boolean> results = sharded.scatterIndexed((i, shard) -> {
+                if (shard.getCurrentTerm().matches(to.quarter, to.year)) {
+                    System.out.println("Shard " + i + " is already in " + to + ".");
+                    return true;
+                }
+                List<StudentTransactions> workers = new ArrayList<>();
+                try {
+                    for (int w = 0; w < Math.max(1, parallelism); w++) {
+                        workers.add(new StudentTransactions(props, ShardRouter.prefix(i)));
+                    }
+                    return new TermRollover(workers, partitions, closeUngraded, "shard" + i).run();
+                } finally {
+                    for (StudentTransactions worker : workers) {
+                        worker.close();
+                    }
+                }
+            });
+            if (results.contains(false)) {
+                System.out.println("Rollover incomplete on some shards. Run it again to finish them.");
+                return false;
+            }
+            TermRollover.advanceTerm(sharded.getConnection(), to);
+            System.out.println("All " + results.size() + " shard(s) are now in " + to + ".");
+            return true;
+        } finally {
+            sharded.close();
+        }
+    }
+
+    // Catalog replication
+
+    private static class CatalogTable {
+        final String name;
+        final List<String> keys;
+        // Remove shard rows that are gone from the catalog database. Off for
+        // tables that enrollments reference.
+        final boolean deleteMissing;
+
+        CatalogTable(String name, boolean deleteMissing, String... keys) {
+            this.name = name;
+            this.keys = Arrays.asList(keys);
+            this.deleteMissing = deleteMissing;
+        }
+    }
+
+    // Parents before children
+    private static final List<CatalogTable> CATALOG = List.of(
+        new CatalogTable("Course", false, "course_number"),
+        new CatalogTable("Major", false, "name"),
+        new CatalogTable("Course_Offering", false, "enrollment_code"),
+        new CatalogTable("Part_of_Major", true, "major_name", "course_number"),
+        new CatalogTable("Prerequisite", true, "course_number", "prerequisite_course_number"));
+
+    // Copies the catalog tables to every shard, one transaction per shard
+    public boolean replicateCatalog() {
+        System.out.println("\n=== Replicating Catalog to " + shards.size() + " Shard(s) ===");
+        Map<CatalogTable, TableData> catalog = new LinkedHashMap<>();
+        try {
+            for (CatalogTable table : CATALOG) {
+                catalog.put(table, TableData.read(getConnection(), table.name));
+            }
+            List<Integer> changed = scatter(shard -> new TransactionTemplate(shard.getConnection()).execute(conn -> {
+                int rows = 0;
+                for (Map.Entry<CatalogTable, TableData> entry : catalog.entrySet()) {
+                    rows += entry.getValue().mergeInto(conn, entry.getKey());
+                }
+                return rows;
+            }));
+            for (int i = 0; i < changed.size(); i++) {
+                System.out.println("Shard " + i + ": " + changed.get(i) + " catalog row(s) merged or removed");
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error replicating catalog: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static class TableData {
+        final List<String> columns = new ArrayList<>();
+        final List<Object[]> rows = new ArrayList<>();
+
+        static TableData read(Connection connection, String table) throws SQLException {
+            TableData data = new TableData();
+            try (PreparedStatement stmt = connection.prepareStatement("SELECT * FROM " + table)) {
+                stmt.setFetchSize(1000);
+                ResultSet rs = stmt.executeQuery();
+                ResultSetMetaData meta = rs.getMetaData();
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    data.columns.add(meta.getColumnName(i).toLowerCase());
+                }
+                while (rs.next()) {
+                    Object[] row = new Object[data.columns.size()];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    data.rows.add(row);
+                }
+            }
+            return data;
+        }
+
+        int mergeInto(Connection connection, CatalogTable table) throws SQLException {
+            int changed = 0;
+            try (PreparedStatement stmt = connection.prepareStatement(mergeSql(table))) {
+                for (Object[] row : rows) {
+                    for (int i = 0; i < row.length; i++) {
+                        stmt.setObject(i + 1, row[i]);
+                    }
+                    stmt.addBatch();
+                }
+                for (int count : stmt.executeBatch()) {
+                    changed += Math.max(0, count);
+                }
+            }
+            if (table.deleteMissing) {
+                changed += deleteMissing(connection, table);
+            }
+            return changed;
+        }
+
+        private String mergeSql(CatalogTable table) {
+            List<String> source = new ArrayList<>();
+            List<String> on = new ArrayList<>();
+            List<String> update = new ArrayList<>();
+            List<String> values = new ArrayList<>();
+            for (String column : columns) {
+                source.add("? AS " + column);
+                values.add("s." + column);
+                if (table.keys.contains(column)) {
+                    on.add("t." + column + " = s." + column);
+                } else {
+                    update.add("t." + column + " = s." + column);
+                }
+            }
+            return "MERGE INTO " + table.name + " t " +
+                   "USING (SELECT " + String.join(", ", source) + " FROM DUAL) s " +
+                   "ON (" + String.join(" AND ", on) + ") " +
+                   (update.isEmpty() ? "" : "WHEN MATCHED THEN UPDATE SET " + String.join(", ", update) + " ") +
+                   "WHEN NOT MATCHED THEN INSERT (" + String.join(", ", columns) + ") " +
+                   "VALUES (" + String.join(", ", values) + ")";
+        }
+
+        private int deleteMissing(Connection connection, CatalogTable table) throws SQLException {
+            Set<List<Object>> wanted = new HashSet<>();
+            for (Object[] row : rows) {
+                wanted.add(keyOf(row, table));
+            }
+            List<List<Object>> stale = new ArrayList<>();
+            TableData current = read(connection, table.name);
+            for (Object[] row : current.rows) {
+                List<Object> key = current.keyOf(row, table);
+                if (!wanted.contains(key)) {
+                    stale.add(key);
+                }
+            }
+            if (stale.isEmpty()) {
+                return 0;
+            }
+            List<String> where = new ArrayList<>();
+            for (String key : table.keys) {
+                where.add(key + " = ?");
+            }
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "DELETE FROM " + table.name + " WHERE " + String.join(" AND ", where))) {
+                for (List<Object> key : stale) {
+                    for (int i = 0; i < key.size(); i++) {
+                        stmt.setObject(i + 1, key.get(i));
+                    }
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            return stale.size();
+        }
+
+        private List<Object> keyOf(Object[] row, CatalogTable table) {
+            List<Object> key = new ArrayList<>();
+            for (String column : table.keys) {
+                key.add(row[columns.indexOf(column)]);
+            }
+            return key;
+        }
+    }
+
+    // Scatter-gather
+
+    private interface ShardCall<T> {
+        T run(int index, StudentTransactions shard) throws Exception;
+    }
+
+    private interface SimpleShardCall<T> {
+        T run(StudentTransactions shard) throws Exception;
+    }
+
+    private <T> List<T> scatter(SimpleShardCall<T> call) throws SQLException {
+        return scatterIndexed((index, shard) -> call.run(shard));
+    }
+
+    // Runs the call on every shard in parallel; results are in shard order
+    private <T> List<T> scatterIndexed(ShardCall<T> call) throws SQLException {
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            int index = i;
+            futures.add(scatter.submit(() -> call.run(index, shards.get(index))));
+        }
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for shards", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                }
+                throw new SQLException("Shard call failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+        return results;
+    }
+
+    // Class lists read from every shard and merged in offering, name order
+    private class MergedRoster extends ClassRoster {
+        // Oracle sorts null names last too, matching ClassRoster's own order
+        private final Comparator<Row> byName =
+            Comparator.comparing((Row row) -> row.name, Comparator.nullsLast(Comparator.naturalOrder()))
+                      .thenComparing(row -> row.permNumber);
+
+        MergedRoster(Connection connection) {
+            super(connection);
+        }
+
+        @Override
+        public int stream(List<String> enrollmentCodes, Consumer<Row> handler) throws SQLException {
+            List<List<Row>> perShard = scatter(shard -> {
+                List<Row> rows = new ArrayList<>();
+                new ClassRoster(shard.getConnection()).stream(enrollmentCodes, rows::add);
+                return rows;
+            });
+
+            Map<String, Row> headers = new TreeMap<>();
+            Map<String, Integer> enrolled = new HashMap<>();
+            Map<String, List<Row>> students = new HashMap<>();
+            for (List<Row> rows : perShard) {
+                Set<String> counted = new HashSet<>();
+                for (Row row : rows) {
+                    headers.putIfAbsent(row.enrollmentCode, row);
+                    if (counted.add(row.enrollmentCode)) {
+                        enrolled.merge(row.enrollmentCode, row.enrolledCount, Integer::sum);
+                    }
+                    if (row.permNumber != null) {
+                        students.computeIfAbsent(row.enrollmentCode, code -> new ArrayList<>()).add(row);
+                    }
+                }
+            }
+
+            for (Map.Entry<String, Row> header : headers.entrySet()) {
+                int total = enrolled.get(header.getKey());
+                List<Row> rows = students.getOrDefault(header.getKey(), new ArrayList<>(List.of(header.getValue())));
+                rows.sort(byName);
+                for (Row row : rows) {
+                    handler.accept(row.withEnrolledCount(total));
+                }
+            }
+            return headers.size();
+        }
+
+        // Every shard's page after the same key, merged and cut to pageSize.
+        // The enrolled count sums the shards that returned rows, which is all
+        // of them on the first page.
+        @Override
+        public List<Row> page(String enrollmentCode, String afterName, String afterPerm, int pageSize) throws SQLException {
+            List<List<Row>> perShard = scatter(shard ->
+                new ClassRoster(shard.getConnection()).page(enrollmentCode, afterName, afterPerm, pageSize));
+
+            Row header = null;
+            int total = 0;
+            List<Row> students = new ArrayList<>();
+            for (List<Row> rows : perShard) {
+                if (rows.isEmpty()) {
+                    continue;
+                }
+                header = header == null ? rows.get(0) : header;
+                total += rows.get(0).enrolledCount;
+                for (Row row : rows) {
+                    if (row.permNumber != null) {
+                        students.add(row);
+                    }
+                }
+            }
+            if (students.isEmpty()) {
+                return header == null ? List.of() : List.of(header.withEnrolledCount(total));
+            }
+            students.sort(byName);
+            List<Row> page = new ArrayList<>();
+            for (Row row : students.subList(0, Math.min(pageSize, students.size()))) {
+                page.add(row.withEnrolledCount(total));
+            }
+            return page;
+        }
+    }
+
+    // Seat counts and PIN checks against the other shards
+    private class Peers implements ShardPeers {
+        private final int self;
+
+        Peers(int self) {
+            this.self = self;
+        }
+
+        public <T> T withSeatsLocked(String enrollmentCode, Action<T> action) throws SQLException {
+            return catalogTransactions.execute(conn -> {
+                lockOffering(enrollmentCode);
+                return action.run();
+            });
+        }
+
+        public int enrolledElsewhere(String enrollmentCode) throws SQLException {
+            int total = 0;
+            for (int i = 0; i < shards.size(); i++) {
+                if (i != self) {
+                    total += shards.get(i).countCurrentEnrollment(enrollmentCode);
+                }
+            }
+            return total;
+        }
+
+        public boolean pinInUseElsewhere(String pin, String excludePermNumber) throws SQLException {
+            for (int i = 0; i < shards.size(); i++) {
+                if (i != self && shards.get(i).isPinInUseLocally(pin, excludePermNumber)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scatter != null) {
+            scatter.shutdown();
+        }
+        for (StudentTransactions shard : shards) {
+            shard.close();
+        }
+        super.close();
+    }
+}
@@ -0,0 +1,189 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+// Per-student aggregates kept up to date as grades are posted, so transcripts
+// and degree audits don't have to rescan Enrolls_in.
+//
+//   Student_GPA(perm_number, grade_point_sum, graded_count)
+//   Student_Passed_Course(perm_number, course_number)   -- passed with C or better
+//
+// recordGrade runs inside the caller's transaction together with the grade
+// update. verify/rebuild repair any drift from Enrolls_in, archived quarters
+// included (EnrollmentArchive).
+public class StudentAggregates {
+    static final String PASSING_GRADES_SQL = "('A+', 'A', 'A-', 'B+', 'B', 'B-', 'C+', 'C')";
+
+    private static final String[] PASSING_GRADES = {"A+", "A", "A-", "B+", "B", "B-", "C+", "C"};
+
+    private final Connection connection;
+
+    public StudentAggregates(Connection connection) {
+        this.connection = connection;
+    }
+
+    public static boolean isPassing(String grade) {
+        for (String passing : PASSING_GRADES) {
+            if (passing.equals(grade)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Adds one newly posted grade to the student's aggregates
+    public void recordGrade(String permNumber, String enrollmentCode, String grade, double gradePoints) throws SQLException {
+        String gpaSql = "MERGE INTO Student_GPA g " +
+                       "USING (SELECT ? AS perm_number, ? AS points FROM DUAL) src " +
+                       "ON (g.perm_number = src.perm_number) " +
+                       "WHEN MATCHED THEN UPDATE SET g.grade_point_sum = g.grade_point_sum + src.points, " +
+                       "  g.graded_count = g.graded_count + 1 " +
+                       "WHEN NOT MATCHED THEN INSERT (perm_number, grade_point_sum, graded_count) " +
+                       "  VALUES (src.perm_number, src.points, 1)";
+        try (PreparedStatement stmt = connection.prepareStatement(gpaSql)) {
+            stmt.setString(1, permNumber);
+            stmt.setDouble(2, gradePoints);
+            stmt.executeUpdate();
+        }
+
+        if (!isPassing(grade)) {
+            return;
+        }
+        String passedSql = "MERGE INTO Student_Passed_Course p " +
+                          "USING (SELECT ? AS perm_number, course_number FROM Course_Offering WHERE enrollment_code = ?) src " +
+                          "ON (p.perm_number = src.perm_number AND p.course_number = src.course_number) " +
+                          "WHEN NOT MATCHED THEN INSERT (perm_number, course_number) " +
+                          "  VALUES (src.perm_number, src.course_number)";
+        try (PreparedStatement stmt = connection.prepareStatement(passedSql)) {
+            stmt.setString(1, permNumber);
+            stmt.setString(2, enrollmentCode);
+            stmt.executeUpdate();
+        }
+    }
+
+    // Returns {grade point sum, graded course count}, or null if nothing is graded yet
+    public double[] getGpaTotals(String permNumber) throws SQLException {
+        String sql = "SELECT grade_point_sum, graded_count FROM Student_GPA WHERE perm_number = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, permNumber);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                return new double[] {rs.getDouble("grade_point_sum"), rs.getInt("graded_count")};
+            }
+        }
+        return null;
+    }
+
+    public Set<String> getPassedCourses(String permNumber) throws SQLException {
+        Set<String> passed = new HashSet<>();
+        String sql = "SELECT course_number FROM Student_Passed_Course WHERE perm_number = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, permNumber);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                passed.add(rs.getString("course_number"));
+            }
+        }
+        return passed;
+    }
+
+    // Counts students whose aggregates don't match Enrolls_in. With repair set,
+    // rebuilds the aggregates of exactly those students.
+    public int verify(boolean repair) throws SQLException {
+        String history = EnrollmentArchive.historyTable(connection);
+        String driftSql =
+            "SELECT perm_number FROM (" +
+            "  SELECT NVL(a.perm_number, g.perm_number) AS perm_number " +
+            "  FROM (SELECT perm_number, SUM(grade_points) AS grade_point_sum, COUNT(*) AS graded_count " +
+            "        FROM " + history + " WHERE status = 'Past' AND grade IS NOT NULL GROUP BY perm_number) a " +
+            "  FULL OUTER JOIN Student_GPA g ON a.perm_number = g.perm_number " +
+            "  WHERE a.perm_number IS NULL OR g.perm_number IS NULL " +
+            "     OR ABS(a.grade_point_sum - g.grade_point_sum) > 0.001 OR a.graded_count <> g.graded_count " +
+            "  UNION " +
+            "  SELECT NVL(a.perm_number, p.perm_number) " +
+            "  FROM (SELECT DISTINCT e.perm_number, co.course_number FROM " + history + " e " +
+            "        JOIN Course_Offering co ON e.enrollment_code = co.enrollment_code " +
+            "        WHERE e.status = 'Past' AND e.grade IN " + PASSING_GRADES_SQL + ") a " +
+            "  FULL OUTER JOIN Student_Passed_Course p " +
+            "    ON a.perm_number = p.perm_number AND a.course_number = p.course_number " +
+            "  WHERE a.perm_number IS NULL OR p.perm_number IS NULL" +
+            ")";
+
+        Set<String> drifted = new HashSet<>();
+        try (Statement stmt = connection.createStatement()) {
+            ResultSet rs = stmt.executeQuery(driftSql);
+            while (rs.next()) {
+                drifted.add(rs.getString(1));
+            }
+        }
+        System.out.println("Students with drifted aggregates: " + drifted.size());
+
+        if (repair && !drifted.isEmpty()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                for (String permNumber : drifted) {
+                    rebuildStudent(permNumber, history);
+                }
+                connection.commit();
+                System.out.println("Rebuilt aggregates for " + drifted.size() + " students.");
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        return drifted.size();
+    }
+
+    // Recomputes every aggregate from Enrolls_in in one transaction
+    public void rebuildAll() throws SQLException {
+        String history = EnrollmentArchive.historyTable(connection);
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM Student_GPA");
+            stmt.executeUpdate("DELETE FROM Student_Passed_Course");
+            stmt.executeUpdate(
+                "INSERT INTO Student_GPA (perm_number, grade_point_sum, graded_count) " +
+                "SELECT perm_number, SUM(grade_points), COUNT(*) FROM " + history + " " +
+                "WHERE status = 'Past' AND grade IS NOT NULL GROUP BY perm_number");
+            stmt.executeUpdate(
+                "INSERT INTO Student_Passed_Course (perm_number, course_number) " +
+                "SELECT DISTINCT e.perm_number, co.course_number FROM " + history + " e " +
+                "JOIN Course_Offering co ON e.enrollment_code = co.enrollment_code " +
+                "WHERE e.status = 'Past' AND e.grade IN " + PASSING_GRADES_SQL);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void rebuildStudent(String permNumber, String history) throws SQLException {
+        String[] statements = {
+            "DELETE FROM Student_GPA WHERE perm_number = ?",
+            "DELETE FROM Student_Passed_Course WHERE perm_number = ?",
+            "INSERT INTO Student_GPA (perm_number, grade_point_sum, graded_count) " +
+            "SELECT perm_number, SUM(grade_points), COUNT(*) FROM " + history + " " +
+            "WHERE perm_number = ? AND status = 'Past' AND grade IS NOT NULL GROUP BY perm_number",
+            "INSERT INTO Student_Passed_Course (perm_number, course_number) " +
+            "SELECT DISTINCT e.perm_number, co.course_number FROM " + history + " e " +
+            "JOIN Course_Offering co ON e.enrollment_code = co.enrollment_code " +
+            "WHERE e.perm_number = ? AND e.status = 'Past' AND e.grade IN " + PASSING_GRADES_SQL
+        };
+        for (String sql : statements) {
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setString(1, permNumber);
+                stmt.executeUpdate();
+            }
+        }
+    }
+}
@@ -1,5 +1,14 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -8,45 +17,312 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
 
 public class StudentTransactions {    
+    // Major requirements and the catalog change rarely; plans read them from memory
+    private static final long PLANNING_CACHE_MS = 5 * 60 * 1000;
+    // ORA-00001 unique constraint violated
+    private static final int ORA_UNIQUE_VIOLATION = 1;
+
+    // Shared by every StudentTransactions in the process so the limit applies to
+    // the database as a whole, not per connection
+    private static AdmissionControl admission;
+    private static ReplicaRouter replicaRouting;
+    // Keyed by perm number, so shards can share it; only primary loads fill it
+    private static PassedCourseCache passedCourses;
+    private static OfferingContention contention;
+    // Shared by interactive plans and what-if comparisons
+    private static PlanCache plans;
+    // Change events for subscribers in this process (see openEvents)
+    private static ChangeEventStream events;
+    private static EnrollmentStore followingStore;
+
+    // Optional local journal for enrollment mutations (see openJournal)
+    private static EnrollmentJournal journal;
+    private static StudentTransactions journalApplier;
+
     private Connection connection;
+    private StudentAggregates aggregates;
+    // Enrolls_in_All once closed quarters can be archived, else Enrolls_in;
+    // history queries read it, registration reads Enrolls_in
+    private String history;
+    private ClassRoster roster;
+    private TransactionTemplate transactions;
+    private Term currentTerm;
+    // Actions waiting for an enclosing transaction to commit, or null when
+    // there is none (see afterCommit)
+    private List<Runnable> deferred;
+    // Read replica for @ReplicaRead operations, or null
+    private StudentTransactions replica;
+    // True if this is another instance's read replica. A replica may lag the
+    // primary, so what it reads must not go into the shared caches.
+    private boolean isReplica;
+    private PlanningData planningData;
+    
+    // Seats and PINs held by students on other shards (see ShardedStudentTransactions)
+    private ShardPeers peers = ShardPeers.NONE;
     
     public StudentTransactions() throws SQLException {
+        this(requireConfig(), "");
+    }
+    
+    // Connects with <prefix>DB_URL, <prefix>DB_USER and <prefix>DB_PASSWORD
+    StudentTransactions(Properties props, String prefix) throws SQLException {
         try {
-            //from config
-            Properties props = new Properties();
-            try (FileInputStream fis = new FileInputStream("config.properties")) {
-                props.load(fis);
+            String DB_URL = props.getProperty(prefix + "DB_URL");
+            String DB_USER = props.getProperty(prefix + "DB_USER");
+            String DB_PASSWORD = props.getProperty(prefix + "DB_PASSWORD");
+            if (DB_URL == null) {
+                throw new SQLException("No " + prefix + "DB_URL in config.properties");
             }
-
-            String DB_URL = props.getProperty("DB_URL");
-            String DB_USER = props.getProperty("DB_USER");
-            String DB_PASSWORD = props.getProperty("DB_PASSWORD");
             Class.forName("oracle.jdbc.driver.OracleDriver");
 
             Properties connectionProps = new Properties();
             connectionProps.setProperty("user", DB_USER);
             connectionProps.setProperty("password", DB_PASSWORD);
 
-            this.connection = DriverManager.getConnection(DB_URL, connectionProps);
-            System.out.println("Connected to database");
+            FlightEvents.configure(props);
+            this.connection = FlightEvents.instrument(DriverManager.getConnection(DB_URL, connectionProps));
+            System.out.println("Connected to database" + (prefix.isEmpty() ? "" : " " + prefix.substring(0, prefix.length() - 1)));
+            this.aggregates = new StudentAggregates(connection);
+            this.history = EnrollmentArchive.historyTable(connection);
+            this.roster = new ClassRoster(connection);
+            this.transactions = new TransactionTemplate(connection);
+            this.currentTerm = loadCurrentTerm(props);
+
+            synchronized (StudentTransactions.class) {
+                if (admission == null) {
+                    admission = AdmissionControl.fromConfig(props);
+                }
+                if (replicaRouting == null) {
+                    replicaRouting = ReplicaRouter.fromConfig(props);
+                }
+                if (passedCourses == null) {
+                    passedCourses = PassedCourseCache.fromConfig(props);
+                }
+                if (events == null) {
+                    events = ChangeEventStream.fromConfig(props);
+                }
+                if (contention == null) {
+                    contention = OfferingContention.fromConfig(props);
+                }
+                if (plans == null) {
+                    plans = PlanCache.fromConfig(props);
+                }
+            }
+
+            if (props.getProperty(prefix + "REPLICA_DB_URL") != null) {
+                try {
+                    replica = new StudentTransactions(props, prefix + "REPLICA_");
+                    replica.connection.setReadOnly(true);
+                    replica.isReplica = true;
+                } catch (SQLException e) {
+                    System.err.println("Read replica disabled: " + e.getMessage());
+                    replica = null;
+                }
+            }
 
-        } catch (ClassNotFoundException | IOException e) {
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("Error loading configuration or driver", e);
+        }
+    }
+    
+    private static Properties requireConfig() throws SQLException {
+        try {
+            return loadConfig();
+        } catch (IOException e) {
             throw new SQLException("Error loading configuration or driver", e);
         }
     }
     
+    // Opens a sharded instance when SHARD_COUNT is configured, otherwise a
+    // plain connection to DB_URL
+    static StudentTransactions connect() throws SQLException {
+        Properties props = requireConfig();
+        if (ShardRouter.isConfigured(props)) {
+            return new ShardedStudentTransactions(props);
+        }
+        return new StudentTransactions(props, "");
+    }
+    
+    // The replica if the operation is marked @ReplicaRead and none of the keys
+    // was written recently, otherwise this primary connection
+    StudentTransactions readSide(String operation, String... keys) {
+        if (replica != null && replicaRouting.useReplica(operation, keys)) {
+            return replica;
+        }
+        return this;
+    }
+    
+    void setPeers(ShardPeers peers) {
+        this.peers = peers;
+    }
+    
+    void setRoster(ClassRoster roster) {
+        this.roster = roster;
+    }
+    
+    // The term stored by the last rollover, or the configured one before any rollover
+    private Term loadCurrentTerm(Properties props) {
+        String sql = "SELECT quarter, year FROM Current_Term";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                return new Term(rs.getString("quarter"), rs.getInt("year"));
+            }
+        } catch (SQLException e) {
+            // No rollover has run against this database yet
+        }
+        return Term.fromConfig(props);
+    }
+    
+    public Term getCurrentTerm() {
+        return currentTerm;
+    }
+    
+    Connection getConnection() {
+        return connection;
+    }
+
+    // Every database this instance writes to, for schema migrations
+    List<Connection> databases() {
+        return List.of(connection);
+    }
+    
+    static Properties loadConfig() throws IOException {
+        Properties props = new Properties();
+        try (FileInputStream fis = new FileInputStream("config.properties")) {
+            props.load(fis);
+        }
+        return props;
+    }
+    
+    // Starts the enrollment journal if JOURNAL_FILE is configured. Journaled
+    // adds, drops and grades are acknowledged once on local disk and applied
+    // to the database by the journal's drain thread.
+    static void openJournal() {
+        try {
+            Properties props = loadConfig();
+            String journalFile = props.getProperty("JOURNAL_FILE");
+            if (journalFile == null || journalFile.isBlank()) {
+                return;
+            }
+            if (ShardRouter.isConfigured(props)) {
+                // The journal applies everything through one connection
+                System.err.println("Enrollment journal disabled: not supported with SHARD_COUNT");
+                return;
+            }
+            long capacityMb = Long.parseLong(props.getProperty("JOURNAL_SIZE_MB", "64").trim());
+            journalApplier = new StudentTransactions();
+            journal = EnrollmentJournal.open(Paths.get(journalFile), capacityMb * 1024 * 1024,
+                journalApplier::applyJournalBatch);
+            System.out.println("Enrollment journal enabled: " + journalFile);
+        } catch (IOException | SQLException | NumberFormatException e) {
+            System.err.println("Enrollment journal disabled: " + e.getMessage());
+            journal = null;
+        }
+    }
+    
+    // Starts the change-event stream. With ENROLLMENT_STORE_DIR set, the
+    // off-heap enrollment store there follows the stream so it stays current.
+    static void openEvents() {
+        Properties props;
+        try {
+            props = loadConfig();
+        } catch (IOException e) {
+            System.err.println("Change events disabled: " + e.getMessage());
+            return;
+        }
+        synchronized (StudentTransactions.class) {
+            if (events == null) {
+                events = ChangeEventStream.fromConfig(props);
+            }
+        }
+        String storeDir = props.getProperty("ENROLLMENT_STORE_DIR");
+        if (storeDir == null || storeDir.isBlank()) {
+            return;
+        }
+        try {
+            followingStore = EnrollmentStore.open(Paths.get(storeDir.trim()));
+            events.subscribe("enrollment-store", followingStore.follower());
+            System.out.println("Enrollment store following changes: " + storeDir.trim());
+        } catch (IOException e) {
+            System.err.println("Enrollment store not opened: " + e.getMessage());
+            followingStore = null;
+        }
+    }
+
+    static void closeEvents() {
+        if (events != null) {
+            events.close();
+        }
+        if (followingStore != null) {
+            try {
+                followingStore.close();
+            } catch (IOException e) {
+                System.err.println("Error closing enrollment store: " + e.getMessage());
+            }
+            followingStore = null;
+        }
+    }
+
+    // Waits for journaled changes to reach the database
+    static void closeJournal() {
+        if (journal != null) {
+            System.out.println("Applying " + journal.getBacklog() + " journaled change(s) before exit...");
+            journal.close();
+            journal = null;
+        }
+        if (journalApplier != null) {
+            journalApplier.close();
+            journalApplier = null;
+        }
+    }
+    
     // List courses for current quarter
     public void listCurrentCourses(String permNumber) {
+        FlightEvents.record("listCurrentCourses", permNumber, null, () -> doListCurrentCourses(permNumber));
+    }
+    
+    private void doListCurrentCourses(String permNumber) {
         System.out.println("\n=== Current Courses for Student " + permNumber + " ===");
-        
+    
+        printCurrentCourses(getCurrentCourses(permNumber));
+    }
+    
+    static void printCurrentCourses(List<CourseRow> courses) {
+        for (CourseRow course : courses) {
+            System.out.printf("%-8s %-20s %s %d (Prof: %s %s) [Code: %s]%n", 
+                course.courseNumber,
+                course.title,
+                course.quarter,
+                course.year,
+                course.profFirstName,
+                course.profLastName,
+                course.enrollmentCode);
+        }
+        if (courses.isEmpty()) {
+            System.out.println("No current courses found.");
+        }
+    }
+    
+    // Courses the student is enrolled in this quarter
+    public List<CourseRow> getCurrentCourses(String permNumber) {
+        return FlightEvents.record("getCurrentCourses", permNumber, null, () -> doGetCurrentCourses(permNumber));
+    }
+    
+    private List<CourseRow> doGetCurrentCourses(String permNumber) {
+        List<CourseRow> courses = new ArrayList<>();
         String sql = "SELECT co.enrollment_code, co.course_number, c.title, co.quarter, co.year, " +
                     "co.prof_first_name, co.prof_last_name " +
                     "FROM Enrolls_in e " +
@@ -54,73 +330,234 @@ public class StudentTransactions {
                     "JOIN Course c ON co.course_number = c.course_number " +
                     "WHERE e.perm_number = ? AND e.status = 'Current' " +
                     "ORDER BY co.course_number";
-        
+    
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, permNumber);
             ResultSet rs = stmt.executeQuery();
-            boolean foundCourses = false;
             while (rs.next()) {
-                System.out.printf("%-8s %-20s %s %d (Prof: %s %s) [Code: %s]%n", 
+                courses.add(new CourseRow(
+                    rs.getString("enrollment_code"),
                     rs.getString("course_number"),
                     rs.getString("title"),
                     rs.getString("quarter"),
                     rs.getInt("year"),
                     rs.getString("prof_first_name"),
-                    rs.getString("prof_last_name"),
-                    rs.getString("enrollment_code"));
-                foundCourses = true;
-            }
-            if (!foundCourses) {
-                System.out.println("No current courses found.");
+                    rs.getString("prof_last_name")));
             }
         } catch (SQLException e) {
             System.err.println("Error listing current courses: " + e.getMessage());
         }
+        return courses;
     }
     
     // Add course for student in current quarter
     public boolean addCourse(String permNumber, String enrollmentCode) {
+        return FlightEvents.record("addCourse", permNumber, enrollmentCode, () -> doAddCourse(permNumber, enrollmentCode));
+    }
+    
+    private boolean doAddCourse(String permNumber, String enrollmentCode) {
         System.out.println("\n=== Adding Course " + enrollmentCode + " for Student " + permNumber + " ===");
-        if (!studentExists(permNumber)) {
-            System.out.println("Failed to add course: Student " + permNumber + " not found.");
+        AdmissionControl.Decision decision = admission.admit(permNumber);
+        if (!decision.isAdmitted()) {
+            System.out.println("Failed to add course: " + decision.getMessage());
             return false;
         }
-        if (!courseHasSpaceAndIsCurrent(enrollmentCode)) {
-            System.out.println("Failed to add course.");
+        try {
+            return addCourseInternal(permNumber, enrollmentCode);
+        } finally {
+            admission.release(decision);
+        }
+    }
+    
+    // Add course for registrar (no pass time or rate limit)
+    public boolean registrarAddCourse(String permNumber, String enrollmentCode) {
+        return FlightEvents.record("registrarAddCourse", permNumber, enrollmentCode, () -> doRegistrarAddCourse(permNumber, enrollmentCode));
+    }
+    
+    private boolean doRegistrarAddCourse(String permNumber, String enrollmentCode) {
+        System.out.println("\n=== [REGISTRAR] Adding Course " + enrollmentCode + " for Student " + permNumber + " ===");
+        AdmissionControl.Decision decision = admission.admitRegistrar();
+        if (!decision.isAdmitted()) {
+            System.out.println("Failed to add course: " + decision.getMessage());
             return false;
         }
-        if (isStudentEnrolled(permNumber, enrollmentCode)) {
-            System.out.println("Failed to add course.");
+        try {
+            return addCourseInternal(permNumber, enrollmentCode);
+        } finally {
+            admission.release(decision);
+        }
+    }
+    
+    // Registrar adds for many pairs at once, checked set-wise and inserted as
+    // one batch (see BulkEnrollment). Sets each pair's outcome and returns
+    // pairs, or null if the database failed and nothing was added.
+    public List<BulkEnrollment.Pair> bulkAddCourses(List<BulkEnrollment.Pair> pairs) {
+        return FlightEvents.record("bulkAddCourses", null, null, () -> doBulkAddCourses(pairs));
+    }
+
+    private List<BulkEnrollment.Pair> doBulkAddCourses(List<BulkEnrollment.Pair> pairs) {
+        System.out.println("\n=== [REGISTRAR] Bulk Add of " + pairs.size() + " Enrollment(s) ===");
+        AdmissionControl.Decision decision = admission.admitRegistrar();
+        if (!decision.isAdmitted()) {
+            System.out.println("Failed to add courses: " + decision.getMessage());
+            return null;
+        }
+        try {
+            if (journal != null || peers != ShardPeers.NONE) {
+                // Journaled and sharded adds need the per-pair path
+                for (BulkEnrollment.Pair pair : pairs) {
+                    pair.outcome = addCourseInternal(pair.permNumber, pair.enrollmentCode)
+                        ? BulkEnrollment.Outcome.OK : BulkEnrollment.Outcome.FAILED;
+                }
+                return pairs;
+            }
+            List<BulkEnrollment.Pair> added = transactions.execute(conn -> new BulkEnrollment(conn, currentTerm).add(pairs));
+            for (BulkEnrollment.Pair pair : added) {
+                replicaRouting.recordWrite(pair.permNumber, pair.enrollmentCode);
+                events.publish(ChangeEventStream.Type.ADD, pair.permNumber, pair.enrollmentCode, null);
+            }
+            return pairs;
+        } catch (SQLException e) {
+            System.err.println("Database error in bulk add: " + e.getMessage());
+            return null;
+        } finally {
+            admission.release(decision);
+        }
+    }
+
+    // Registrar drops for many pairs at once; each freed seat is offered to the
+    // waitlist. Same return convention as bulkAddCourses.
+    public List<BulkEnrollment.Pair> bulkDropCourses(List<BulkEnrollment.Pair> pairs) {
+        return FlightEvents.record("bulkDropCourses", null, null, () -> doBulkDropCourses(pairs));
+    }
+
+    private List<BulkEnrollment.Pair> doBulkDropCourses(List<BulkEnrollment.Pair> pairs) {
+        System.out.println("\n=== [REGISTRAR] Bulk Drop of " + pairs.size() + " Enrollment(s) ===");
+        try {
+            if (journal != null) {
+                for (BulkEnrollment.Pair pair : pairs) {
+                    pair.outcome = dropCourseInternal(pair.permNumber, pair.enrollmentCode)
+                        ? BulkEnrollment.Outcome.OK : BulkEnrollment.Outcome.FAILED;
+                }
+                return pairs;
+            }
+            List<BulkEnrollment.Pair> promoted = new ArrayList<>();
+            List<BulkEnrollment.Pair> dropped = transactions.execute(conn -> {
+                BulkEnrollment bulk = new BulkEnrollment(conn, currentTerm);
+                List<BulkEnrollment.Pair> done = bulk.drop(pairs, this::promoteFromWaitlist);
+                promoted.clear();
+                promoted.addAll(bulk.getPromoted());
+                return done;
+            });
+            for (BulkEnrollment.Pair pair : dropped) {
+                replicaRouting.recordWrite(pair.permNumber, pair.enrollmentCode);
+                events.publish(ChangeEventStream.Type.DROP, pair.permNumber, pair.enrollmentCode, null);
+            }
+            for (BulkEnrollment.Pair pair : promoted) {
+                System.out.println("Student " + pair.permNumber + " was moved from the waitlist into " + pair.enrollmentCode);
+                replicaRouting.recordWrite(pair.permNumber);
+                events.publish(ChangeEventStream.Type.ADD, pair.permNumber, pair.enrollmentCode, null);
+            }
+            return pairs;
+        } catch (SQLException e) {
+            System.err.println("Database error in bulk drop: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Runs a bulk add or drop from a pairs file and writes the outcome report
+    public boolean runBulkEnrollment(boolean add, String pairsFile, String reportFile) {
+        return FlightEvents.record("runBulkEnrollment", null, null, () -> doRunBulkEnrollment(add, pairsFile, reportFile));
+    }
+
+    private boolean doRunBulkEnrollment(boolean add, String pairsFile, String reportFile) {
+        List<BulkEnrollment.Pair> pairs;
+        try (BufferedReader in = new BufferedReader(new FileReader(pairsFile))) {
+            pairs = BulkEnrollment.read(in);
+        } catch (IOException e) {
+            System.err.println("Error reading " + pairsFile + ": " + e.getMessage());
             return false;
         }
-        int currentCourseCount = getCurrentCourseCount(permNumber);
-        if (currentCourseCount >= 5) {
-            System.out.println("Failed to add course.");
+        List<BulkEnrollment.Pair> results = add ? bulkAddCourses(pairs) : bulkDropCourses(pairs);
+        if (results == null) {
             return false;
         }
-        if (!hasPrerequisites(permNumber, enrollmentCode)) {
-            System.out.println("Failed to add course.");
+        try (Writer out = new BufferedWriter(new FileWriter(reportFile))) {
+            BulkEnrollment.writeReport(results, out);
+        } catch (IOException e) {
+            System.err.println("Error writing report: " + e.getMessage());
             return false;
         }
-        
-        String sql = "INSERT INTO Enrolls_in (perm_number, enrollment_code, year, quarter, status) " +
-                    "SELECT ?, ?, co.year, co.quarter, 'Current' " +
-                    "FROM Course_Offering co " +
-                    "WHERE co.enrollment_code = ?";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, permNumber);
-            stmt.setString(2, enrollmentCode);
-            stmt.setString(3, enrollmentCode);
-            
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("Successfully enrolled in course " + enrollmentCode);
-                return true;
-            } else {
-                System.out.println("Failed to add course.");
-                return false;
+        BulkEnrollment.printSummary(results);
+        System.out.println("Report written to " + reportFile);
+        return true;
+    }
+
+    // Internal method for adding courses
+    private boolean addCourseInternal(String permNumber, String enrollmentCode) {
+        if (journal != null) {
+            return addCourseJournaled(permNumber, enrollmentCode);
+        }
+        // Checks and insert run as one transaction under an OfferingGuard, so
+        // the seat count can't change between the check and the insert. The
+        // student row is locked first, so the student's own adds and drops
+        // take turns.
+        try {
+            boolean added = peers.withSeatsLocked(enrollmentCode, () -> guarded(enrollmentCode, guard -> {
+                if (!lockStudent(permNumber)) {
+                    System.out.println("Failed to add course: Student " + permNumber + " not found.");
+                    return false;
+                }
+                guard.begin();
+                if (!courseHasSpaceAndIsCurrent(enrollmentCode)) {
+                    System.out.println("Failed to add course.");
+                    return false;
+                }
+                if (isStudentEnrolled(permNumber, enrollmentCode)) {
+                    System.out.println("Failed to add course.");
+                    return false;
+                }
+                int currentCourseCount = getCurrentCourseCount(permNumber);
+                if (currentCourseCount >= 5) {
+                    System.out.println("Failed to add course.");
+                    return false;
+                }
+                if (!hasPrerequisites(permNumber, enrollmentCode)) {
+                    System.out.println("Failed to add course.");
+                    return false;
+                }
+                
+                guard.claim();
+                // The student's own checks are repeated in the insert
+                String sql = "INSERT INTO Enrolls_in (perm_number, enrollment_code, year, quarter, status) " +
+                            "SELECT ?, ?, co.year, co.quarter, 'Current' " +
+                            "FROM Course_Offering co " +
+                            "WHERE co.enrollment_code = ? " +
+                            "AND NOT EXISTS (SELECT 1 FROM Enrolls_in e WHERE e.perm_number = ? AND e.enrollment_code = co.enrollment_code AND e.status = 'Current') " +
+                            "AND (SELECT COUNT(*) FROM Enrolls_in e WHERE e.perm_number = ? AND e.status = 'Current') < 5";
+                
+                try (PreparedStatement stmt = guard.connection().prepareStatement(sql)) {
+                    stmt.setString(1, permNumber);
+                    stmt.setString(2, enrollmentCode);
+                    stmt.setString(3, enrollmentCode);
+                    stmt.setString(4, permNumber);
+                    stmt.setString(5, permNumber);
+                    
+                    int rowsAffected = stmt.executeUpdate();
+                    if (rowsAffected == 0) {
+                        throw new LostRace(enrollmentCode);
+                    }
+                    System.out.println("Successfully enrolled in course " + enrollmentCode);
+                    return true;
+                }
+            }));
+            if (added) {
+                afterCommit(() -> {
+                    replicaRouting.recordWrite(permNumber, enrollmentCode);
+                    events.publish(ChangeEventStream.Type.ADD, permNumber, enrollmentCode, null);
+                });
             }
+            return added;
         } catch (SQLException e) {
             System.err.println("Database error adding course: " + e.getMessage());
             System.out.println("Failed to add course.");
@@ -128,68 +565,551 @@ public class StudentTransactions {
         }
     }
     
+    // Journaled add. The checks count the adds and drops still waiting in the
+    // journal, and the record is only appended if none of them reached the
+    // database or changed meanwhile, so an accepted add is not rejected when
+    // it is applied.
+    private boolean addCourseJournaled(String permNumber, String enrollmentCode) {
+        if (!studentExists(permNumber)) {
+            System.out.println("Failed to add course: Student " + permNumber + " not found.");
+            return false;
+        }
+        try {
+            while (true) {
+                EnrollmentJournal.Pending pending = journal.pending(permNumber, enrollmentCode);
+                // Waiting drops don't free anything until they are applied
+                if (!courseHasSpaceAndIsCurrent(enrollmentCode, pending.offeringAdds)
+                        || pending.added || isStudentEnrolled(permNumber, enrollmentCode)
+                        || getCurrentCourseCount(permNumber) + pending.studentAdds >= 5
+                        || !hasPrerequisites(permNumber, enrollmentCode)) {
+                    System.out.println("Failed to add course.");
+                    return false;
+                }
+                if (journal.appendIf(pending, EnrollmentJournal.ADD, permNumber, enrollmentCode) > 0) {
+                    replicaRouting.recordWrite(permNumber, enrollmentCode);
+                    System.out.println("Enrollment in course " + enrollmentCode + " accepted");
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing enrollment journal: " + e.getMessage());
+            System.out.println("Failed to add course.");
+            return false;
+        }
+    }
+
+    // Journaled drop, checked like addCourseJournaled. Waiting adds don't
+    // count towards the student's courses until they are applied.
+    private boolean dropCourseJournaled(String permNumber, String enrollmentCode) {
+        try {
+            while (true) {
+                EnrollmentJournal.Pending pending = journal.pending(permNumber, enrollmentCode);
+                if (pending.dropped || !isStudentEnrolled(permNumber, enrollmentCode)) {
+                    System.out.println(" Error: Student " + permNumber + " is not currently enrolled in course offering " + enrollmentCode);
+                    return false;
+                }
+                if (getCurrentCourseCount(permNumber) - pending.studentDrops <= 1) {
+                    System.out.println("Error: Cannot drop course, this is the student's only course");
+                    System.out.println("  (Students must stay enrolled in at least one course)");
+                    return false;
+                }
+                if (journal.appendIf(pending, EnrollmentJournal.DROP, permNumber, enrollmentCode) > 0) {
+                    replicaRouting.recordWrite(permNumber, enrollmentCode);
+                    System.out.println("Drop of course " + enrollmentCode + " for student " + permNumber + " accepted");
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing enrollment journal: " + e.getMessage());
+            return false;
+        }
+    }
+    
     // Drop course with PIN verification for students
     public boolean dropCourse(String permNumber, String pin, String enrollmentCode) {
+        return FlightEvents.record("dropCourse", permNumber, enrollmentCode, () -> doDropCourse(permNumber, pin, enrollmentCode));
+    }
+    
+    private boolean doDropCourse(String permNumber, String pin, String enrollmentCode) {
         System.out.println("\n=== Dropping Course " + enrollmentCode + " for Student " + permNumber + " ===");
         if (!verifyPin(permNumber, pin)) {
             return false;
         }
-        return dropCourseInternal(permNumber, enrollmentCode);
+        AdmissionControl.Decision decision = admission.admit(permNumber);
+        if (!decision.isAdmitted()) {
+            System.out.println("Failed to drop course: " + decision.getMessage());
+            return false;
+        }
+        try {
+            return dropCourseInternal(permNumber, enrollmentCode);
+        } finally {
+            admission.release(decision);
+        }
     }
     
     // Drop course for registrar (no PIN required)
     public boolean dropCourse(String permNumber, String enrollmentCode) {
+        return FlightEvents.record("dropCourse", permNumber, enrollmentCode, () -> doDropCourse(permNumber, enrollmentCode));
+    }
+    
+    private boolean doDropCourse(String permNumber, String enrollmentCode) {
         System.out.println("\n=== [REGISTRAR] Dropping Course " + enrollmentCode + " for Student " + permNumber + " ===");
-        return dropCourseInternal(permNumber, enrollmentCode);
+        AdmissionControl.Decision decision = admission.admitRegistrar();
+        if (!decision.isAdmitted()) {
+            System.out.println("Failed to drop course: " + decision.getMessage());
+            return false;
+        }
+        try {
+            return dropCourseInternal(permNumber, enrollmentCode);
+        } finally {
+            admission.release(decision);
+        }
+    }
+    
+    public void printAdmissionMetrics() {
+        admission.printMetrics();
+        passedCourses.printMetrics();
+        events.printMetrics();
+        contention.printMetrics();
+        plans.printMetrics();
+        if (replica != null) {
+            replicaRouting.printMetrics();
+        }
     }
     
     // Internal method for dropping courses
     private boolean dropCourseInternal(String permNumber, String enrollmentCode) {
-        // Check if student is currently enrolled
-        String checkSql = "SELECT 1 FROM Enrolls_in WHERE perm_number = ? AND enrollment_code = ? AND status = 'Current'";
-        try (PreparedStatement checkStmt = connection.prepareStatement(checkSql)) {
-            checkStmt.setString(1, permNumber);
-            checkStmt.setString(2, enrollmentCode);
-            if (!checkStmt.executeQuery().next()) {
-                 System.out.println(" Error: Student " + permNumber + " is not currently enrolled in course offering " + enrollmentCode);
-                 return false;
+        if (journal != null) {
+            return dropCourseJournaled(permNumber, enrollmentCode);
+        }
+        // The checks, the delete and the waitlist promotion commit together so
+        // the freed seat can't be taken by a regular add in between
+        String[] promotedStudent = new String[1];
+        try {
+            boolean dropped = guarded(enrollmentCode, guard -> {
+                // Same order as adds: the student, then the offering
+                if (!lockStudent(permNumber)) {
+                    System.out.println(" Error: Student " + permNumber + " not found.");
+                    return false;
+                }
+                guard.begin();
+                
+                // Check if student is currently enrolled
+                String checkSql = "SELECT 1 FROM Enrolls_in WHERE perm_number = ? AND enrollment_code = ? AND status = 'Current'";
+                try (PreparedStatement checkStmt = guard.connection().prepareStatement(checkSql)) {
+                    checkStmt.setString(1, permNumber);
+                    checkStmt.setString(2, enrollmentCode);
+                    if (!checkStmt.executeQuery().next()) {
+                         System.out.println(" Error: Student " + permNumber + " is not currently enrolled in course offering " + enrollmentCode);
+                         return false;
+                    }
+                }
+
+                // Prevent dropping the only course
+                int currentCourseCount = getCurrentCourseCount(permNumber);
+                if (currentCourseCount <= 1) {
+                    System.out.println("Error: Cannot drop course, this is the student's only course");
+                    System.out.println("  (Students must stay enrolled in at least one course)");
+                    return false;
+                }
+                
+                guard.claim();
+                // The only-course check is repeated in the delete
+                String sql = "DELETE FROM Enrolls_in " +
+                            "WHERE perm_number = ? AND enrollment_code = ? AND status = 'Current' " +
+                            "AND (SELECT COUNT(*) FROM Enrolls_in e WHERE e.perm_number = ? AND e.status = 'Current') > 1";
+                int rowsAffected;
+                try (PreparedStatement stmt = guard.connection().prepareStatement(sql)) {
+                    stmt.setString(1, permNumber);
+                    stmt.setString(2, enrollmentCode);
+                    stmt.setString(3, permNumber);
+                    rowsAffected = stmt.executeUpdate();
+                }
+                if (rowsAffected == 0) {
+                    throw new LostRace(enrollmentCode);
+                }
+                String promoted = promoteFromWaitlist(enrollmentCode);
+                promotedStudent[0] = promoted;
+                System.out.println("Successfully dropped course " + enrollmentCode + " for student " + permNumber);
+                if (promoted != null) {
+                    System.out.println("Student " + promoted + " was moved from the waitlist into " + enrollmentCode);
+                }
+                return true;
+            });
+            if (dropped) {
+                String promoted = promotedStudent[0];
+                afterCommit(() -> {
+                    replicaRouting.recordWrite(permNumber, enrollmentCode);
+                    events.publish(ChangeEventStream.Type.DROP, permNumber, enrollmentCode, null);
+                    if (promoted != null) {
+                        replicaRouting.recordWrite(promoted);
+                        events.publish(ChangeEventStream.Type.ADD, promoted, enrollmentCode, null);
+                    }
+                });
             }
+            return dropped;
         } catch (SQLException e) {
-            System.err.println(" Database error checking enrollment before drop: " + e.getMessage());
+            System.err.println("Database error dropping course: " + e.getMessage());
             return false;
         }
+    }
 
-        // Prevent dropping the only course
-        int currentCourseCount = getCurrentCourseCount(permNumber);
-        if (currentCourseCount <= 1) {
-            System.out.println("Error: Cannot drop course, this is the student's only course");
-            System.out.println("  (Students must stay enrolled in at least one course)");
+    private boolean appendToJournal(byte type, String... fields) {
+        try {
+            journal.append(type, fields);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing enrollment journal: " + e.getMessage());
             return false;
         }
-        
-        String sql = "DELETE FROM Enrolls_in " +
-                    "WHERE perm_number = ? AND enrollment_code = ? AND status = 'Current'";
-        
+    }
+
+    // Applies journaled mutations in one transaction. Each statement re-checks
+    // its conditions, so replaying an already applied record changes nothing.
+    // Change events are published once the batch has committed. Returns the
+    // records that no longer apply, with the reason, for the journal to keep.
+    Map<EnrollmentJournal.Entry, String> applyJournalBatch(List<EnrollmentJournal.Entry> batch) throws SQLException {
+        String addSql = "INSERT INTO Enrolls_in (perm_number, enrollment_code, year, quarter, status) " +
+                       "SELECT ?, ?, co.year, co.quarter, 'Current' FROM Course_Offering co " +
+                       "WHERE co.enrollment_code = ? " +
+                       "AND NOT EXISTS (SELECT 1 FROM Enrolls_in e WHERE e.perm_number = ? AND e.enrollment_code = co.enrollment_code AND e.status = 'Current') " +
+                       "AND (SELECT COUNT(*) FROM Enrolls_in e WHERE e.perm_number = ? AND e.status = 'Current') < 5 " +
+                       "AND (SELECT COUNT(*) FROM Enrolls_in e WHERE e.enrollment_code = co.enrollment_code AND e.status = 'Current') < co.enroll_limit";
+        String dropSql = "DELETE FROM Enrolls_in WHERE perm_number = ? AND enrollment_code = ? AND status = 'Current' " +
+                        "AND (SELECT COUNT(*) FROM Enrolls_in e WHERE e.perm_number = ? AND e.status = 'Current') > 1";
+        String gradeSql = "UPDATE Enrolls_in SET grade = ?, grade_points = ?, status = 'Past' " +
+                         "WHERE perm_number = ? AND enrollment_code = ? AND status = 'Current'";
+        // {type, perm number, enrollment code, grade} of each applied change
+        List<String[]> applied = new ArrayList<>();
+        Map<EnrollmentJournal.Entry, String> rejected = new LinkedHashMap<>();
+        transactions.execute(conn -> {
+            applied.clear();
+            rejected.clear();
+            for (EnrollmentJournal.Entry entry : batch) {
+                String[] f = entry.fields;
+                switch (entry.type) {
+                    case EnrollmentJournal.ADD:
+                        // Other processes may be adding optimistically
+                        lockOffering(f[1]);
+                        try (PreparedStatement stmt = connection.prepareStatement(addSql)) {
+                            stmt.setString(1, f[0]);
+                            stmt.setString(2, f[1]);
+                            stmt.setString(3, f[1]);
+                            stmt.setString(4, f[0]);
+                            stmt.setString(5, f[0]);
+                            if (stmt.executeUpdate() == 0) {
+                                rejected.put(entry, "add no longer valid (enrolled, course limit or full)");
+                            } else {
+                                applied.add(new String[] {"ADD", f[0], f[1], null});
+                            }
+                        }
+                        break;
+                    case EnrollmentJournal.DROP:
+                        lockOffering(f[1]);
+                        try (PreparedStatement stmt = connection.prepareStatement(dropSql)) {
+                            stmt.setString(1, f[0]);
+                            stmt.setString(2, f[1]);
+                            stmt.setString(3, f[0]);
+                            if (stmt.executeUpdate() > 0) {
+                                applied.add(new String[] {"DROP", f[0], f[1], null});
+                                String promoted = promoteFromWaitlist(f[1]);
+                                if (promoted != null) {
+                                    applied.add(new String[] {"ADD", promoted, f[1], null});
+                                }
+                            } else {
+                                rejected.put(entry, "drop no longer valid (not enrolled or last course)");
+                            }
+                        }
+                        break;
+                    case EnrollmentJournal.GRADE:
+                        try (PreparedStatement stmt = connection.prepareStatement(gradeSql)) {
+                            double gradePoints = calculateGradePoints(f[2]);
+                            stmt.setString(1, f[2]);
+                            stmt.setDouble(2, gradePoints);
+                            stmt.setString(3, f[1]);
+                            stmt.setString(4, f[0]);
+                            if (stmt.executeUpdate() > 0) {
+                                aggregates.recordGrade(f[1], f[0], f[2], gradePoints);
+                                applied.add(new String[] {"GRADE", f[1], f[0], f[2]});
+                            } else {
+                                rejected.put(entry, "grade no longer valid (not currently enrolled)");
+                            }
+                        }
+                        break;
+                }
+            }
+            return null;
+        });
+        for (String[] change : applied) {
+            if (change[0].equals("GRADE")) {
+                passedCourses.invalidate(change[1]);
+            }
+            events.publish(ChangeEventStream.Type.valueOf(change[0]), change[1], change[2], change[3]);
+        }
+        return rejected;
+    }
+
+    // Waitlist
+    //
+    // Waitlist(enrollment_code, perm_number, position, joined_at) holds one FIFO
+    // queue per offering. Joining and promotion both lock the Course_Offering row
+    // first, so positions are handed out and consumed in a single order.
+
+    // Put a student on the waitlist of a full offering
+    public boolean joinWaitlist(String permNumber, String enrollmentCode) {
+        return FlightEvents.record("joinWaitlist", permNumber, enrollmentCode, () -> doJoinWaitlist(permNumber, enrollmentCode));
+    }
+
+    private boolean doJoinWaitlist(String permNumber, String enrollmentCode) {
+        System.out.println("\n=== Joining Waitlist for " + enrollmentCode + " (Student " + permNumber + ") ===");
+        if (!studentExists(permNumber)) {
+            System.out.println("Failed to join waitlist: Student " + permNumber + " not found.");
+            return false;
+        }
+        if (!isCourseFull(enrollmentCode)) {
+            System.out.println("Course " + enrollmentCode + " is not full. Add the course instead.");
+            return false;
+        }
+        if (isStudentEnrolled(permNumber, enrollmentCode) || !hasPrerequisites(permNumber, enrollmentCode)) {
+            System.out.println("Failed to join waitlist.");
+            return false;
+        }
+        if (getWaitlistPosition(permNumber, enrollmentCode) > 0) {
+            System.out.println("Student " + permNumber + " is already on the waitlist for " + enrollmentCode + ".");
+            return false;
+        }
+
+        String sql = "INSERT INTO Waitlist (enrollment_code, perm_number, position, joined_at) " +
+                    "SELECT ?, ?, NVL(MAX(position), 0) + 1, SYSTIMESTAMP FROM Waitlist WHERE enrollment_code = ?";
+        try {
+            transactions.execute(conn -> {
+                lockOffering(enrollmentCode);
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, enrollmentCode);
+                    stmt.setString(2, permNumber);
+                    stmt.setString(3, enrollmentCode);
+                    return stmt.executeUpdate();
+                }
+            });
+        } catch (SQLException e) {
+            System.err.println("Database error joining waitlist: " + e.getMessage());
+            return false;
+        }
+        System.out.println("Added to waitlist for " + enrollmentCode + " at position " + getWaitlistPosition(permNumber, enrollmentCode) + ".");
+        return true;
+    }
+
+    // 1-based position on the waitlist, or 0 if the student is not on it
+    public int getWaitlistPosition(String permNumber, String enrollmentCode) {
+        return FlightEvents.record("getWaitlistPosition", permNumber, enrollmentCode, () -> doGetWaitlistPosition(permNumber, enrollmentCode));
+    }
+
+    private int doGetWaitlistPosition(String permNumber, String enrollmentCode) {
+        String sql = "SELECT COUNT(*) FROM Waitlist w " +
+                    "WHERE w.enrollment_code = ? AND w.position <= " +
+                    "(SELECT position FROM Waitlist WHERE enrollment_code = ? AND perm_number = ?)";
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, permNumber);
+            stmt.setString(1, enrollmentCode);
             stmt.setString(2, enrollmentCode);
-            
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("Successfully dropped course " + enrollmentCode + " for student " + permNumber);
-                return true;
-            } else {
-                System.out.println("Failed to drop course (no rows deleted).");
-                return false;
+            stmt.setString(3, permNumber);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                return rs.getInt(1);
             }
         } catch (SQLException e) {
-            System.err.println("Database error dropping course: " + e.getMessage());
+            System.err.println("Error getting waitlist position: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    public boolean isCourseFull(String enrollmentCode) {
+        return FlightEvents.record("isCourseFull", null, enrollmentCode, () -> doIsCourseFull(enrollmentCode));
+    }
+
+    private boolean doIsCourseFull(String enrollmentCode) {
+        String sql = "SELECT co.enroll_limit, " +
+                    "(SELECT COUNT(*) FROM Enrolls_in ei WHERE ei.enrollment_code = co.enrollment_code AND ei.status = 'Current') as current_enrollment " +
+                    "FROM Course_Offering co WHERE co.enrollment_code = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, enrollmentCode);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next()
+                && rs.getInt("current_enrollment") + peers.enrolledElsewhere(enrollmentCode) >= rs.getInt("enroll_limit");
+        } catch (SQLException e) {
+            System.err.println("Error checking course capacity: " + e.getMessage());
             return false;
         }
     }
-    
+
+    // Moves the first eligible waitlisted student into the offering. Must run
+    // inside the caller's transaction with the offering row locked.
+    private String promoteFromWaitlist(String enrollmentCode) throws SQLException {
+        String headSql = "SELECT perm_number FROM Waitlist WHERE enrollment_code = ? ORDER BY position";
+        String removeSql = "DELETE FROM Waitlist WHERE enrollment_code = ? AND perm_number = ?";
+        String eligibleSql = "SELECT COUNT(*), " +
+                            "SUM(CASE WHEN enrollment_code = ? THEN 1 ELSE 0 END) " +
+                            "FROM Enrolls_in WHERE perm_number = ? AND status = 'Current'";
+        String enrollSql = "INSERT INTO Enrolls_in (perm_number, enrollment_code, year, quarter, status) " +
+                          "SELECT ?, ?, co.year, co.quarter, 'Current' " +
+                          "FROM Course_Offering co WHERE co.enrollment_code = ?";
+
+        List<String> queue = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(headSql)) {
+            stmt.setString(1, enrollmentCode);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                queue.add(rs.getString("perm_number"));
+            }
+        }
+
+        for (String candidate : queue) {
+            try (PreparedStatement stmt = connection.prepareStatement(removeSql)) {
+                stmt.setString(1, enrollmentCode);
+                stmt.setString(2, candidate);
+                stmt.executeUpdate();
+            }
+            // Skip students who filled their schedule or enrolled since joining
+            try (PreparedStatement stmt = connection.prepareStatement(eligibleSql)) {
+                stmt.setString(1, enrollmentCode);
+                stmt.setString(2, candidate);
+                ResultSet rs = stmt.executeQuery();
+                if (rs.next() && (rs.getInt(1) >= 5 || rs.getInt(2) > 0)) {
+                    continue;
+                }
+            }
+            try (PreparedStatement stmt = connection.prepareStatement(enrollSql)) {
+                stmt.setString(1, candidate);
+                stmt.setString(2, enrollmentCode);
+                stmt.setString(3, enrollmentCode);
+                stmt.executeUpdate();
+            }
+            return candidate;
+        }
+        return null;
+    }
+
+    // Locks the offering row until commit. Bumping the version also makes any
+    // optimistic add or drop that read the offering before this one retry.
+    void lockOffering(String enrollmentCode) throws SQLException {
+        String sql = "UPDATE Course_Offering SET version = version + 1 WHERE enrollment_code = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, enrollmentCode);
+            stmt.executeUpdate();
+        }
+    }
+
+    // Locks the student row until commit; false if there is no such student
+    private boolean lockStudent(String permNumber) throws SQLException {
+        String sql = "SELECT 1 FROM Student WHERE perm_number = ? FOR UPDATE";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, permNumber);
+            return stmt.executeQuery().next();
+        }
+    }
+
+    // Optimistic concurrency for adds and drops (see OfferingContention)
+
+    private interface GuardedWork<T> {
+        T run(OfferingGuard guard) throws SQLException;
+    }
+
+    // Thrown when a guarded write finds the offering (or the student's rows)
+    // changed since its checks
+    private static class LostRace extends SQLException {
+        private static final long serialVersionUID = 1L;
+
+        LostRace(String enrollmentCode) {
+            super("Enrollment in " + enrollmentCode + " changed concurrently");
+        }
+    }
+
+    // Runs work in a transaction, retrying with jittered backoff while it loses
+    // races; after the optimistic attempts, one last attempt locks the offering
+    private <T> T guarded(String enrollmentCode, GuardedWork<T> work) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            OfferingGuard guard = new OfferingGuard(enrollmentCode, attempt);
+            try {
+                T result = transactions.execute(conn -> work.run(guard));
+                contention.recordCommitted(enrollmentCode, attempt);
+                return result;
+            } catch (LostRace e) {
+                contention.recordConflict(enrollmentCode);
+                if (guard.mode != Mode.OPTIMISTIC) {
+                    // Lost even with the offering locked: the student's own rows changed
+                    throw e;
+                }
+                contention.backoff(attempt);
+            }
+        }
+    }
+
+    private class OfferingGuard {
+        private final String enrollmentCode;
+        private final Mode mode;
+        private long version = -1;
+
+        OfferingGuard(String enrollmentCode, int attempt) {
+            this.enrollmentCode = enrollmentCode;
+            if (peers != ShardPeers.NONE || !contention.isOptimistic(attempt)) {
+                mode = Mode.LOCKED;
+            } else {
+                mode = Mode.OPTIMISTIC;
+            }
+        }
+
+        Connection connection() {
+            return connection;
+        }
+
+        // Call before reading anything the checks depend on
+        void begin() throws SQLException {
+            if (mode == Mode.LOCKED) {
+                lockOffering(enrollmentCode);
+            } else if (mode == Mode.OPTIMISTIC) {
+                String sql = "SELECT version FROM Course_Offering WHERE enrollment_code = ?";
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setString(1, enrollmentCode);
+                    ResultSet rs = stmt.executeQuery();
+                    version = rs.next() ? rs.getLong("version") : -1;
+                }
+            }
+        }
+
+        // Call right before writing; throws LostRace if the offering changed
+        // since begin. Holds the offering row until commit.
+        void claim() throws SQLException {
+            if (mode != Mode.OPTIMISTIC) {
+                return;
+            }
+            String sql = "UPDATE Course_Offering SET version = version + 1 WHERE enrollment_code = ? AND version = ?";
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setString(1, enrollmentCode);
+                stmt.setLong(2, version);
+                if (stmt.executeUpdate() == 0) {
+                    throw new LostRace(enrollmentCode);
+                }
+            }
+        }
+    }
+
+    private enum Mode { LOCKED, OPTIMISTIC }
+
+    // Students of this database currently enrolled in the offering
+    int countCurrentEnrollment(String enrollmentCode) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM Enrolls_in WHERE enrollment_code = ? AND status = 'Current'";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, enrollmentCode);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
     // Verify student PIN
     public boolean verifyPin(String permNumber, String pin) {
+        return FlightEvents.record("verifyPin", permNumber, null, () -> doVerifyPin(permNumber, pin));
+    }
+    
+    private boolean doVerifyPin(String permNumber, String pin) {
         String sql = "SELECT VerifyPin(?, ?) FROM DUAL";
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, permNumber);
@@ -210,34 +1130,58 @@ public class StudentTransactions {
     
     // Change student PIN
     public boolean changePin(String permNumber, String oldPin, String newPin) {
+        return FlightEvents.record("changePin", permNumber, null, () -> doChangePin(permNumber, oldPin, newPin));
+    }
+    
+    private boolean doChangePin(String permNumber, String oldPin, String newPin) {
         System.out.println("\n=== Changing PIN for Student " + permNumber + " ===");
-        
+    
         // Validate new PIN format
         if (newPin == null || newPin.length() != 5 || !newPin.matches("\\d{5}")) {
              System.out.println("Error: New PIN must be a five-digit number.");
              return false;
         }
-        // Check if PIN is already in use
-        if (isPinInUse(newPin, permNumber)) {
-            System.out.println("Error: PIN " + newPin + " is already in use by another student.");
-            return false;
-        }
-        
-        String anonymousBlockSql = "BEGIN ? := SetPin(?, ?, ?); END;"; 
-        try (CallableStatement cstmt = connection.prepareCall(anonymousBlockSql)) {
-            cstmt.registerOutParameter(1, Types.INTEGER); 
-            cstmt.setString(2, permNumber);
-            cstmt.setString(3, oldPin);
-            cstmt.setString(4, newPin);
-            cstmt.execute();
-            int successFlag = cstmt.getInt(1); 
-            if (successFlag == 1) {
-                System.out.println("PIN changed successfully for student " + permNumber);
-                return true;
-            } else {
-                System.out.println("PIN change failed. This could be due to an incorrect old PIN or the student perm number not being found.");
-                return false;
+        // isPinInUse gives the usual message; two changes to the same PIN
+        // can both pass it, so the unique key on PIN_HASH (V6) decides.
+        // Across shards only the check applies.
+        try {
+            boolean changed = transactions.execute(conn -> {
+                // Check if PIN is already in use
+                if (isPinInUse(newPin, permNumber)) {
+                    System.out.println("Error: PIN " + newPin + " is already in use by another student.");
+                    return false;
+                }
+            
+                String anonymousBlockSql = "BEGIN ? := SetPin(?, ?, ?); END;"; 
+                try (CallableStatement cstmt = conn.prepareCall(anonymousBlockSql)) {
+                    cstmt.registerOutParameter(1, Types.INTEGER); 
+                    cstmt.setString(2, permNumber);
+                    cstmt.setString(3, oldPin);
+                    cstmt.setString(4, newPin);
+                    try {
+                        cstmt.execute();
+                    } catch (SQLException e) {
+                        if (e.getErrorCode() != ORA_UNIQUE_VIOLATION) {
+                            throw e;
+                        }
+                        System.out.println("Error: PIN " + newPin + " is already in use by another student.");
+                        return false;
+                    }
+                    int successFlag = cstmt.getInt(1); 
+                    if (successFlag == 1) {
+                        System.out.println("PIN changed successfully for student " + permNumber);
+                        return true;
+                    } else {
+                        System.out.println("PIN change failed. This could be due to an incorrect old PIN or the student perm number not being found.");
+                        return false;
+                    }
+                }
+            });
+            if (changed) {
+                // The event never carries the PIN itself
+                events.publish(ChangeEventStream.Type.PIN_CHANGE, permNumber, null, null);
             }
+            return changed;
         } catch (SQLException e) {
             System.err.println("Database error during PIN change: " + e.getMessage());
             return false;
@@ -246,22 +1190,26 @@ public class StudentTransactions {
     
     // List grades from a specific previous quarter
     public void listPreviousQuarterGrades(String permNumber, String quarter, int year) {
+        FlightEvents.record("listPreviousQuarterGrades", permNumber, null, () -> doListPreviousQuarterGrades(permNumber, quarter, year));
+    }
+    
+    private void doListPreviousQuarterGrades(String permNumber, String quarter, int year) {
         System.out.println("\n=== Grades for Student " + permNumber + " - " + quarter + " " + year + " ===");
-        
+    
         String sql = "SELECT co.course_number, c.title, e.grade, e.grade_points, co.quarter, co.year " +
-                    "FROM Enrolls_in e " +
+                    "FROM " + history + " e " +
                     "JOIN Course_Offering co ON e.enrollment_code = co.enrollment_code " +
                     "JOIN Course c ON co.course_number = c.course_number " +
                     "WHERE e.perm_number = ? AND e.status = 'Past' AND e.grade IS NOT NULL " +
                     "AND co.year = ? AND co.quarter = ? " +
                     "ORDER BY co.course_number";
-        
+    
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, permNumber);
             stmt.setInt(2, year);
             stmt.setString(3, quarter);
             ResultSet rs = stmt.executeQuery();
-            
+        
             boolean foundGrades = false;
             while (rs.next()) {
                 System.out.printf("%-8s %-20s Grade: %-3s (%.1f points) %s %d%n", 
@@ -273,7 +1221,7 @@ public class StudentTransactions {
                     rs.getInt("year"));
                 foundGrades = true;
             }
-            
+        
             if (!foundGrades) {
                 System.out.println("No grades found for " + quarter + " " + year + ".");
             }
@@ -284,85 +1232,163 @@ public class StudentTransactions {
     
     // List all students enrolled in a course
     public void listStudentsInCourse(String enrollmentCode) {
-        System.out.println("\n=== Students in Course " + enrollmentCode + " ===");
-        
-        String courseInfoSql = "SELECT co.course_number, c.title, co.quarter, co.year, co.enroll_limit, " +
-                              "(SELECT COUNT(*) FROM Enrolls_in ei WHERE ei.enrollment_code = co.enrollment_code AND ei.status = 'Current') as enrolled_count " +
-                              "FROM Course_Offering co " +
-                              "JOIN Course c ON co.course_number = c.course_number " +
-                              "WHERE co.enrollment_code = ?";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(courseInfoSql)) {
-            stmt.setString(1, enrollmentCode);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                int enrolledCount = rs.getInt("enrolled_count");
-                int enrollLimit = rs.getInt("enroll_limit");
-                System.out.printf("Course: %s - %s (%s %d) [%d / %d]%n%n",
-                    rs.getString("course_number"),
-                    rs.getString("title"), 
-                    rs.getString("quarter"),
-                    rs.getInt("year"),
-                    enrolledCount,
-                    enrollLimit);
-            } else {
-                System.out.println("Course offering " + enrollmentCode + " not found.");
-                return;
-            }
+        FlightEvents.record("listStudentsInCourse", null, enrollmentCode, () -> doListStudentsInCourse(enrollmentCode));
+    }
+    
+    private void doListStudentsInCourse(String enrollmentCode) {
+        listStudentsInCourses(List.of(enrollmentCode));
+    }
+    
+    // List the students of several offerings with a single roster query
+    @ReplicaRead
+    public void listStudentsInCourses(List<String> enrollmentCodes) {
+        FlightEvents.record("listStudentsInCourses", null, null, () -> doListStudentsInCourses(enrollmentCodes));
+    }
+    
+    private void doListStudentsInCourses(List<String> enrollmentCodes) {
+        ClassRoster source = readSide("listStudentsInCourses", enrollmentCodes.toArray(new String[0])).roster;
+        Set<String> found = new HashSet<>();
+        try {
+            source.stream(enrollmentCodes, row -> {
+                if (found.add(row.enrollmentCode)) {
+                    printRosterHeader(row);
+                }
+                printRosterRow(row);
+            });
         } catch (SQLException e) {
-            System.err.println("Error getting course info: " + e.getMessage());
-            return;
+            System.err.println("Error listing students: " + e.getMessage());
         }
-        
-        String studentsSql = "SELECT s.perm_number, s.name, s.major_name, s.department_name " +
-                           "FROM Student s " +
-                           "JOIN Enrolls_in e ON s.perm_number = e.perm_number " +
-                           "WHERE e.enrollment_code = ? AND e.status = 'Current' " +
-                           "ORDER BY s.name";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(studentsSql)) {
-            stmt.setString(1, enrollmentCode);
-            ResultSet rs = stmt.executeQuery();
-            boolean foundStudents = false;
-            System.out.println("Enrolled Students:");
-            System.out.println("Perm#  Name                      Major                Department");
-            System.out.println("-----  ------------------------  -------------------  ----------");
-            
-            while (rs.next()) {
-                System.out.printf("%-6s %-25s %-20s %s%n", 
-                    rs.getString("perm_number"),
-                    rs.getString("name"),
-                    rs.getString("major_name"),
-                    rs.getString("department_name"));
-                foundStudents = true;
+        for (String enrollmentCode : enrollmentCodes) {
+            if (!found.contains(enrollmentCode)) {
+                System.out.println("\nCourse offering " + enrollmentCode + " not found.");
             }
-            if (!foundStudents) {
-                System.out.println("No students currently enrolled.");
+        }
+    }
+    
+    // List one offering's students pageSize at a time; more is asked before
+    // every page after the first. Each page is a keyset query, so a large
+    // lecture is never read in one go.
+    @ReplicaRead
+    public void listStudentsInCoursePaged(String enrollmentCode, int pageSize, BooleanSupplier more) {
+        FlightEvents.record("listStudentsInCoursePaged", null, enrollmentCode, () -> doListStudentsInCoursePaged(enrollmentCode, pageSize, more));
+    }
+
+    private void doListStudentsInCoursePaged(String enrollmentCode, int pageSize, BooleanSupplier more) {
+        ClassRoster source = readSide("listStudentsInCoursePaged", enrollmentCode).roster;
+        String afterName = null;
+        String afterPerm = null;
+        try {
+            while (true) {
+                List<ClassRoster.Row> rows = source.page(enrollmentCode, afterName, afterPerm, pageSize);
+                if (afterPerm == null) {
+                    if (rows.isEmpty()) {
+                        System.out.println("\nCourse offering " + enrollmentCode + " not found.");
+                        return;
+                    }
+                    printRosterHeader(rows.get(0));
+                }
+                for (ClassRoster.Row row : rows) {
+                    printRosterRow(row);
+                }
+                ClassRoster.Row last = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+                if (rows.size() < pageSize || last.permNumber == null || !more.getAsBoolean()) {
+                    return;
+                }
+                afterName = last.name;
+                afterPerm = last.permNumber;
             }
         } catch (SQLException e) {
             System.err.println("Error listing students: " + e.getMessage());
         }
     }
+
+    private static void printRosterHeader(ClassRoster.Row row) {
+        System.out.println("\n=== Students in Course " + row.enrollmentCode + " ===");
+        System.out.printf("Course: %s - %s (%s %d) [%d / %d]%n%n",
+            row.courseNumber,
+            row.title,
+            row.quarter,
+            row.year,
+            row.enrolledCount,
+            row.enrollLimit);
+        System.out.println("Enrolled Students:");
+        System.out.println("Perm#  Name                      Major                Department");
+        System.out.println("-----  ------------------------  -------------------  ----------");
+        if (row.permNumber == null) {
+            System.out.println("No students currently enrolled.");
+        }
+    }
+
+    private static void printRosterRow(ClassRoster.Row row) {
+        if (row.permNumber != null) {
+            System.out.printf("%-6s %-25s %-20s %s%n", 
+                row.permNumber,
+                row.name,
+                row.majorName,
+                row.departmentName);
+        }
+    }
+    
+    // Export class lists for several offerings to a CSV file
+    public boolean exportClassLists(List<String> enrollmentCodes, String filename) {
+        return FlightEvents.record("exportClassLists", null, null, () -> doExportClassLists(enrollmentCodes, filename));
+    }
+    
+    private boolean doExportClassLists(List<String> enrollmentCodes, String filename) {
+        try (Writer out = new BufferedWriter(new FileWriter(filename))) {
+            int offerings = roster.export(enrollmentCodes, out);
+            System.out.println("Exported " + offerings + " class list(s) to " + filename);
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error exporting class lists: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error writing " + filename + ": " + e.getMessage());
+        }
+        return false;
+    }
     
     // Generate transcript for student (with PIN verification)
+    @ReplicaRead
     public void generateTranscript(String permNumber, String pin) {
+        FlightEvents.record("generateTranscript", permNumber, null, () -> doGenerateTranscript(permNumber, pin));
+    }
+    
+    private void doGenerateTranscript(String permNumber, String pin) {
         System.out.println("\n=== TRANSCRIPT for Student " + permNumber + " ===");
-        
+    
         if (!verifyPin(permNumber, pin)) {
             System.out.println("Error: Invalid PIN. Cannot generate transcript.");
             return;
         }
-        generateTranscriptInternal(permNumber);
+        readSide("generateTranscript", permNumber).writeTranscriptInternal(permNumber, System.out);
     }
     
     // Generate transcript for registrar (no PIN required)
+    @ReplicaRead
     public void generateTranscript(String permNumber) {
+        FlightEvents.record("generateTranscript", permNumber, null, () -> doGenerateTranscript(permNumber));
+    }
+    
+    private void doGenerateTranscript(String permNumber) {
         System.out.println("\n=== [REGISTRAR] TRANSCRIPT for Student " + permNumber + " ===");
-        generateTranscriptInternal(permNumber);
+        readSide("generateTranscript", permNumber).writeTranscriptInternal(permNumber, System.out);
     }
     
-    // Internal method for transcript generation
-    private void generateTranscriptInternal(String permNumber) {
+    // Registrar transcript written to out (batch mode); false if the student
+    // wasn't found or the transcript couldn't be read
+    @ReplicaRead
+    public boolean writeTranscript(String permNumber, PrintStream out) {
+        return FlightEvents.record("writeTranscript", permNumber, null, () -> doWriteTranscript(permNumber, out));
+    }
+    
+    private boolean doWriteTranscript(String permNumber, PrintStream out) {
+        out.println("=== [REGISTRAR] TRANSCRIPT for Student " + permNumber + " ===");
+        return readSide("writeTranscript", permNumber).writeTranscriptInternal(permNumber, out);
+    }
+    
+    // Writes the student's transcript to out; false if the student wasn't
+    // found or the transcript couldn't be read
+    private boolean writeTranscriptInternal(String permNumber, PrintStream out) {
         String studentInfoSql = "SELECT name, address, major_name, department_name " +
                             "FROM Student " +
                             "WHERE perm_number = ?";
@@ -371,22 +1397,22 @@ public class StudentTransactions {
             stmt.setString(1, permNumber);
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
-                System.out.println("Student: " + rs.getString("name"));
-                System.out.println("Perm #: " + permNumber);
-                System.out.println("Address: " + rs.getString("address"));
-                System.out.println("Major: " + rs.getString("major_name") + " (" + rs.getString("department_name") + ")");
-                System.out.println();
+                out.println("Student: " + rs.getString("name"));
+                out.println("Perm #: " + permNumber);
+                out.println("Address: " + rs.getString("address"));
+                out.println("Major: " + rs.getString("major_name") + " (" + rs.getString("department_name") + ")");
+                out.println();
             } else {
-                System.out.println("Student " + permNumber + " not found.");
-                return;
+                out.println("Student " + permNumber + " not found.");
+                return false;
             }
         } catch (SQLException e) {
             System.err.println("Error getting student info: " + e.getMessage());
-            return;
+            return false;
         }
         
         String transcriptSql = "SELECT co.course_number, c.title, e.grade, e.grade_points, co.quarter, co.year " +
-                            "FROM Enrolls_in e " +
+                            "FROM " + history + " e " +
                             "JOIN Course_Offering co ON e.enrollment_code = co.enrollment_code " +
                             "JOIN Course c ON co.course_number = c.course_number " +
                             "WHERE e.perm_number = ? AND e.status = 'Past' AND e.grade IS NOT NULL " +
@@ -401,57 +1427,65 @@ public class StudentTransactions {
             stmt.setString(1, permNumber);
             ResultSet rs = stmt.executeQuery();
             String currentTerm = "";
-            double totalGradePointsSum = 0;
-            int totalCoursesCount = 0;
             while (rs.next()) {
                 String term = rs.getString("quarter") + " " + rs.getInt("year");
                 if (!term.equals(currentTerm)) {
                     if (!currentTerm.isEmpty()) {
-                        System.out.println();
+                        out.println();
                     }
-                    System.out.println(term + ":");
+                    out.println(term + ":");
                     currentTerm = term;
                 }
-                System.out.printf("  %-8s %-20s %s (%.1f points)%n", 
+                out.printf("  %-8s %-20s %s (%.1f points)%n", 
                     rs.getString("course_number"),
                     rs.getString("title"),
                     rs.getString("grade"),
                     rs.getDouble("grade_points"));
-                
-                if (rs.getString("grade") != null && !rs.getString("grade").trim().isEmpty()) {
-                    totalGradePointsSum += rs.getDouble("grade_points");
-                    totalCoursesCount++;
-                }
             }
             
+            // Totals come from the maintained aggregate instead of this scan
+            double[] totals = aggregates.getGpaTotals(permNumber);
+            int totalCoursesCount = totals == null ? 0 : (int) totals[1];
             if (totalCoursesCount > 0) {
-                double gpa = totalGradePointsSum / totalCoursesCount;
-                System.out.println("\n" + repeatString("=", 50));
-                System.out.printf("Courses completed: %d%n", totalCoursesCount);
-                System.out.printf("Cumulative GPA: %.2f%n", gpa);
+                double gpa = totals[0] / totalCoursesCount;
+                out.println("\n" + repeatString("=", 50));
+                out.printf("Courses completed: %d%n", totalCoursesCount);
+                out.printf("Cumulative GPA: %.2f%n", gpa);
             } else {
-                System.out.println("\nNo completed courses with grades found for this student.");
+                out.println("\nNo completed courses with grades found for this student.");
             }
             
+            return true;
         } catch (SQLException e) {
             System.err.println("Error generating transcript: " + e.getMessage());
+            return false;
         }
     }
 
     // Enter grades for all students in a course
     public boolean enterGradesForCourse(String enrollmentCode, Map<String, String> studentGrades) {
+        return FlightEvents.record("enterGradesForCourse", null, enrollmentCode, () -> doEnterGradesForCourse(enrollmentCode, studentGrades));
+    }
+
+    private boolean doEnterGradesForCourse(String enrollmentCode, Map<String, String> studentGrades) {
+        Set<String> graded = postGrades(enrollmentCode, studentGrades);
+        return graded != null && !graded.isEmpty();
+    }
+
+    // Posts grades and returns the perm numbers that were graded, or null on error
+    Set<String> postGrades(String enrollmentCode, Map<String, String> studentGrades) {
     System.out.println("\n=== Entering Grades for Course " + enrollmentCode + " ===");
     
     if (!courseOfferingExists(enrollmentCode)) {
         System.out.println("Error: Course offering " + enrollmentCode + " not found");
-        return false;
+        return null;
     }
     
     String sql = "UPDATE Enrolls_in " +
                 "SET grade = ?, grade_points = ?, status = 'Past' " +
                 "WHERE perm_number = ? AND enrollment_code = ? AND status = 'Current'";
     
-    boolean anySuccess = false;
+    Set<String> graded = new HashSet<>();
     try (PreparedStatement stmt = connection.prepareStatement(sql)) {
         for (Map.Entry<String, String> entry : studentGrades.entrySet()) {
             String permNumber = entry.getKey();
@@ -465,38 +1499,98 @@ public class StudentTransactions {
             
             double gradePoints = calculateGradePoints(grade);
             
-            // Check if student is currently enrolled
-            String checkEnrollSql = "SELECT 1 FROM Enrolls_in WHERE perm_number = ? AND enrollment_code = ? AND status = 'Current'";
-            boolean isEnrolledCurrently = false;
-            try(PreparedStatement checkStmt = connection.prepareStatement(checkEnrollSql)){
-                checkStmt.setString(1, permNumber);
-                checkStmt.setString(2, enrollmentCode);
-                isEnrolledCurrently = checkStmt.executeQuery().next();
-            }
+            // Each grade and its aggregate update commit together
+            boolean entered = transactions.execute(conn -> {
+                // Check if student is currently enrolled
+                String checkEnrollSql = "SELECT 1 FROM Enrolls_in WHERE perm_number = ? AND enrollment_code = ? AND status = 'Current'";
+                boolean isEnrolledCurrently = false;
+                try(PreparedStatement checkStmt = conn.prepareStatement(checkEnrollSql)){
+                    checkStmt.setString(1, permNumber);
+                    checkStmt.setString(2, enrollmentCode);
+                    isEnrolledCurrently = checkStmt.executeQuery().next();
+                }
 
-            if(!isEnrolledCurrently){
-                System.out.println("Student " + permNumber + " is not currently enrolled in " + enrollmentCode + " or already graded. Skipping.");
-                continue;
-            }
-            
-            stmt.setString(1, grade);
-            stmt.setDouble(2, gradePoints);
-            stmt.setString(3, permNumber);
-            stmt.setString(4, enrollmentCode);
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("Grade " + grade + " entered for student " + permNumber);
-                anySuccess = true;
-            } else {
-                System.out.println("Failed to enter grade for student " + permNumber + ".");
+                if(!isEnrolledCurrently){
+                    System.out.println("Student " + permNumber + " is not currently enrolled in " + enrollmentCode + " or already graded. Skipping.");
+                    return false;
+                }
+                
+                if (journal != null) {
+                    if (appendToJournal(EnrollmentJournal.GRADE, enrollmentCode, permNumber, grade)) {
+                        System.out.println("Grade " + grade + " accepted for student " + permNumber);
+                        return true;
+                    }
+                    return false;
+                }
+                
+                stmt.setString(1, grade);
+                stmt.setDouble(2, gradePoints);
+                stmt.setString(3, permNumber);
+                stmt.setString(4, enrollmentCode);
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected > 0) {
+                    aggregates.recordGrade(permNumber, enrollmentCode, grade, gradePoints);
+                    System.out.println("Grade " + grade + " entered for student " + permNumber);
+                    return true;
+                } else {
+                    System.out.println("Failed to enter grade for student " + permNumber + ".");
+                    return false;
+                }
+            });
+            if (entered) {
+                graded.add(permNumber);
+                afterCommit(() -> {
+                    replicaRouting.recordWrite(permNumber, enrollmentCode);
+                    if (journal == null) {
+                        // Journaled grades are published by applyJournalBatch
+                        passedCourses.invalidate(permNumber);
+                        events.publish(ChangeEventStream.Type.GRADE, permNumber, enrollmentCode, grade);
+                    }
+                });
             }
         }
-        return anySuccess;
+        return graded;
     } catch (SQLException e) {
         System.err.println("Error entering grades: " + e.getMessage());
-        return false;
+        return null;
     }
     }   
+    // Posts a whole offering's grades under one commit (bulk jobs). Events
+    // and replica routing wait for that commit.
+    Set<String> postGradesInOneTransaction(String enrollmentCode, Map<String, String> studentGrades) {
+        List<Runnable> committed = new ArrayList<>();
+        deferred = committed;
+        try {
+            Set<String> graded = transactions.execute(conn -> {
+                committed.clear();
+                return postGrades(enrollmentCode, studentGrades);
+            });
+            deferred = null;
+            committed.forEach(Runnable::run);
+            return graded;
+        } catch (SQLException e) {
+            System.err.println("Error committing grades: " + e.getMessage());
+            return null;
+        } finally {
+            deferred = null;
+            // Entries loaded before the commit (or rollback) may be stale
+            for (String permNumber : studentGrades.keySet()) {
+                passedCourses.invalidate(permNumber);
+            }
+        }
+    }
+    
+    // Runs action now, or after the commit of the enclosing transaction if
+    // the caller opened one (see deferred), so a change that is rolled back
+    // is never published
+    private void afterCommit(Runnable action) {
+        if (deferred != null) {
+            deferred.add(action);
+        } else {
+            action.run();
+        }
+    }
+
     private boolean isValidGrade(String grade) {
     if (grade == null || grade.trim().isEmpty()) {
         return false;
@@ -512,62 +1606,88 @@ public class StudentTransactions {
 
     // Check if student meets graduation requirements
     public void checkGraduationRequirements(String permNumber) {
+        FlightEvents.record("checkGraduationRequirements", permNumber, null, () -> doCheckGraduationRequirements(permNumber));
+    }
+
+    private void doCheckGraduationRequirements(String permNumber) {
         System.out.println("\n=== Graduation Requirements Check for Student " + permNumber + " ===");
-        
-        String majorName = getStudentMajor(permNumber);
-        if (majorName == null) {
+    
+        GraduationAudit audit = auditGraduationRequirements(permNumber);
+        if (audit == null) {
             System.out.println("Student " + permNumber + " not found.");
             return;
         }
-        MajorRequirements requirements = getMajorRequirements(majorName);
-        if (requirements.requiredCourses.isEmpty() && requirements.electiveCourses.isEmpty() && requirements.electivesRequired == 0) {
-            System.out.println("No requirements defined for major: " + majorName);
-            return;
-        }
-        Set<String> completedCourses = getCompletedCourses(permNumber);
-        List<String> missingRequired = new ArrayList<>();
-        for (String course : requirements.requiredCourses) {
-            if (!completedCourses.contains(course)) {
-                missingRequired.add(course);
-            }
+        audit.print();
+    }
+
+    // Audit a student against their major, or null if the student isn't found
+    @ReplicaRead
+    public GraduationAudit auditGraduationRequirements(String permNumber) {
+        return FlightEvents.record("auditGraduationRequirements", permNumber, null, () -> doAuditGraduationRequirements(permNumber));
+    }
+
+    private GraduationAudit doAuditGraduationRequirements(String permNumber) {
+        StudentTransactions source = readSide("auditGraduationRequirements", permNumber);
+        if (source != this) {
+            return source.auditGraduationRequirements(permNumber);
         }
-        int completedElectivesCount = 0;
-        for (String course : requirements.electiveCourses) {
-            if (completedCourses.contains(course)) {
-                completedElectivesCount++;
-            }
+        String majorName = getStudentMajor(permNumber);
+        if (majorName == null) {
+            return null;
         }
-        if (missingRequired.isEmpty() && completedElectivesCount >= requirements.electivesRequired) {
-            System.out.println("YES - Student meets all graduation requirements!");
-        } else {
-            System.out.println("  Requirements not met:");
-            if (!missingRequired.isEmpty()) {
-                System.out.println("  Missing required courses: " + String.join(", ", missingRequired));
-            }
-            if (completedElectivesCount < requirements.electivesRequired) {
-                System.out.println("  Need " + (requirements.electivesRequired - completedElectivesCount) + " more elective courses from the elective list.");
-                List<String> availableElectivesNotTaken = new ArrayList<>();
-                for(String elec : requirements.electiveCourses){
-                    if(!completedCourses.contains(elec)){
-                        availableElectivesNotTaken.add(elec);
-                    }
-                }
-                if(!availableElectivesNotTaken.isEmpty()){
-                     System.out.println("  Eligible electives not yet completed: " + String.join(", ", availableElectivesNotTaken));
-                } else {
-                     System.out.println("  No more eligible electives listed for the major that haven't been taken.");
-                }
+        return getRequirementProfile(majorName).audit(permNumber, getCompletedCourses(permNumber));
+    }
+
+    // Audit every student of a major (every major if null) and write one line
+    // per student to filename, then print counts per major
+    @ReplicaRead
+    public boolean auditMajor(String majorName, String filename) {
+        return FlightEvents.record("auditMajor", null, null, () -> doAuditMajor(majorName, filename));
+    }
+
+    private boolean doAuditMajor(String majorName, String filename) {
+        System.out.println("\n=== Degree Audit for " + (majorName == null ? "All Majors" : majorName) + " ===");
+        BulkDegreeAudit audit = new BulkDegreeAudit(Runtime.getRuntime().availableProcessors());
+        try (Writer out = new BufferedWriter(new FileWriter(filename))) {
+            BulkDegreeAudit.writeHeader(out);
+            for (StudentTransactions source : auditSources()) {
+                audit.run(source.readSide("auditMajor").connection, majorName, out);
             }
+        } catch (SQLException e) {
+            System.err.println("Error auditing students: " + e.getMessage());
+            return false;
+        } catch (IOException e) {
+            System.err.println("Error writing " + filename + ": " + e.getMessage());
+            return false;
         }
+        audit.printSummary();
+        System.out.println("Per-student results written to " + filename);
+        return true;
+    }
+
+    // Databases holding student data
+    List<StudentTransactions> auditSources() {
+        return List.of(this);
     }
 
     // Generate grade mailer for all students in a quarter
+    @ReplicaRead
     public void generateGradeMailer(String quarter, int year) {
+        FlightEvents.record("generateGradeMailer", null, null, () -> doGenerateGradeMailer(quarter, year));
+    }
+
+    private void doGenerateGradeMailer(String quarter, int year) {
         System.out.println("\n=== Grade Mailer for " + quarter + " " + year + " ===");
-        
+        if (!readSide("generateGradeMailer").writeGradeMailer(quarter, year, System.out)) {
+            System.out.println("No grades found to mail for " + quarter + " " + year + ".");
+        }
+    }
+
+    // Writes one letter per student graded in the quarter; false if there were none
+    boolean writeGradeMailer(String quarter, int year, PrintStream out) {
         String sql = "SELECT s.perm_number, s.name, s.address, co.course_number, c.title, e.grade " +
                     "FROM Student s " +
-                    "JOIN Enrolls_in e ON s.perm_number = e.perm_number " +
+                    "JOIN " + history + " e ON s.perm_number = e.perm_number " +
                     "JOIN Course_Offering co ON e.enrollment_code = co.enrollment_code " +
                     "JOIN Course c ON co.course_number = c.course_number " +
                     "WHERE co.quarter = ? AND co.year = ? AND e.status = 'Past' AND e.grade IS NOT NULL " +
@@ -587,8 +1707,8 @@ public class StudentTransactions {
                 if (!permNumber.equals(currentStudentPerm)) {
                     if (!currentStudentPerm.isEmpty()) {
                         mailerContent.append("\nSincerely,\nThe Registrar\n");
-                        System.out.println(mailerContent.toString());
-                        System.out.println(repeatString("=", 50));
+                        out.println(mailerContent.toString());
+                        out.println(repeatString("=", 50));
                     }
                     
                     currentStudentPerm = permNumber;
@@ -607,22 +1727,26 @@ public class StudentTransactions {
 
             if (!currentStudentPerm.isEmpty()) {
                 mailerContent.append("\nSincerely,\nThe Registrar\n");
-                System.out.println(mailerContent.toString());
-                 System.out.println(repeatString("=", 50));
-            }
-            if (!foundAnyGrades) {
-                System.out.println("No grades found to mail for " + quarter + " " + year + ".");
+                out.println(mailerContent.toString());
+                out.println(repeatString("=", 50));
             }
+            return foundAnyGrades;
             
         } catch (SQLException e) {
             System.err.println("Error generating grade mailer: " + e.getMessage());
+            return false;
         }
     }
     
     // Helper Methods
     
-    // Check if course has space and is offered in current quarter (Spring 2025)
+    // Check if course has space and is offered in the current quarter
     private boolean courseHasSpaceAndIsCurrent(String enrollmentCode) {
+        return courseHasSpaceAndIsCurrent(enrollmentCode, 0);
+    }
+
+    // pendingSeats: seats taken by adds not in the database yet
+    private boolean courseHasSpaceAndIsCurrent(String enrollmentCode, int pendingSeats) {
         String sql = "SELECT co.enroll_limit, co.year, co.quarter, co.course_number, " +
                     "(SELECT COUNT(*) FROM Enrolls_in ei WHERE ei.enrollment_code = co.enrollment_code AND ei.status = 'Current') as current_enrollment " +
                     "FROM Course_Offering co " +
@@ -633,11 +1757,11 @@ public class StudentTransactions {
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
                 int enrollLimit = rs.getInt("enroll_limit");
-                int currentEnrollment = rs.getInt("current_enrollment");
+                int currentEnrollment = rs.getInt("current_enrollment") + peers.enrolledElsewhere(enrollmentCode) + pendingSeats;
                 int year = rs.getInt("year");
                 String quarter = rs.getString("quarter");
-                if (year != 2025 || !quarter.equals("Spring")) {
-                    System.out.println("  Error: Enrollment only allowed for current quarter (Spring 2025). This offering is for " + quarter + " " + year + ".");
+                if (!currentTerm.matches(quarter, year)) {
+                    System.out.println("  Error: Enrollment only allowed for current quarter (" + currentTerm + "). This offering is for " + quarter + " " + year + ".");
                     return false;
                 }
                 
@@ -656,54 +1780,62 @@ public class StudentTransactions {
         }
     }
 
-    // Check if student has completed all prerequisites
+    // Check if student has completed all prerequisites. Prerequisites come
+    // from the cached catalog and passed courses from passedCourses, so this
+    // only queries the database for offerings newer than the catalog.
     private boolean hasPrerequisites(String permNumber, String enrollmentCodeOffering) {
-        String courseNumberToEnrollSql = "SELECT course_number FROM Course_Offering WHERE enrollment_code = ?";
-        String courseNumberToEnroll = null;
-        
-        try (PreparedStatement stmt = connection.prepareStatement(courseNumberToEnrollSql)) {
-            stmt.setString(1, enrollmentCodeOffering);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                courseNumberToEnroll = rs.getString("course_number");
-            } else {
+        PlanningData planning = getPlanningData();
+        String courseNumberToEnroll = planning == null ? null : planning.catalog.courseOf(enrollmentCodeOffering);
+        List<String> prerequisites;
+        try {
+            prerequisites = courseNumberToEnroll != null
+                ? planning.catalog.prerequisitesOf(courseNumberToEnroll)
+                : loadPrerequisites(enrollmentCodeOffering);
+            if (prerequisites == null) {
                 System.out.println("  Error: Course offering " + enrollmentCodeOffering + " not found for prerequisite check.");
                 return false;
             }
         } catch (SQLException e) {
-            System.err.println("Error getting course number for prerequisite check: " + e.getMessage());
+            System.err.println("Error checking prerequisites: " + e.getMessage());
             return false;
         }
-        
+        if (prerequisites.isEmpty()) {
+            return true;
+        }
+
+        Set<String> passed = getCompletedCourses(permNumber);
+        for (String prereqCourseNumber : prerequisites) {
+            if (!passed.contains(prereqCourseNumber)) {
+                System.out.println("  Error: Missing prerequisite " + prereqCourseNumber + " (must be completed with C or better).");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Prerequisites of the offering's course, or null if the offering doesn't exist
+    private List<String> loadPrerequisites(String enrollmentCode) throws SQLException {
+        String courseSql = "SELECT course_number FROM Course_Offering WHERE enrollment_code = ?";
+        String courseNumber;
+        try (PreparedStatement stmt = connection.prepareStatement(courseSql)) {
+            stmt.setString(1, enrollmentCode);
+            ResultSet rs = stmt.executeQuery();
+            if (!rs.next()) {
+                return null;
+            }
+            courseNumber = rs.getString("course_number");
+        }
+
+        List<String> prerequisites = new ArrayList<>();
         String prereqSql = "SELECT prerequisite_course_number FROM Prerequisite WHERE course_number = ?";
         try (PreparedStatement stmt = connection.prepareStatement(prereqSql)) {
-            stmt.setString(1, courseNumberToEnroll);
-            ResultSet rsPrereqs = stmt.executeQuery();
-            
-            while (rsPrereqs.next()) {
-                String prereqCourseNumber = rsPrereqs.getString("prerequisite_course_number");
-                
-                // Check for passing grade (C or better)
-                String completedSql = "SELECT 1 FROM Enrolls_in e " +
-                                     "JOIN Course_Offering co ON e.enrollment_code = co.enrollment_code " +
-                                     "WHERE e.perm_number = ? AND co.course_number = ? " +
-                                     "AND e.status = 'Past' AND e.grade IS NOT NULL " +
-                                     "AND e.grade IN ('A+', 'A', 'A-', 'B+', 'B', 'B-', 'C+', 'C')";
-                
-                try (PreparedStatement checkStmt = connection.prepareStatement(completedSql)) {
-                    checkStmt.setString(1, permNumber);
-                    checkStmt.setString(2, prereqCourseNumber);
-                    if (!checkStmt.executeQuery().next()) {
-                        System.out.println("  Error: Missing prerequisite " + prereqCourseNumber + " (must be completed with C or better).");
-                        return false;
-                    }
-                }
+            stmt.setString(1, courseNumber);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                prerequisites.add(rs.getString("prerequisite_course_number"));
             }
-            return true;
-        } catch (SQLException e) {
-            System.err.println("Error checking prerequisites: " + e.getMessage());
-            return false;
         }
+        return prerequisites;
     }
     
     private boolean studentExists(String permNumber) {
@@ -764,7 +1896,7 @@ public class StudentTransactions {
     }
     
     // Calculate grade points based on letter grade
-    private double calculateGradePoints(String grade) {
+    static double calculateGradePoints(String grade) {
         if (grade == null) return 0.0;
         return switch (grade.toUpperCase()) {
             case "A+", "A" -> 4.0;
@@ -784,166 +1916,517 @@ public class StudentTransactions {
     }
 
     private boolean isPinInUse(String pin, String excludePermNumber) {
+        try {
+            return isPinInUseLocally(pin, excludePermNumber) || peers.pinInUseElsewhere(pin, excludePermNumber);
+        } catch (SQLException e) {
+            System.err.println("Error checking PIN uniqueness: " + e.getMessage());
+            return true;
+        }
+    }
+
+    boolean isPinInUseLocally(String pin, String excludePermNumber) throws SQLException {
         String sql = "SELECT 1 FROM Student WHERE PIN_HASH = ? AND perm_number != ?";
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, "hash_of_" + pin);
             stmt.setString(2, excludePermNumber);
             return stmt.executeQuery().next();
+        }
+    }
+
+    private String repeatString(String str, int count) {
+        return str.repeat(Math.max(0, count));
+    }
+
+    public void close() {
+        if (replica != null) {
+            replica.close();
+        }
+        try {
+            if (connection != null && !connection.isClosed()) {
+                connection.close();
+                System.out.println("Database connection closed");
+            }
         } catch (SQLException e) {
-            System.err.println("Error checking PIN uniqueness: " + e.getMessage());
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+    }
+
+    public String getStudentNameForInterface(String permNumber) {
+        return FlightEvents.record("getStudentNameForInterface", permNumber, null, () -> doGetStudentNameForInterface(permNumber));
+    }
+
+    private String doGetStudentNameForInterface(String permNumber) {
+        String sql = "SELECT name FROM Student WHERE perm_number = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, permNumber);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                return rs.getString("name");
+            }
+        } catch (SQLException e) {
+             System.err.println("Error fetching student name: " + e.getMessage());
+        }
+        return "Student #" + permNumber;
+    }
+
+    // Generate optimal graduation plan for student
+    @ReplicaRead
+    public void makeGraduationPlan(String permNumber) {
+        FlightEvents.record("makeGraduationPlan", permNumber, null, () -> doMakeGraduationPlan(permNumber));
+    }
+
+    private void doMakeGraduationPlan(String permNumber) {
+        makeGraduationPlan(permNumber, new PlanSession(permNumber));
+    }
+
+    // As above, remembering the plan in session: the next call with the same
+    // session skips the major lookup and, if the student's courses changed
+    // in between, repairs the plan from the first quarter the change affects
+    @ReplicaRead
+    public void makeGraduationPlan(String permNumber, PlanSession session) {
+        FlightEvents.record("makeGraduationPlan", permNumber, null, () -> doMakeGraduationPlan(permNumber, session));
+    }
+
+    private void doMakeGraduationPlan(String permNumber, PlanSession session) {
+        StudentTransactions source = readSide("makeGraduationPlan", permNumber);
+        if (source != this) {
+            source.makeGraduationPlan(permNumber, session);
+            return;
+        }
+        System.out.println("\n=== GRADUATION PLAN for Student " + permNumber + " ===");
+        if (!session.permNumber.equals(permNumber)) {
+            session = new PlanSession(permNumber);
+        }
+
+        String majorName = session.majorName != null ? session.majorName : getStudentMajor(permNumber);
+        if (majorName == null) {
+            System.out.println("Student " + permNumber + " not found or has no major.");
+            return;
+        }
+
+        Set<String> completedCourses = getCompletedCourses(permNumber);
+        Set<String> currentCourses = getCurrentlyEnrolledCourses(permNumber);
+        PlanningData planning = getPlanningData();
+        RequirementProfile requirements = planning == null
+            ? RequirementProfile.empty(majorName)
+            : planning.profiles.getOrDefault(majorName, RequirementProfile.empty(majorName));
+
+        if (requirements.isEmpty()) {
+            System.out.println("No specific course requirements found for major: " + majorName + ". Cannot generate plan.");
+            return;
+        }
+
+        GraduationPlanner.Plan plan = plans.plan(new GraduationPlanner(planning.catalog), planning.version,
+            requirements, completedCourses, currentCourses, currentTerm.next(), session.plan, session.planningVersion);
+        session.majorName = majorName;
+        session.plan = plan;
+        session.planningVersion = planning.version;
+
+        System.out.println("Major: " + majorName);
+        System.out.println("Completed courses (passed with C or better): " + completedCourses.size());
+        System.out.println("Currently enrolled (" + currentTerm + "): " + currentCourses.size());
+        System.out.println("Remaining required courses for major: " + plan.requiredStillNeeded.size());
+        System.out.println("Remaining electives needed for major: " + plan.electivesStillNeeded);
+        System.out.println();
+
+        if (plan.isComplete()) {
+            System.out.println("CONGRATULATIONS! You have completed all graduation requirements!");
+            return;
+        }
+        plan.printWarnings();
+
+        if (plan.quarters.isEmpty()) {
+            System.out.println("Unable to generate a full graduation plan with the current course offerings and prerequisites. Please consult with an advisor.");
+            return;
+        }
+
+        System.out.println("EARLIEST GRADUATION PLAN:");
+        System.out.println("Estimated graduation: " + plan.getGraduationTerm());
+        System.out.println();
+
+        for (GraduationPlanner.Quarter quarter : plan.quarters) {
+            System.out.println(quarter.getDisplayName() + ":");
+            for (String course : quarter.courses) {
+                String type = plan.requiredStillNeeded.contains(course) ? "(Required)" : "(Elective)";
+                System.out.println("  • " + course + " " + type);
+            }
+            System.out.println();
+        }
+    }
+
+    // What-if: audit and plan the student against each of majorNames (every
+    // major if empty), in parallel from the cached requirement profiles and
+    // catalog. Results keep the order of majorNames; null if the student isn't
+    // found.
+    @ReplicaRead
+    public List<MajorComparison> compareMajors(String permNumber, List<String> majorNames) {
+        return FlightEvents.record("compareMajors", permNumber, null, () -> doCompareMajors(permNumber, majorNames));
+    }
+
+    private List<MajorComparison> doCompareMajors(String permNumber, List<String> majorNames) {
+        StudentTransactions source = readSide("compareMajors", permNumber);
+        if (source != this) {
+            return source.compareMajors(permNumber, majorNames);
+        }
+        if (!studentExists(permNumber)) {
+            return null;
+        }
+        PlanningData planning = getPlanningData();
+        if (planning == null) {
+            return new ArrayList<>();
+        }
+        Set<String> completedCourses = getCompletedCourses(permNumber);
+        Set<String> currentCourses = getCurrentlyEnrolledCourses(permNumber);
+        List<String> majors = majorNames;
+        if (majors.isEmpty()) {
+            majors = new ArrayList<>(planning.profiles.keySet());
+            Collections.sort(majors);
+        }
+        GraduationPlanner planner = new GraduationPlanner(planning.catalog);
+        Term firstTerm = currentTerm.next();
+        return majors.parallelStream()
+            .map(major -> {
+                RequirementProfile profile = planning.profiles.get(major);
+                if (profile == null) {
+                    return new MajorComparison(major, null, null);
+                }
+                return new MajorComparison(major, profile.audit(permNumber, completedCourses),
+                    plans.plan(planner, planning.version, profile, completedCourses, currentCourses, firstTerm));
+            })
+            .collect(Collectors.toList());
+    }
+
+    public void printMajorComparison(String permNumber, List<String> majorNames) {
+        FlightEvents.record("printMajorComparison", permNumber, null, () -> doPrintMajorComparison(permNumber, majorNames));
+    }
+
+    private void doPrintMajorComparison(String permNumber, List<String> majorNames) {
+        System.out.println("\n=== What-If Major Comparison for Student " + permNumber + " ===");
+        List<MajorComparison> comparisons = compareMajors(permNumber, majorNames);
+        if (comparisons == null) {
+            System.out.println("Student " + permNumber + " not found.");
+            return;
+        }
+        System.out.printf("%-25s %-16s %13s %14s  %s%n", "Major", "Status", "Required left", "Electives left", "Est. graduation");
+        for (MajorComparison comparison : comparisons) {
+            if (comparison.audit == null) {
+                System.out.printf("%-25s %s%n", comparison.majorName, "Major not found");
+                continue;
+            }
+            GraduationPlanner.Plan plan = comparison.plan;
+            String status = comparison.audit.noRequirements ? "No requirements"
+                          : comparison.audit.isEligible() ? "Eligible" : "Not yet eligible";
+            String graduation = comparison.audit.noRequirements ? "-"
+                              : plan.isComplete() ? "After " + currentTerm
+                              : plan.isFeasible() ? plan.getGraduationTerm() : "No full plan";
+            System.out.printf("%-25s %-16s %13d %14d  %s%n", comparison.majorName, status,
+                plan.requiredStillNeeded.size(), plan.electivesStillNeeded, graduation);
+        }
+    }
+
+    private String getStudentMajor(String permNumber) {
+        String sql = "SELECT major_name FROM Student WHERE perm_number = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, permNumber);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getString("major_name") : null;
+        } catch (SQLException e) {
+            System.err.println("Error getting student major: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Set<String> getCompletedCourses(String permNumber) {
+        try {
+            if (isReplica) {
+                return aggregates.getPassedCourses(permNumber);
+            }
+            return passedCourses.get(permNumber, aggregates::getPassedCourses);
+        } catch (SQLException e) {
+            System.err.println("Error getting completed courses: " + e.getMessage());
+            return new HashSet<>();
+        }
+    }
+
+    // Courses the student passed with C or better
+    public Set<String> getPassedCourses(String permNumber) {
+        return FlightEvents.record("getPassedCourses", permNumber, null, () -> doGetPassedCourses(permNumber));
+    }
+
+    private Set<String> doGetPassedCourses(String permNumber) {
+        return getCompletedCourses(permNumber);
+    }
+
+    // Check aggregates against Enrolls_in, optionally repairing drifted students
+    public void verifyAggregates(boolean repair) {
+        FlightEvents.record("verifyAggregates", null, null, () -> doVerifyAggregates(repair));
+    }
+
+    private void doVerifyAggregates(boolean repair) {
+        System.out.println("\n=== Verifying Student Aggregates ===");
+        try {
+            aggregates.verify(repair);
+            if (repair) {
+                passedCourses.invalidateAll();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error verifying aggregates: " + e.getMessage());
+        }
+    }
+
+    // Write a columnar snapshot of enrollment data for offline analytics
+    public boolean exportSnapshot(String filename) {
+        return FlightEvents.record("exportSnapshot", null, null, () -> doExportSnapshot(filename));
+    }
+
+    private boolean doExportSnapshot(String filename) {
+        System.out.println("\n=== Exporting Enrollment Snapshot to " + filename + " ===");
+        try {
+            int rows = EnrollmentSnapshot.export(connection, Paths.get(filename));
+            System.out.println("Exported " + rows + " enrollments.");
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error reading enrollment data: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error writing snapshot: " + e.getMessage());
+        }
+        return false;
+    }
+
+    // Apply pending schema migrations to every database
+    public boolean migrateSchema() {
+        return FlightEvents.record("migrateSchema", null, null, () -> doMigrateSchema());
+    }
+
+    private boolean doMigrateSchema() {
+        System.out.println("\n=== Migrating Schema ===");
+        try {
+            for (Connection database : databases()) {
+                SchemaMigrations migrations = new SchemaMigrations(database);
+                int ran = migrations.migrate();
+                System.out.println(ran + " migration(s) applied; schema version " + migrations.currentVersion());
+                if (migrations.ran(SchemaMigrations.AGGREGATE_TABLES_VERSION)) {
+                    // The aggregate tables start empty; fill them from past enrollments
+                    new StudentAggregates(database).rebuildAll();
+                    passedCourses.invalidateAll();
+                    System.out.println("Student aggregates built from past enrollments.");
+                }
+            }
+            history = EnrollmentArchive.historyTable(connection);
             return true;
+        } catch (SQLException e) {
+            System.err.println("Error migrating schema: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error reading migration scripts: " + e.getMessage());
         }
+        return false;
     }
 
-    private String repeatString(String str, int count) {
-        return str.repeat(Math.max(0, count));
+    // Check every database for the tables, columns and indexes the queries
+    // rely on. Quiet mode prints only a warning if anything is missing.
+    public boolean checkSchema(boolean verbose) {
+        return FlightEvents.record("checkSchema", null, null, () -> doCheckSchema(verbose));
     }
 
-    public void close() {
+    private boolean doCheckSchema(boolean verbose) {
+        if (verbose) {
+            System.out.println("\n=== Checking Schema ===");
+        }
+        int missing = 0;
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                System.out.println("Database connection closed");
+            for (Connection database : databases()) {
+                missing += new SchemaMigrations(database).check(verbose);
             }
         } catch (SQLException e) {
-            System.err.println("Error closing connection: " + e.getMessage());
+            System.err.println("Error checking schema: " + e.getMessage());
+            return false;
         }
+        if (missing > 0) {
+            System.out.println("Warning: " + missing + " schema object(s) missing; run --migrate " +
+                               "(features such as waitlists and cached aggregates need them).");
+        } else if (verbose) {
+            System.out.println("Schema is complete.");
+        }
+        return missing == 0;
     }
 
-    public String getStudentNameForInterface(String permNumber) {
-        String sql = "SELECT name FROM Student WHERE perm_number = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, permNumber);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getString("name");
-            }
+    // The startup check: warns when objects are missing. Migrations change the
+    // live schema and some fail on existing duplicates (V4, V6), so they only
+    // run here with SCHEMA_AUTO_MIGRATE=true; otherwise run --migrate.
+    // Returns whether the schema is complete afterwards.
+    boolean ensureSchema() {
+        if (checkSchema(false)) {
+            return true;
+        }
+        String autoMigrate;
+        try {
+            autoMigrate = requireConfig().getProperty("SCHEMA_AUTO_MIGRATE", "false").trim();
         } catch (SQLException e) {
-             System.err.println("Error fetching student name: " + e.getMessage());
+            return false;
         }
-        return "Student #" + permNumber;
+        return autoMigrate.equalsIgnoreCase("true") && migrateSchema();
     }
 
-    // Generate optimal graduation plan for student
-    public void makeGraduationPlan(String permNumber) {
-        System.out.println("\n=== GRADUATION PLAN for Student " + permNumber + " ===");
-    
-        String majorName = getStudentMajor(permNumber);
-        if (majorName == null) {
-            System.out.println("Student " + permNumber + " not found or has no major.");
-            return;
+    // ensureSchema on a connection of its own, for entry points that open
+    // their connections later (batch pools, rollover workers)
+    static void ensureSchemaBeforeStart() {
+        StudentTransactions st = null;
+        try {
+            st = connect();
+            st.ensureSchema();
+        } catch (SQLException e) {
+            System.err.println("Error checking schema: " + e.getMessage());
+        } finally {
+            if (st != null) {
+                st.close();
+            }
         }
-    
-        Set<String> completedCourses = getCompletedCourses(permNumber);
-        Set<String> currentCourses = getCurrentlyEnrolledCourses(permNumber);
-        MajorRequirements requirements = getMajorRequirements(majorName);
+    }
 
-        if (requirements.requiredCourses.isEmpty() && requirements.electivesRequired == 0 && requirements.electiveCourses.isEmpty()) {
-            System.out.println("No specific course requirements found for major: " + majorName + ". Cannot generate plan.");
-            return;
-        }
+    // Move enrollments of closed quarters to Enrolls_in_Archive, keeping the
+    // current term and the last ARCHIVE_KEEP_QUARTERS quarters in Enrolls_in
+    public boolean archiveClosedQuarters(int keepQuarters) {
+        return FlightEvents.record("archiveClosedQuarters", null, null, () -> doArchiveClosedQuarters(keepQuarters));
+    }
 
-        List<String> initialRequiredStillNeeded = new ArrayList<>();
-        for (String course : requirements.requiredCourses) {
-            if (!completedCourses.contains(course) && !currentCourses.contains(course)) {
-                initialRequiredStillNeeded.add(course);
-            }
+    private boolean doArchiveClosedQuarters(int keepQuarters) {
+        System.out.println("\n=== Archiving Quarters Before " + currentTerm + " (keeping " + keepQuarters + ") ===");
+        if (!history.equals(EnrollmentArchive.HISTORY_VIEW)) {
+            System.err.println("Error: Enrolls_in_Archive is missing; run --migrate first.");
+            return false;
         }
-    
-        int completedElectiveUnitsCount = 0;
-        for (String course : requirements.electiveCourses) {
-            if (completedCourses.contains(course) || currentCourses.contains(course)) {
-                completedElectiveUnitsCount++;
-            }
+        try {
+            EnrollmentArchive archive = new EnrollmentArchive(connection, transactions);
+            long moved = archive.archiveClosedQuarters(currentTerm, keepQuarters);
+            System.out.println(moved + " enrollment(s) archived.");
+            archive.printStats();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error archiving enrollments: " + e.getMessage());
+            return false;
         }
-        int electivesStillToTakeCount = Math.max(0, requirements.electivesRequired - completedElectiveUnitsCount);
-    
-        List<String> availableElectiveCoursesNotTaken = new ArrayList<>();
-        for (String course : requirements.electiveCourses) {
-            if (!completedCourses.contains(course) && !currentCourses.contains(course)) {
-                availableElectiveCoursesNotTaken.add(course);
+    }
+
+    // Build an off-heap enrollment store in an empty directory, from every shard
+    public boolean buildEnrollmentStore(String directory) {
+        return FlightEvents.record("buildEnrollmentStore", null, null, () -> doBuildEnrollmentStore(directory));
+    }
+
+    private boolean doBuildEnrollmentStore(String directory) {
+        System.out.println("\n=== Building Enrollment Store in " + directory + " ===");
+        Path dir = Paths.get(directory);
+        if (Files.exists(dir.resolve("rows.dat"))) {
+            System.err.println("Error: " + directory + " already holds an enrollment store.");
+            return false;
+        }
+        try (EnrollmentStore store = EnrollmentStore.open(dir)) {
+            for (StudentTransactions source : auditSources()) {
+                store.loadFrom(source.connection);
             }
+            store.printStats();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error reading enrollment data: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error writing enrollment store: " + e.getMessage());
         }
-    
-        System.out.println("Major: " + majorName);
-        System.out.println("Completed courses (passed with C or better): " + completedCourses.size());
-        System.out.println("Currently enrolled (Spring 2025): " + currentCourses.size());
-        System.out.println("Remaining required courses for major: " + initialRequiredStillNeeded.size());
-        System.out.println("Remaining electives needed for major: " + electivesStillToTakeCount);
-        System.out.println();
-    
-        if (initialRequiredStillNeeded.isEmpty() && electivesStillToTakeCount <= 0) {
-            System.out.println("CONGRATULATIONS! You have completed all graduation requirements!");
-            return;
+        return false;
+    }
+
+    // Fill this database, which should be empty, with a synthetic university
+    // (see DatasetGenerator) and build its aggregates
+    public boolean generateDataset(DatasetGenerator.Spec spec) {
+        return FlightEvents.record("generateDataset", null, null, () -> doGenerateDataset(spec));
+    }
+
+    private boolean doGenerateDataset(DatasetGenerator.Spec spec) {
+        System.out.println("\n=== Generating Dataset: " + spec + " ===");
+        if (databases().size() > 1) {
+            System.err.println("Error: with sharding, generate files (--generate-data files <dir>) and load them instead.");
+            return false;
         }
-    
-        List<Quarter> plan = generateOptimalPlan(
-            new ArrayList<>(initialRequiredStillNeeded),
-            new ArrayList<>(availableElectiveCoursesNotTaken),
-            electivesStillToTakeCount,
-            new HashSet<>(completedCourses),
-            new HashSet<>(currentCourses)
-        );
-    
-        if (plan.isEmpty() && (!initialRequiredStillNeeded.isEmpty() || electivesStillToTakeCount > 0)) {
-            System.out.println("Unable to generate a full graduation plan with the current course offerings and prerequisites. Please consult with an advisor.");
-            return;
+        try {
+            String rowsSql = "SELECT (SELECT COUNT(*) FROM Student), (SELECT COUNT(*) FROM Enrolls_in) FROM DUAL";
+            try (PreparedStatement stmt = connection.prepareStatement(rowsSql)) {
+                ResultSet rs = stmt.executeQuery();
+                if (rs.next() && (rs.getLong(1) > 0 || rs.getLong(2) > 0)) {
+                    System.err.println("Error: the database already has " + rs.getLong(1) + " student(s) and " +
+                                      rs.getLong(2) + " enrollment(s); generate into an empty schema.");
+                    return false;
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error checking for existing data: " + e.getMessage());
+            return false;
         }
-        if (plan.isEmpty() && initialRequiredStillNeeded.isEmpty() && electivesStillToTakeCount <= 0){
-            System.out.println("All requirements appear to be met or in progress for the current quarter.");
-            return;
+        long started = System.currentTimeMillis();
+        try (DatasetGenerator.JdbcSink sink = new DatasetGenerator.JdbcSink(connection)) {
+            printDatasetCounts(new DatasetGenerator(spec).generate(sink), started);
+        } catch (SQLException | IOException e) {
+            System.err.println("Error generating dataset: " + e.getMessage());
+            return false;
         }
+        rebuildAggregates();
+        return true;
+    }
 
-    
-        System.out.println("EARLIEST GRADUATION PLAN:");
-        if (!plan.isEmpty()) {
-            System.out.println("Estimated graduation: " + plan.get(plan.size() - 1).getDisplayName());
-        } else {
-             System.out.println("Review current and past courses. All requirements might be met upon completion of current courses.");
-        }
-        System.out.println();
-    
-        for (Quarter quarter : plan) {
-            System.out.println(quarter.getDisplayName() + ":");
-            if (quarter.courses.isEmpty()){
-                System.out.println("  No courses scheduled for this quarter (might indicate planning issue or requirements met).");
-            }
-            for (String course : quarter.courses) {
-                String type = initialRequiredStillNeeded.contains(course) ? "(Required)" : "(Elective)";
-                System.out.println("  • " + course + " " + type);
+    // Writes a synthetic university without a database: "files" writes CSV
+    // files and SQL*Loader control files, "store" writes its enrollments into
+    // an enrollment store
+    static void generateDatasetOffline(String target, String directory) {
+        Properties props;
+        try {
+            props = loadConfig();
+        } catch (IOException e) {
+            props = new Properties();
+        }
+        DatasetGenerator.Spec spec = DatasetGenerator.Spec.fromConfig(props);
+        System.out.println("\n=== Generating Dataset into " + directory + ": " + spec + " ===");
+        long started = System.currentTimeMillis();
+        Path dir = Paths.get(directory);
+        try {
+            if (target.equals("files")) {
+                try (DatasetGenerator.FileSink sink = new DatasetGenerator.FileSink(dir)) {
+                    printDatasetCounts(new DatasetGenerator(spec).generate(sink), started);
+                }
+            } else if (target.equals("store")) {
+                if (Files.exists(dir.resolve("rows.dat"))) {
+                    System.err.println("Error: " + directory + " already holds an enrollment store.");
+                    return;
+                }
+                try (EnrollmentStore store = EnrollmentStore.open(dir);
+                     DatasetGenerator.StoreSink sink = new DatasetGenerator.StoreSink(store)) {
+                    printDatasetCounts(new DatasetGenerator(spec).generate(sink), started);
+                    store.printStats();
+                }
+            } else {
+                System.err.println("Usage: --generate-data [files|store <dir>]");
             }
-            System.out.println();
+        } catch (SQLException | IOException e) {
+            System.err.println("Error generating dataset: " + e.getMessage());
         }
     }
 
-    private String getStudentMajor(String permNumber) {
-        String sql = "SELECT major_name FROM Student WHERE perm_number = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, permNumber);
-            ResultSet rs = stmt.executeQuery();
-            return rs.next() ? rs.getString("major_name") : null;
-        } catch (SQLException e) {
-            System.err.println("Error getting student major: " + e.getMessage());
-            return null;
+    private static void printDatasetCounts(Map<DatasetGenerator.Table, Long> counts, long started) {
+        for (Map.Entry<DatasetGenerator.Table, Long> entry : counts.entrySet()) {
+            System.out.printf("  %-16s %,12d rows%n", entry.getKey().tableName, entry.getValue());
         }
+        System.out.println("Generated in " + (System.currentTimeMillis() - started) + " ms.");
     }
 
-    private Set<String> getCompletedCourses(String permNumber) {
-        Set<String> completed = new HashSet<>();
-        String sql = "SELECT co.course_number FROM Enrolls_in e " +
-                     "JOIN Course_Offering co ON e.enrollment_code = co.enrollment_code " +
-                     "WHERE e.perm_number = ? AND e.status = 'Past' AND e.grade IS NOT NULL " +
-                     "AND e.grade IN ('A+', 'A', 'A-', 'B+', 'B', 'B-', 'C+', 'C')";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, permNumber);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                completed.add(rs.getString("course_number"));
-            }
+    public void rebuildAggregates() {
+        FlightEvents.record("rebuildAggregates", null, null, () -> doRebuildAggregates());
+    }
+
+    private void doRebuildAggregates() {
+        System.out.println("\n=== Rebuilding Student Aggregates ===");
+        try {
+            aggregates.rebuildAll();
+            passedCourses.invalidateAll();
+            System.out.println("Aggregates rebuilt.");
         } catch (SQLException e) {
-            System.err.println("Error getting completed courses: " + e.getMessage());
+            System.err.println("Error rebuilding aggregates: " + e.getMessage());
         }
-        return completed;
     }
 
     private Set<String> getCurrentlyEnrolledCourses(String permNumber) {
@@ -963,187 +2446,204 @@ public class StudentTransactions {
         return current;
     }
 
-    private MajorRequirements getMajorRequirements(String majorName) {
-        MajorRequirements requirements = new MajorRequirements();
-        String sql = "SELECT m.elective_number, pom.course_number, pom.required " +
-                     "FROM Major m LEFT JOIN Part_of_Major pom ON m.name = pom.major_name " +
-                     "WHERE m.name = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, majorName);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                requirements.electivesRequired = rs.getInt("elective_number");
-                String courseNumber = rs.getString("course_number");
-                if (courseNumber != null) {
-                    if (rs.getInt("required") == 1) {
-                        requirements.requiredCourses.add(courseNumber);
-                    } else {
-                        requirements.electiveCourses.add(courseNumber);
-                    }
-                }
-            }
+    // Requirement profiles and the planning catalog, cached for PLANNING_CACHE_MS.
+    // Null if they have never loaded.
+    private synchronized PlanningData getPlanningData() {
+        if (planningData != null && System.currentTimeMillis() - planningData.loadedAt < PLANNING_CACHE_MS) {
+            return planningData;
+        }
+        try {
+            planningData = new PlanningData(RequirementProfile.load(connection, null), CourseCatalog.load(connection));
         } catch (SQLException e) {
-            System.err.println("Error getting major requirements for " + majorName + ": " + e.getMessage());
+            // Keep planning with the previous copy if there is one
+            System.err.println("Error loading major requirements and catalog: " + e.getMessage());
         }
-        return requirements;
+        return planningData;
     }
 
-    private List<Quarter> generateOptimalPlan(
-            List<String> toScheduleRequired,
-            List<String> availableElectives,
-            int electivesStillNeededCount,
-            Set<String> coursesAlreadyCompleted,
-            Set<String> coursesCurrentlyEnrolled) {
-
-        List<Quarter> plan = new ArrayList<>();
+    private RequirementProfile getRequirementProfile(String majorName) {
+        PlanningData planning = getPlanningData();
+        if (planning == null) {
+            return RequirementProfile.empty(majorName);
+        }
+        return planning.profiles.getOrDefault(majorName, RequirementProfile.empty(majorName));
+    }
 
-        Set<String> coursesConsideredTakenOrScheduled = new HashSet<>(coursesAlreadyCompleted);
-        coursesConsideredTakenOrScheduled.addAll(coursesCurrentlyEnrolled);
+    private static class PlanningData {
+        private static final AtomicLong loads = new AtomicLong();
 
-        int currentYear = 2025;
-        String currentQuarter = "Fall"; // Planning starts from Fall 2025
+        final Map<String, RequirementProfile> profiles;
+        final CourseCatalog catalog;
+        final long loadedAt = System.currentTimeMillis();
+        // Distinct for every load, so cached plans never outlive their inputs
+        final long version = loads.incrementAndGet();
 
-        int safetyBreakMaxQuarters = 20;
+        PlanningData(Map<String, RequirementProfile> profiles, CourseCatalog catalog) {
+            this.profiles = profiles;
+            this.catalog = catalog;
+        }
+    }
 
-        while ((!toScheduleRequired.isEmpty() || electivesStillNeededCount > 0) && plan.size() < safetyBreakMaxQuarters) {
-            Quarter quarterPlan = new Quarter(currentYear, currentQuarter);
-            
-            // Schedule required courses first
-            Iterator<String> reqIter = toScheduleRequired.iterator();
-            while (reqIter.hasNext() && quarterPlan.courses.size() < 5) {
-                String course = reqIter.next();
-                if (isCourseOfferedInQuarterType(course, currentQuarter) &&
-                    canTakeCourse(course, coursesConsideredTakenOrScheduled)) {
-                    quarterPlan.courses.add(course);
-                    reqIter.remove();
-                }
-            }
+    // A student's last graduation plan, kept for the length of a GOLD login
+    public static class PlanSession {
+        final String permNumber;
+        String majorName;
+        GraduationPlanner.Plan plan;
+        long planningVersion;
 
-            // Schedule elective courses
-            Iterator<String> elecIter = availableElectives.iterator();
-            while (elecIter.hasNext() && quarterPlan.courses.size() < 5 && electivesStillNeededCount > 0) {
-                String course = elecIter.next();
-                if (!quarterPlan.courses.contains(course) && 
-                    isCourseOfferedInQuarterType(course, currentQuarter) &&
-                    canTakeCourse(course, coursesConsideredTakenOrScheduled)) {
-                    quarterPlan.courses.add(course);
-                    elecIter.remove();
-                    electivesStillNeededCount--;
-                }
-            }
+        public PlanSession(String permNumber) {
+            this.permNumber = permNumber;
+        }
+    }
 
-            if (!quarterPlan.courses.isEmpty()) {
-                plan.add(quarterPlan);
-                coursesConsideredTakenOrScheduled.addAll(quarterPlan.courses);
-            } else {
-                if (!toScheduleRequired.isEmpty() || electivesStillNeededCount > 0) {
-                     System.out.println(" Warning: Unable to find any valid courses to schedule for " +
-                                     currentQuarter + " " + currentYear +
-                                     ". Prerequisite issues or course availability constraints might exist. Please consult an advisor.");
-                }
-                break;
-            }
+    public static class MajorComparison {
+        final String majorName;
+        // Both null if the major doesn't exist
+        final GraduationAudit audit;
+        final GraduationPlanner.Plan plan;
 
-            switch (currentQuarter) {
-                case "Fall":
-                    currentQuarter = "Winter";
-                    currentYear++;
-                    break;
-                case "Winter":
-                    currentQuarter = "Spring";
-                    break;
-                case "Spring":
-                    currentQuarter = "Fall";
-                    break;
-            }
+        MajorComparison(String majorName, GraduationAudit audit, GraduationPlanner.Plan plan) {
+            this.majorName = majorName;
+            this.audit = audit;
+            this.plan = plan;
         }
-         if (plan.size() >= safetyBreakMaxQuarters && (!toScheduleRequired.isEmpty() || electivesStillNeededCount > 0)) {
-            System.out.println(" Warning: Plan exceeds reasonable timeframe (" + safetyBreakMaxQuarters/4.0 + " years). Please consult an advisor.");
+
+        public GraduationAudit getAudit() {
+            return audit;
         }
 
-        return plan;
-    }
-    
-    private boolean isCourseOfferedInQuarterType(String courseNumber, String quarterType) {
-        String sql = "SELECT 1 FROM Course_Offering WHERE course_number = ? AND quarter = ? FETCH FIRST 1 ROWS ONLY";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, courseNumber);
-            stmt.setString(2, quarterType);
-            ResultSet rs = stmt.executeQuery();
-            return rs.next(); 
-        } catch (SQLException e) {
-            System.err.println("Error checking course offering by quarter type for " + courseNumber + " in " + quarterType + ": " + e.getMessage());
-            return false;
+        public GraduationPlanner.Plan getPlan() {
+            return plan;
         }
     }
-    
-    private boolean canTakeCourse(String courseNumber, Set<String> coursesCompletedBeforeThisQuarter) {
-        if (!courseExists(courseNumber)) {
-            return false;
+
+    // What the other shards hold for the checks that must see every student.
+    // A single database has no peers.
+    interface ShardPeers {
+        interface Action<T> {
+            T run() throws SQLException;
         }
-        List<String> prerequisites = getPrerequisites(courseNumber);
-        for (String prereq : prerequisites) {
-            if (!coursesCompletedBeforeThisQuarter.contains(prereq)) {
-                return false; 
+
+        ShardPeers NONE = new ShardPeers() {
+            public <T> T withSeatsLocked(String enrollmentCode, Action<T> action) throws SQLException {
+                return action.run();
             }
-        }
-        return true; 
-    }
 
-    private List<String> getPrerequisites(String courseNumber) {
-        List<String> prerequisites = new ArrayList<>();
-        String sql = "SELECT prerequisite_course_number FROM Prerequisite WHERE course_number = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, courseNumber);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                prerequisites.add(rs.getString("prerequisite_course_number"));
+            public int enrolledElsewhere(String enrollmentCode) {
+                return 0;
             }
-        } catch (SQLException e) {
-            System.err.println("Error getting prerequisites for " + courseNumber + ": " + e.getMessage());
-        }
-        return prerequisites;
-    }
 
-    private boolean courseExists(String courseNumber) {
-        String sql = "SELECT 1 FROM Course WHERE course_number = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, courseNumber);
-            return stmt.executeQuery().next();
-        } catch (SQLException e) {
-            System.err.println("Error checking if course " + courseNumber + " exists: " + e.getMessage());
-            return false;
-        }
-    }
+            public boolean pinInUseElsewhere(String pin, String excludePermNumber) {
+                return false;
+            }
+        };
+
+        // Runs an add so no other shard can take a seat in the offering meanwhile
+        <T> T withSeatsLocked(String enrollmentCode, Action<T> action) throws SQLException;
 
-    // Helper classes for graduation plan
-    private static class MajorRequirements {
-        List<String> requiredCourses = new ArrayList<>();
-        List<String> electiveCourses = new ArrayList<>();
-        int electivesRequired = 0;
+        int enrolledElsewhere(String enrollmentCode) throws SQLException;
+
+        boolean pinInUseElsewhere(String pin, String excludePermNumber) throws SQLException;
     }
 
-    private static class Quarter {
-        int year;
-        String quarter;
-        List<String> courses = new ArrayList<>();
-        
-        Quarter(int year, String quarter) {
-            this.year = year;
+    public static class CourseRow {
+        final String enrollmentCode;
+        final String courseNumber;
+        final String title;
+        final String quarter;
+        final int year;
+        final String profFirstName;
+        final String profLastName;
+
+        CourseRow(String enrollmentCode, String courseNumber, String title, String quarter, int year,
+                  String profFirstName, String profLastName) {
+            this.enrollmentCode = enrollmentCode;
+            this.courseNumber = courseNumber;
+            this.title = title;
             this.quarter = quarter;
-        }
-        
-        String getDisplayName() {
-            return quarter + " " + year;
+            this.year = year;
+            this.profFirstName = profFirstName;
+            this.profLastName = profLastName;
         }
     }
-    
+
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            ensureSchemaBeforeStart();
+            openEvents();
+            openJournal();
+            try {
+                RegistrarBatch.main(args);
+            } finally {
+                closeJournal();
+                closeEvents();
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--rollover")) {
+            ensureSchemaBeforeStart();
+            TermRollover.main(args);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--snapshot-report")) {
+            try {
+                EnrollmentSnapshot.open(Paths.get(args[1])).printGradeDistribution();
+            } catch (IOException e) {
+                System.err.println("Error reading snapshot: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--replay-events")) {
+            long from;
+            try {
+                from = args.length > 2 ? Long.parseLong(args[2]) : 1;
+            } catch (NumberFormatException e) {
+                System.err.println("Usage: --replay-events <log-file> [from-sequence]");
+                return;
+            }
+            try {
+                int replayed = ChangeEventStream.replay(Paths.get(args[1]), from, System.out::println);
+                System.out.println(replayed + " event(s) replayed.");
+            } catch (IOException e) {
+                System.err.println("Error reading event log: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--generate-data")) {
+            // Any target means files or store; only the bare flag writes to the database
+            if (args.length < 3) {
+                System.err.println("Usage: --generate-data [files|store <dir>]");
+                return;
+            }
+            generateDatasetOffline(args[1], args[2]);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--store-report")) {
+            try (EnrollmentStore store = EnrollmentStore.open(Paths.get(args[1]))) {
+                store.printStats();
+            } catch (IOException e) {
+                System.err.println("Error opening enrollment store: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length > 0 && (args[0].equals("--verify-aggregates") || args[0].equals("--rebuild-aggregates")
+                || args[0].equals("--export-snapshot") || args[0].equals("--replicate-catalog")
+                || args[0].equals("--audit-major") || args[0].equals("--build-store")
+                || args[0].equals("--bulk-add") || args[0].equals("--bulk-drop")
+                || args[0].equals("--migrate") || args[0].equals("--check-schema")
+                || args[0].equals("--generate-data") || args[0].equals("--archive-quarters"))) {
+            runMaintenance(args);
+            return;
+        }
         StudentTransactions st = null;
         Interfaces ui = null;
         
         try {
-            st = new StudentTransactions();
+            openEvents();
+            st = connect();
+            // Before the journal opens, so its applier sees the migrated schema
+            st.ensureSchema();
+            openJournal();
             ui = new Interfaces(st);
             ui.start();
         } catch (SQLException e) {
@@ -1156,6 +2656,79 @@ public class StudentTransactions {
             if (st != null) {
                 st.close();
             }
+            closeJournal();
+            closeEvents();
+        }
+    }
+
+    // Command line maintenance jobs that don't need the menus
+    private static void runMaintenance(String[] args) {
+        StudentTransactions st = null;
+        try {
+            st = connect();
+            if (!args[0].equals("--migrate") && !args[0].equals("--check-schema")) {
+                st.ensureSchema();
+            }
+            switch (args[0]) {
+                case "--verify-aggregates":
+                    st.verifyAggregates(args.length > 1 && args[1].equals("--repair"));
+                    break;
+                case "--rebuild-aggregates":
+                    st.rebuildAggregates();
+                    break;
+                case "--export-snapshot":
+                    st.exportSnapshot(args.length > 1 ? args[1] : "enrollment.snap");
+                    break;
+                case "--migrate":
+                    st.migrateSchema();
+                    break;
+                case "--check-schema":
+                    st.checkSchema(true);
+                    break;
+                case "--bulk-add":
+                case "--bulk-drop":
+                    if (args.length < 2) {
+                        System.err.println("Usage: " + args[0] + " <pairs-file> [report]");
+                        break;
+                    }
+                    st.runBulkEnrollment(args[0].equals("--bulk-add"), args[1],
+                        args.length > 2 ? args[2] : "bulk_enrollment.tsv");
+                    break;
+                case "--build-store":
+                    st.buildEnrollmentStore(args.length > 1 ? args[1] : "enrollment_store");
+                    break;
+                case "--generate-data":
+                    st.generateDataset(DatasetGenerator.Spec.fromConfig(requireConfig()));
+                    break;
+                case "--archive-quarters":
+                    int keepQuarters;
+                    try {
+                        keepQuarters = args.length > 1 ? Integer.parseInt(args[1])
+                            : EnrollmentArchive.keepQuartersFromConfig(requireConfig());
+                    } catch (NumberFormatException e) {
+                        System.err.println("Usage: --archive-quarters [keep]");
+                        break;
+                    }
+                    st.archiveClosedQuarters(keepQuarters);
+                    break;
+                case "--audit-major":
+                    String major = args.length > 1 && !args[1].equals("--all") ? args[1] : null;
+                    st.auditMajor(major, args.length > 2 ? args[2] : "degree_audit.tsv");
+                    break;
+                case "--replicate-catalog":
+                    if (st instanceof ShardedStudentTransactions) {
+                        ((ShardedStudentTransactions) st).replicateCatalog();
+                    } else {
+                        System.out.println("SHARD_COUNT is not configured; nothing to replicate.");
+                    }
+                    break;
+            }
+        } catch (SQLException e) {
+            System.err.println("Database connection error: " + e.getMessage());
+        } finally {
+            if (st != null) {
+                st.close();
+            }
         }
     }
-}
\ No newline at end of file
+}
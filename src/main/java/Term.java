@@ -0,0 +1,77 @@
+import java.util.Properties;
+
+// An academic quarter. The registrar calendar runs Winter, Spring, Fall, with
+// Winter starting a new year.
+public class Term {
+    private static final String[] QUARTERS = {"Winter", "Spring", "Fall"};
+
+    final String quarter;
+    final int year;
+
+    public Term(String quarter, int year) {
+        if (indexOf(quarter) < 0) {
+            throw new IllegalArgumentException("Unknown quarter: " + quarter);
+        }
+        this.quarter = QUARTERS[indexOf(quarter)];
+        this.year = year;
+    }
+
+    // CURRENT_QUARTER / CURRENT_YEAR from config.properties, Spring 2025 by default
+    public static Term fromConfig(Properties props) {
+        String quarter = props.getProperty("CURRENT_QUARTER", "Spring").trim();
+        if (indexOf(quarter) < 0) {
+            System.err.println("Invalid CURRENT_QUARTER '" + quarter + "', using Spring");
+            quarter = "Spring";
+        }
+        String value = props.getProperty("CURRENT_YEAR", "2025").trim();
+        int year;
+        try {
+            year = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid CURRENT_YEAR '" + value + "', using 2025");
+            year = 2025;
+        }
+        return new Term(quarter, year);
+    }
+
+    public Term next() {
+        int index = indexOf(quarter);
+        if (index == QUARTERS.length - 1) {
+            return new Term(QUARTERS[0], year + 1);
+        }
+        return new Term(QUARTERS[index + 1], year);
+    }
+
+    // Position in the calendar; later terms have larger ordinals
+    int ordinal() {
+        return year * QUARTERS.length + indexOf(quarter);
+    }
+
+    public boolean matches(String quarter, int year) {
+        return this.year == year && this.quarter.equalsIgnoreCase(quarter);
+    }
+
+    private static int indexOf(String quarter) {
+        for (int i = 0; i < QUARTERS.length; i++) {
+            if (QUARTERS[i].equalsIgnoreCase(quarter)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Term && ((Term) other).matches(quarter, year);
+    }
+
+    @Override
+    public int hashCode() {
+        return year * 4 + indexOf(quarter);
+    }
+
+    @Override
+    public String toString() {
+        return quarter + " " + year;
+    }
+}
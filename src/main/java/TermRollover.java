@@ -0,0 +1,292 @@
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+// End-of-quarter maintenance job.
+//
+//   1. Writes every ungraded 'Current' enrollment to rollover_ungraded.txt.
+//      If there are any, the rollover stops there so the registrar can grade
+//      them, unless it was started with --close-ungraded.
+//   2. Moves every graded 'Current' row to 'Past' and adds its grade to the
+//      student's aggregates. Rows are split into partitions by
+//      ORA_HASH(enrollment_code); partitions run in parallel, each in chunks
+//      of CHUNK_SIZE rows per commit.
+//   3. With --close-ungraded, moves the ungraded rows to 'Past' without a
+//      grade, so they don't count towards the next term's seats and limits.
+//   4. Stores the next term in Current_Term.
+//
+// Finished partitions are recorded in rollover.checkpoint, so a rerun after a
+// failure only repeats the unfinished ones. With SHARD_COUNT configured every
+// shard is rolled over in parallel, each with its own checkpoint and report.
+public class TermRollover {
+    static final int CHUNK_SIZE = 5000;
+
+    private final List<StudentTransactions> workers;
+    private final int partitions;
+    // Empty for a single database, e.g. "shard0" for one shard of several
+    private final String label;
+    private final Path checkpointFile;
+    private final Path ungradedReport;
+    private final boolean closeUngraded;
+
+    public TermRollover(List<StudentTransactions> workers, int partitions, boolean closeUngraded) {
+        this(workers, partitions, closeUngraded, "");
+    }
+
+    TermRollover(List<StudentTransactions> workers, int partitions, boolean closeUngraded, String label) {
+        this.workers = workers;
+        this.partitions = Math.max(1, partitions);
+        this.closeUngraded = closeUngraded;
+        this.label = label;
+        String suffix = label.isEmpty() ? "" : "-" + label;
+        this.checkpointFile = Paths.get("rollover" + suffix + ".checkpoint");
+        this.ungradedReport = Paths.get("rollover_ungraded" + suffix + ".txt");
+    }
+
+    // Usage: --rollover [partitions] [parallelism] [--close-ungraded]
+    public static void main(String[] args) {
+        List<String> numbers = new ArrayList<>();
+        boolean closeUngraded = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--close-ungraded")) {
+                closeUngraded = true;
+            } else {
+                numbers.add(args[i]);
+            }
+        }
+        int partitions;
+        int parallelism;
+        try {
+            partitions = numbers.size() > 0 ? Integer.parseInt(numbers.get(0)) : 16;
+            parallelism = numbers.size() > 1 ? Integer.parseInt(numbers.get(1)) : 4;
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: --rollover [partitions] [parallelism] [--close-ungraded]");
+            return;
+        }
+        List<StudentTransactions> workers = new ArrayList<>();
+        try {
+            Properties props = StudentTransactions.loadConfig();
+            if (ShardRouter.isConfigured(props)) {
+                ShardedStudentTransactions.rollover(props, partitions, parallelism, closeUngraded);
+                return;
+            }
+            for (int i = 0; i < Math.max(1, parallelism); i++) {
+                workers.add(new StudentTransactions());
+            }
+            new TermRollover(workers, partitions, closeUngraded).run();
+        } catch (SQLException e) {
+            System.err.println("Database connection error: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error writing rollover files: " + e.getMessage());
+        } finally {
+            for (StudentTransactions st : workers) {
+                st.close();
+            }
+        }
+    }
+
+    public boolean run() throws SQLException, IOException {
+        Term from = workers.get(0).getCurrentTerm();
+        Term to = from.next();
+        System.out.println("\n=== Term Rollover" + (label.isEmpty() ? "" : " (" + label + ")") + ": " + from + " -> " + to + " ===");
+
+        int ungraded = reportUngraded(workers.get(0).getConnection());
+        System.out.println("Ungraded current enrollments: " + ungraded +
+                          (ungraded > 0 ? " (see " + ungradedReport + ")" : ""));
+        if (ungraded > 0 && !closeUngraded) {
+            // Left 'Current', they would count towards the next term's seats and limits
+            System.out.println("Rollover stopped. Grade these enrollments, or run again with --close-ungraded " +
+                              "to move them to Past without a grade.");
+            return false;
+        }
+
+        Properties checkpoint = loadCheckpoint(from);
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+        AtomicLong moved = new AtomicLong();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < workers.size(); i++) {
+            Connection connection = workers.get(i).getConnection();
+            int worker = i;
+            futures.add(executor.submit(() -> {
+                // Worker i takes partitions i, i + workers, i + 2 * workers, ...
+                for (int partition = worker; partition < partitions; partition += workers.size()) {
+                    if (checkpoint.containsKey("done." + partition)) {
+                        continue;
+                    }
+                    moved.addAndGet(rolloverPartition(connection, partition));
+                    markDone(checkpoint, partition);
+                }
+                return null;
+            }));
+        }
+        executor.shutdown();
+
+        boolean failed = false;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed = true;
+            } catch (ExecutionException e) {
+                System.err.println("Rollover partition failed: " + e.getCause().getMessage());
+                failed = true;
+            }
+        }
+        System.out.println("Moved " + moved.get() + " graded enrollments to Past.");
+        if (failed) {
+            System.out.println("Rollover incomplete. Run it again to finish the remaining partitions.");
+            return false;
+        }
+
+        if (ungraded > 0) {
+            System.out.println("Closed " + closeUngraded(workers.get(0).getConnection()) +
+                              " ungraded enrollments without a grade.");
+        }
+        advanceTerm(workers.get(0).getConnection(), to);
+        Files.deleteIfExists(checkpointFile);
+        System.out.println("Current term is now " + to + ".");
+        return true;
+    }
+
+    // Grade posting moves rows to 'Past' itself, so graded 'Current' rows were
+    // graded some other way and their grades are not in the aggregates yet.
+    // Each chunk locks its rows, moves them and records their grades together.
+    private long rolloverPartition(Connection connection, int partition) throws SQLException {
+        String selectSql = "SELECT ROWIDTOCHAR(ROWID) AS row_id, perm_number, enrollment_code, grade, grade_points " +
+                          "FROM Enrolls_in WHERE status = 'Current' AND grade IS NOT NULL " +
+                          "AND ORA_HASH(enrollment_code, ?) = ? AND ROWNUM <= ? FOR UPDATE";
+        String updateSql = "UPDATE Enrolls_in SET status = 'Past', grade_points = ? WHERE ROWID = CHARTOROWID(?)";
+        TransactionTemplate transactions = new TransactionTemplate(connection);
+        StudentAggregates aggregates = new StudentAggregates(connection);
+        long total = 0;
+        int rows;
+        do {
+            rows = transactions.execute(conn -> {
+                int count = 0;
+                try (PreparedStatement select = conn.prepareStatement(selectSql);
+                     PreparedStatement update = conn.prepareStatement(updateSql)) {
+                    select.setInt(1, partitions - 1);
+                    select.setInt(2, partition);
+                    select.setInt(3, CHUNK_SIZE);
+                    ResultSet rs = select.executeQuery();
+                    while (rs.next()) {
+                        String grade = rs.getString("grade").trim();
+                        double gradePoints = rs.getDouble("grade_points");
+                        if (rs.wasNull()) {
+                            gradePoints = StudentTransactions.calculateGradePoints(grade);
+                        }
+                        update.setDouble(1, gradePoints);
+                        update.setString(2, rs.getString("row_id"));
+                        update.addBatch();
+                        aggregates.recordGrade(rs.getString("perm_number"), rs.getString("enrollment_code"),
+                                               grade, gradePoints);
+                        count++;
+                    }
+                    if (count > 0) {
+                        update.executeBatch();
+                    }
+                }
+                return count;
+            });
+            total += rows;
+        } while (rows == CHUNK_SIZE);
+        return total;
+    }
+
+    // Moves the remaining ungraded 'Current' rows to 'Past', CHUNK_SIZE per commit
+    private long closeUngraded(Connection connection) throws SQLException {
+        String sql = "UPDATE Enrolls_in SET status = 'Past' " +
+                    "WHERE status = 'Current' AND grade IS NULL AND ROWNUM <= ?";
+        TransactionTemplate transactions = new TransactionTemplate(connection);
+        long total = 0;
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, CHUNK_SIZE);
+            int rows;
+            do {
+                rows = transactions.execute(conn -> stmt.executeUpdate());
+                total += rows;
+            } while (rows == CHUNK_SIZE);
+        }
+        return total;
+    }
+
+    private int reportUngraded(Connection connection) throws SQLException, IOException {
+        String sql = "SELECT e.perm_number, e.enrollment_code, co.course_number, co.quarter, co.year " +
+                    "FROM Enrolls_in e JOIN Course_Offering co ON e.enrollment_code = co.enrollment_code " +
+                    "WHERE e.status = 'Current' AND e.grade IS NULL " +
+                    "ORDER BY e.enrollment_code, e.perm_number";
+        int count = 0;
+        try (PreparedStatement stmt = connection.prepareStatement(sql);
+             PrintWriter out = new PrintWriter(new FileWriter(ungradedReport.toFile()))) {
+            stmt.setFetchSize(1000);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                out.println(rs.getString("perm_number") + "\t" + rs.getString("enrollment_code") + "\t" +
+                           rs.getString("course_number") + "\t" + rs.getString("quarter") + " " + rs.getInt("year"));
+                count++;
+            }
+        }
+        if (count == 0) {
+            Files.deleteIfExists(ungradedReport);
+        }
+        return count;
+    }
+
+    static void advanceTerm(Connection connection, Term to) throws SQLException {
+        new TransactionTemplate(connection).execute(conn -> {
+            try (PreparedStatement delete = conn.prepareStatement("DELETE FROM Current_Term");
+                 PreparedStatement insert = conn.prepareStatement("INSERT INTO Current_Term (quarter, year) VALUES (?, ?)")) {
+                delete.executeUpdate();
+                insert.setString(1, to.quarter);
+                insert.setInt(2, to.year);
+                return insert.executeUpdate();
+            }
+        });
+    }
+
+    // A checkpoint only counts if it belongs to this term and partition count
+    private Properties loadCheckpoint(Term from) throws IOException {
+        Properties checkpoint = new Properties();
+        if (Files.exists(checkpointFile)) {
+            try (FileInputStream in = new FileInputStream(checkpointFile.toFile())) {
+                checkpoint.load(in);
+            }
+            if (from.toString().equals(checkpoint.getProperty("term"))
+                    && String.valueOf(partitions).equals(checkpoint.getProperty("partitions"))) {
+                System.out.println("Resuming rollover from checkpoint.");
+                return checkpoint;
+            }
+            checkpoint.clear();
+        }
+        checkpoint.setProperty("term", from.toString());
+        checkpoint.setProperty("partitions", String.valueOf(partitions));
+        return checkpoint;
+    }
+
+    private void markDone(Properties checkpoint, int partition) throws IOException {
+        synchronized (checkpoint) {
+            checkpoint.setProperty("done." + partition, "true");
+            try (FileOutputStream out = new FileOutputStream(checkpointFile.toFile())) {
+                checkpoint.store(out, "Term rollover progress");
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+// Runs a unit of work as one database transaction.
+//
+// The work commits if it returns and rolls back if it throws. Serialization
+// failures and deadlocks are retried with a short backoff. If the connection
+// is already inside a transaction (a bulk job grouping several operations per
+// commit), the work runs under a savepoint instead: a failure undoes only that
+// piece of work and the outer transaction decides when to commit.
+public class TransactionTemplate {
+    // ORA-08177: can't serialize access, ORA-00060: deadlock detected
+    private static final int ORA_SERIALIZATION = 8177;
+    private static final int ORA_DEADLOCK = 60;
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    public interface Work<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    private final Connection connection;
+    private final int isolation;
+    private final int maxAttempts;
+
+    public TransactionTemplate(Connection connection) {
+        this(connection, Connection.TRANSACTION_READ_COMMITTED, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    public TransactionTemplate(Connection connection, int isolation, int maxAttempts) {
+        this.connection = connection;
+        this.isolation = isolation;
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    // Same connection, different isolation level (e.g. TRANSACTION_SERIALIZABLE)
+    public TransactionTemplate withIsolation(int isolation) {
+        return new TransactionTemplate(connection, isolation, maxAttempts);
+    }
+
+    public <T> T execute(Work<T> work) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            return executeNested(work);
+        }
+
+        int previousIsolation = connection.getTransactionIsolation();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                connection.setAutoCommit(false);
+                if (previousIsolation != isolation) {
+                    connection.setTransactionIsolation(isolation);
+                }
+                T result = work.run(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                rollbackQuietly();
+                if (e instanceof SQLException && isRetryable((SQLException) e) && attempt < maxAttempts) {
+                    backoff(attempt);
+                    continue;
+                }
+                throw e;
+            } finally {
+                restore(previousIsolation);
+            }
+        }
+    }
+
+    private <T> T executeNested(Work<T> work) throws SQLException {
+        Savepoint savepoint = connection.setSavepoint();
+        try {
+            // No releaseSavepoint: ojdbc doesn't support it, and Oracle drops
+            // savepoints when the outer transaction ends
+            return work.run(connection);
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback(savepoint);
+            throw e;
+        }
+    }
+
+    static boolean isRetryable(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            int code = current.getErrorCode();
+            String state = current.getSQLState();
+            if (code == ORA_SERIALIZATION || code == ORA_DEADLOCK || "40001".equals(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(20L * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void rollbackQuietly() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            System.err.println("Error rolling back transaction: " + e.getMessage());
+        }
+    }
+
+    private void restore(int previousIsolation) {
+        try {
+            if (previousIsolation != isolation) {
+                connection.setTransactionIsolation(previousIsolation);
+            }
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            System.err.println("Error restoring connection state: " + e.getMessage());
+        }
+    }
+}
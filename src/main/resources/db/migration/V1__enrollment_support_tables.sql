@@ -0,0 +1,32 @@
+-- Tables the application added on top of the original GOLD schema.
+-- Objects that already exist are left as they are.
+
+CREATE TABLE Current_Term (
+    quarter VARCHAR2(10) NOT NULL,
+    year    NUMBER(4)    NOT NULL
+);
+
+-- One FIFO queue per offering (joinWaitlist, promoteFromWaitlist)
+CREATE TABLE Waitlist (
+    enrollment_code VARCHAR2(20) NOT NULL,
+    perm_number     VARCHAR2(20) NOT NULL,
+    position        NUMBER       NOT NULL,
+    joined_at       TIMESTAMP    DEFAULT SYSTIMESTAMP NOT NULL,
+    CONSTRAINT pk_waitlist PRIMARY KEY (enrollment_code, perm_number),
+    CONSTRAINT uq_waitlist_position UNIQUE (enrollment_code, position)
+);
+
+-- Running GPA totals, updated with every posted grade (StudentAggregates)
+CREATE TABLE Student_GPA (
+    perm_number     VARCHAR2(20) NOT NULL,
+    grade_point_sum NUMBER(8, 2) DEFAULT 0 NOT NULL,
+    graded_count    NUMBER       DEFAULT 0 NOT NULL,
+    CONSTRAINT pk_student_gpa PRIMARY KEY (perm_number)
+);
+
+-- Courses passed with C or better (StudentAggregates)
+CREATE TABLE Student_Passed_Course (
+    perm_number   VARCHAR2(20) NOT NULL,
+    course_number VARCHAR2(20) NOT NULL,
+    CONSTRAINT pk_student_passed_course PRIMARY KEY (perm_number, course_number)
+);
@@ -0,0 +1,17 @@
+-- Indexes for the lookups StudentTransactions runs on every request.
+
+-- A student's current courses and course count; the third column lets
+-- "which offerings" be answered from the index alone
+CREATE INDEX idx_enrolls_perm_status ON Enrolls_in (perm_number, status, enrollment_code);
+
+-- Seat counts and class lists per offering
+CREATE INDEX idx_enrolls_code_status ON Enrolls_in (enrollment_code, status, perm_number);
+
+-- Prerequisites of a course
+CREATE INDEX idx_prerequisite_course ON Prerequisite (course_number, prerequisite_course_number);
+
+-- PIN login and uniqueness checks
+CREATE INDEX idx_student_pin_hash ON Student (PIN_HASH);
+
+-- Offerings of a course (planning catalog, transcripts)
+CREATE INDEX idx_offering_course ON Course_Offering (course_number, quarter);
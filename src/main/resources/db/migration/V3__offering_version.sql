@@ -0,0 +1,3 @@
+-- Version counter for optimistic adds and drops. Every write that changes
+-- an offering's current enrollment bumps it.
+ALTER TABLE Course_Offering ADD (version NUMBER DEFAULT 0 NOT NULL);
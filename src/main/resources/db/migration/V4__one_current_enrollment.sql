@@ -0,0 +1,6 @@
+-- A student can be enrolled in an offering only once at a time. Past rows
+-- map to NULL keys and are not indexed, so retaking a course is allowed.
+CREATE UNIQUE INDEX uq_enrolls_current ON Enrolls_in (
+    CASE WHEN status = 'Current' THEN perm_number END,
+    CASE WHEN status = 'Current' THEN enrollment_code END
+);
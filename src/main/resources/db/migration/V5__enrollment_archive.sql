@@ -0,0 +1,16 @@
+-- Enrollments of closed quarters, moved out of Enrolls_in by
+-- EnrollmentArchive so the registration indexes only cover recent rows.
+-- Same columns as Enrolls_in, so rows move with INSERT ... SELECT *.
+CREATE TABLE Enrolls_in_Archive AS SELECT * FROM Enrolls_in WHERE 1 = 0;
+
+-- Transcripts and aggregate rebuilds per student
+CREATE INDEX idx_enrolls_archive_perm ON Enrolls_in_Archive (perm_number, status);
+
+-- Grade mailers and snapshots per offering
+CREATE INDEX idx_enrolls_archive_code ON Enrolls_in_Archive (enrollment_code);
+
+-- Every enrollment, recent and archived, for history queries
+CREATE OR REPLACE VIEW Enrolls_in_All AS
+SELECT * FROM Enrolls_in
+UNION ALL
+SELECT * FROM Enrolls_in_Archive;
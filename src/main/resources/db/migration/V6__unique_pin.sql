@@ -0,0 +1,4 @@
+-- No two students may share a PIN. The key is enforced by the existing
+-- idx_student_pin_hash, so a PIN change racing another for the same PIN
+-- fails with ORA-00001 instead of committing a duplicate.
+ALTER TABLE Student ADD CONSTRAINT uq_student_pin_hash UNIQUE (PIN_HASH) USING INDEX idx_student_pin_hash;
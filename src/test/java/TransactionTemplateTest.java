@@ -0,0 +1,79 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TransactionTemplateTest {
+
+    // Records the transaction calls; releaseSavepoint fails the way ojdbc does
+    private static class FakeConnection {
+        final List<String> calls = new ArrayList<>();
+        boolean autoCommit = true;
+
+        Connection proxy() {
+            Savepoint savepoint = (Savepoint) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {Savepoint.class}, (p, method, args) -> null);
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {Connection.class}, (p, method, args) -> {
+                    switch (method.getName()) {
+                        case "getAutoCommit":
+                            return autoCommit;
+                        case "setAutoCommit":
+                            autoCommit = (Boolean) args[0];
+                            return null;
+                        case "getTransactionIsolation":
+                            return Connection.TRANSACTION_READ_COMMITTED;
+                        case "setSavepoint":
+                            calls.add("savepoint");
+                            return savepoint;
+                        case "releaseSavepoint":
+                            throw new SQLFeatureNotSupportedException("Unsupported feature");
+                        case "rollback":
+                            calls.add(args == null ? "rollback" : "rollback to savepoint");
+                            return null;
+                        case "commit":
+                            calls.add("commit");
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        }
+    }
+
+    @Test
+    void nestedWorkCommitsWithTheOuterTransaction() throws SQLException {
+        FakeConnection fake = new FakeConnection();
+        TransactionTemplate transactions = new TransactionTemplate(fake.proxy());
+
+        int result = transactions.execute(conn -> transactions.execute(inner -> 1) + transactions.execute(inner -> 2));
+
+        assertEquals(3, result);
+        assertEquals(List.of("savepoint", "savepoint", "commit"), fake.calls);
+        assertEquals(true, fake.autoCommit);
+    }
+
+    @Test
+    void failedNestedWorkRollsBackOnlyToItsSavepoint() throws SQLException {
+        FakeConnection fake = new FakeConnection();
+        TransactionTemplate transactions = new TransactionTemplate(fake.proxy());
+
+        String result = transactions.execute(conn -> {
+            assertThrows(SQLException.class, () -> transactions.execute(inner -> {
+                throw new SQLException("constraint violated");
+            }));
+            return "outer";
+        });
+
+        assertEquals("outer", result);
+        assertEquals(List.of("savepoint", "rollback to savepoint", "commit"), fake.calls);
+    }
+}